@@ -0,0 +1,77 @@
+package com.dipalma.whatif.analysis;
+
+import com.dipalma.whatif.benchmarks.SyntheticRepositoryState;
+import com.dipalma.whatif.connectors.MethodBoundaryScanner;
+import com.dipalma.whatif.model.TrackedMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Method extraction for one release and for every release at once, kept or streamed, building the shared change
+ * index, and the per-method lookup in it behind the churn features.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MethodTrackerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class TrackedMethodState {
+        ChangeIndex changes;
+        String file;
+        int startLine;
+        int endLine;
+
+        @Setup(Level.Trial)
+        public void pickMethod(SyntheticRepositoryState repo) throws Exception {
+            changes = ChangeIndex.build(repo.git, repo.releases, Runtime.getRuntime().availableProcessors());
+            String commitId = repo.lastRelease.getName();
+            file = repo.git.getJavaFilesForCommit(commitId).getFirst();
+            MethodBoundaryScanner.MethodSpan span =
+                    MethodBoundaryScanner.scan(repo.git.getFileContent(file, commitId)).getFirst();
+            startLine = span.beginLine();
+            endLine = span.endLine();
+        }
+    }
+
+    @Benchmark
+    public List<TrackedMethod> getMethodsForRelease(SyntheticRepositoryState repo) throws Exception {
+        return new MethodTracker(repo.git).getMethodsForRelease(repo.lastRelease);
+    }
+
+    @Benchmark
+    public List<List<TrackedMethod>> getMethodsForReleases(SyntheticRepositoryState repo) throws Exception {
+        return new MethodTracker(repo.git).getMethodsForReleases(repo.releases);
+    }
+
+    @Benchmark
+    public int mineReleases(SyntheticRepositoryState repo) throws Exception {
+        int[] methods = {0};
+        new MethodTracker(repo.git).mineReleases(repo.releases, (r, release) -> methods[0] += release.size());
+        return methods[0];
+    }
+
+    @Benchmark
+    public ChangeIndex buildChangeIndex(SyntheticRepositoryState repo) throws Exception {
+        return ChangeIndex.build(repo.git, repo.releases, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public Object collectChangeStats(SyntheticRepositoryState repo, TrackedMethodState method) {
+        return method.changes.collectChangeStats(method.file, method.startLine, method.endLine, repo.lastRelease);
+    }
+}
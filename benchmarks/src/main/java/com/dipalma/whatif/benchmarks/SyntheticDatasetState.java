@@ -0,0 +1,74 @@
+package com.dipalma.whatif.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A dataset CSV with the columns written by {@code DatasetGenerator}, generated once per trial.
+ * Features are skewed like real method metrics and bugginess grows with size and complexity,
+ * so that classifiers have something to learn.
+ */
+@State(Scope.Benchmark)
+public class SyntheticDatasetState {
+
+    public static final String HEADER = "Project,MethodName,Release,LOC,CyclomaticComplexity,ParameterCount,Duplication,"
+            + "NR,NAuth,stmtAdded,stmtDeleted,maxChurn,avgChurn,IsBuggy";
+
+    @Param({"20000"})
+    public int rows;
+
+    public Path directory;
+    /** The raw dataset, named like the generator's output ({@code <project>.csv}). */
+    public Path rawCsv;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("whatif-bench-data");
+        rawCsv = directory.resolve("SYN.csv");
+        Random random = new Random(42);
+        try (Writer out = Files.newBufferedWriter(rawCsv, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write('\n');
+            for (int i = 0; i < rows; i++) {
+                int release = 1 + i * 10 / rows;
+                int loc = (int) Math.round(Math.exp(2.5 + random.nextGaussian()));
+                int complexity = 1 + (int) (loc / 6.0 * random.nextDouble());
+                int parameters = random.nextInt(5);
+                double duplication = random.nextDouble() < 0.7 ? 0.0 : random.nextDouble();
+                int revisions = random.nextInt(1 + loc / 10);
+                int authors = revisions == 0 ? 0 : 1 + random.nextInt(Math.min(5, revisions));
+                int added = revisions * random.nextInt(10);
+                int deleted = revisions * random.nextInt(6);
+                int maxChurn = revisions == 0 ? 0 : (added + deleted) / revisions + random.nextInt(5);
+                double avgChurn = revisions == 0 ? 0.0 : (double) (added + deleted) / revisions;
+                double risk = 1.0 / (1.0 + Math.exp(4.0 - 0.03 * loc - 0.2 * complexity - 0.3 * revisions));
+                boolean buggy = random.nextDouble() < risk;
+                out.write(String.format(Locale.ROOT, "SYN,src/main/java/syn/C%d.java/m%d(int),1.%d.0,%d,%d,%d,%.4f,%d,%d,%d,%d,%d,%.4f,%s%n",
+                        i / 20, i, release, loc, complexity, parameters, duplication,
+                        revisions, authors, added, deleted, maxChurn, avgChurn, buggy ? "yes" : "no"));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (var paths = Files.list(directory)) {
+            for (Path path : paths.toList()) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,83 @@
+package com.dipalma.whatif.benchmarks;
+
+import com.dipalma.whatif.connectors.GitConnector;
+import com.dipalma.whatif.connectors.ObjectCacheSettings;
+import com.dipalma.whatif.model.JiraTicket;
+import com.dipalma.whatif.synthetic.SyntheticRepositoryGenerator;
+import com.dipalma.whatif.synthetic.SyntheticRepositoryGenerator.SyntheticRepository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/** A synthetic repository generated once per trial and opened with a {@link GitConnector}. */
+@State(Scope.Benchmark)
+public class SyntheticRepositoryState {
+
+    @Param({"200"})
+    public int commits;
+
+    @Param({"50"})
+    public int files;
+
+    @Param({"10"})
+    public int methodsPerFile;
+
+    /** {@link ObjectCacheSettings} installed for the trial: {@code default} or {@code mining}. */
+    @Param({"default", "mining"})
+    public String objectCache;
+
+    public SyntheticRepository repository;
+    public GitConnector git;
+    /** Tickets of the fix commits, already linked to them. */
+    public List<JiraTicket> tickets;
+    /** Commits of the release tags, in release order. */
+    public List<RevCommit> releases;
+    /** Commit of the last release tag. */
+    public RevCommit lastRelease;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        ObjectCacheSettings.named(objectCache).install();
+        Path directory = Files.createTempDirectory("whatif-bench-repo");
+        repository = SyntheticRepositoryGenerator.generate(directory,
+                SyntheticRepositoryGenerator.Spec.of(commits, files, methodsPerFile));
+        git = new GitConnector(null, directory);
+        git.cloneOrOpenRepo();
+
+        tickets = new ArrayList<>();
+        for (SyntheticRepositoryGenerator.FixedTicket fixed : repository.tickets()) {
+            LocalDateTime createdAt = LocalDateTime.ofInstant(fixed.createdAt(), ZoneOffset.UTC);
+            tickets.add(new JiraTicket(fixed.key(), createdAt, fixed.affectedVersions()));
+        }
+        git.findAndSetFixCommits(tickets);
+
+        releases = new ArrayList<>();
+        for (SyntheticRepositoryGenerator.Release release : repository.releases()) {
+            releases.add(git.getRepository().parseCommit(git.getRepository().resolve(release.commitId())));
+        }
+        lastRelease = releases.getLast();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        git.getGit().close();
+        try (var paths = Files.walk(repository.directory())) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
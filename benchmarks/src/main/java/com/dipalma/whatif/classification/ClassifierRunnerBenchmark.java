@@ -0,0 +1,78 @@
+package com.dipalma.whatif.classification;
+
+import com.dipalma.whatif.benchmarks.SyntheticDatasetState;
+import com.dipalma.whatif.preprocessing.DataPreprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.lazy.IBk;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Instances;
+import weka.core.converters.CSVLoader;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One repetition of the 10-fold cross-validation run by {@link ClassifierRunner}, per classifier:
+ * splitting the folds each time, or on the {@link FoldSplits} shared by all classifiers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassifierRunnerBenchmark {
+
+    @Param({"RandomForest", "NaiveBayes", "IBk"})
+    public String classifier;
+
+    private Instances data;
+    private FoldSplits splits;
+
+    @Setup(Level.Trial)
+    public void load(SyntheticDatasetState dataset) throws Exception {
+        new DataPreprocessor(dataset.rawCsv.toString()).processData();
+        CSVLoader loader = new CSVLoader();
+        loader.setSource(dataset.directory.resolve("SYN_processed.csv").toFile());
+        data = loader.getDataSet();
+        data.setClassIndex(data.numAttributes() - 1);
+        splits = new FoldSplits(data, 10);
+        splits.folds(0);
+    }
+
+    @Benchmark
+    public Evaluation crossValidate() throws Exception {
+        Evaluation eval = new Evaluation(data);
+        ClassifierRunner.crossValidate(eval, ClassifierRunner.withResample(base()), data, 10, new Random(0));
+        return eval;
+    }
+
+    @Benchmark
+    public Evaluation crossValidateSharedFolds() throws Exception {
+        Evaluation eval = new Evaluation(data);
+        ClassifierRunner.crossValidate(eval, ClassifierRunner.withResample(base()), splits.folds(0));
+        return eval;
+    }
+
+    private Classifier base() {
+        return switch (classifier) {
+            case "NaiveBayes" -> new NaiveBayes();
+            case "IBk" -> new IBk(3);
+            default -> new RandomForest();
+        };
+    }
+}
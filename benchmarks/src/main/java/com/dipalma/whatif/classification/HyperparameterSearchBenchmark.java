@@ -0,0 +1,55 @@
+package com.dipalma.whatif.classification;
+
+import com.dipalma.whatif.benchmarks.SyntheticDatasetState;
+import com.dipalma.whatif.preprocessing.DataPreprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+import weka.core.converters.CSVLoader;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HyperparameterSearch} over a reduced space (the 18 candidates with full balancing), with
+ * 5 times 10-fold cross-validation: grid against successive halving.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class HyperparameterSearchBenchmark {
+
+    @Param({"GRID", "SUCCESSIVE_HALVING"})
+    public HyperparameterSearch.Strategy strategy;
+
+    private Instances data;
+    private List<ClassifierConfig> space;
+
+    @Setup(Level.Trial)
+    public void load(SyntheticDatasetState dataset) throws Exception {
+        new DataPreprocessor(dataset.rawCsv.toString()).processData();
+        CSVLoader loader = new CSVLoader();
+        loader.setSource(dataset.directory.resolve("SYN_processed.csv").toFile());
+        data = loader.getDataSet();
+        data.setClassIndex(data.numAttributes() - 1);
+        space = HyperparameterSearch.defaultSpace().stream().filter(config -> config.bias() == 1.0).toList();
+    }
+
+    @Benchmark
+    public List<HyperparameterSearch.Result> search() throws Exception {
+        return new HyperparameterSearch(data, 10, 5).run(space, strategy);
+    }
+}
@@ -0,0 +1,49 @@
+package com.dipalma.whatif.classification;
+
+import com.dipalma.whatif.benchmarks.SyntheticDatasetState;
+import com.dipalma.whatif.preprocessing.DataPreprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+import weka.core.converters.CSVLoader;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** One repetition of 10-fold cross-validation of every balancing x selection x classifier combination. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PipelineEvaluatorBenchmark {
+
+    private Instances data;
+
+    @Setup(Level.Trial)
+    public void load(SyntheticDatasetState dataset) throws Exception {
+        new DataPreprocessor(dataset.rawCsv.toString()).processData();
+        CSVLoader loader = new CSVLoader();
+        loader.setSource(dataset.directory.resolve("SYN_processed.csv").toFile());
+        data = loader.getDataSet();
+        data.setClassIndex(data.numAttributes() - 1);
+    }
+
+    @Benchmark
+    public List<PipelineEvaluator.Result> evaluate() throws Exception {
+        return new PipelineEvaluator(data, 10, 1).evaluate(Balancing.ALL,
+                List.of(FeatureSelection.NONE, FeatureSelection.CFS_BEST_FIRST, FeatureSelection.infoGainTopK(5)),
+                List.of(ClassifierConfig.defaultModel(), ClassifierConfig.naiveBayes(1.0),
+                        ClassifierConfig.ibk(3, "euclidean", 1.0)));
+    }
+}
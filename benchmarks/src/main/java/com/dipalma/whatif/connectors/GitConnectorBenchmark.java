@@ -0,0 +1,28 @@
+package com.dipalma.whatif.connectors;
+
+import com.dipalma.whatif.benchmarks.SyntheticRepositoryState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Mapping every fix commit of the synthetic history to the methods it modified. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GitConnectorBenchmark {
+
+    @Benchmark
+    public Map<String, List<String>> getBugToMethodsMap(SyntheticRepositoryState repo) throws Exception {
+        return repo.git.getBugToMethodsMap(repo.tickets);
+    }
+}
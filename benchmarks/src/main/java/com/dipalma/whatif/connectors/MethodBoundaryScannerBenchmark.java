@@ -0,0 +1,172 @@
+package com.dipalma.whatif.connectors;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link MethodBoundaryScanner} against JavaParser on the same sources. Before measuring, the
+ * spans of both (names, signatures, line ranges) are checked to be identical, so a trial fails
+ * rather than timing a scanner that disagrees with the parser.
+ * <p>
+ * The sources are a bundled sample of the constructs the scanner must handle (text blocks with
+ * line continuations, anonymous, local and enum-constant classes, annotation types...) and every
+ * {@code .java} file below {@code sources}, if it exists. {@link #main} runs the check alone on the
+ * sample and on the directories given, e.g. an unpacked JDK {@code src.zip}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MethodBoundaryScannerBenchmark {
+
+    private static final String SAMPLE = "/method-boundaries/Sample.java.txt";
+    private static final Comparator<MethodBoundaryScanner.MethodSpan> BY_POSITION =
+            Comparator.comparingInt(MethodBoundaryScanner.MethodSpan::beginLine)
+                    .thenComparingInt(MethodBoundaryScanner.MethodSpan::endLine)
+                    .thenComparing(MethodBoundaryScanner.MethodSpan::signature);
+
+    /** Directory of extra sources; relative to the working directory, skipped if missing. */
+    @Param({"src/main/java"})
+    public String sources;
+
+    private List<String> contents;
+
+    @Setup(Level.Trial)
+    public void loadAndCheck() throws IOException {
+        Map<String, String> files = load(List.of(Path.of(sources)));
+        List<String> mismatches = check(files);
+        if (!mismatches.isEmpty()) {
+            throw new IllegalStateException("MethodBoundaryScanner disagrees with JavaParser:\n"
+                    + String.join("\n", mismatches));
+        }
+        contents = List.copyOf(files.values());
+    }
+
+    @Benchmark
+    public int scanner() {
+        int spans = 0;
+        for (String content : contents) {
+            spans += MethodBoundaryScanner.scan(content).size();
+        }
+        return spans;
+    }
+
+    @Benchmark
+    public int javaParser() {
+        JavaParser parser = newParser();
+        int spans = 0;
+        for (String content : contents) {
+            List<MethodBoundaryScanner.MethodSpan> found = parserSpans(parser, content);
+            spans += found == null ? 0 : found.size();
+        }
+        return spans;
+    }
+
+    /** Checks the sample and every {@code .java} file below the given directories; exits with 1 on any mismatch. */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> files = load(Stream.of(args).map(Path::of).toList());
+        List<String> mismatches = check(files);
+        mismatches.forEach(System.out::println);
+        System.out.printf("%d files checked, %d with different spans%n", files.size(), mismatches.size());
+        if (!mismatches.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /** The sample, then the {@code .java} files below {@code directories}, keyed by where they come from. */
+    private static Map<String, String> load(List<Path> directories) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        try (InputStream sample = MethodBoundaryScannerBenchmark.class.getResourceAsStream(SAMPLE)) {
+            if (sample == null) {
+                throw new IOException("Missing resource " + SAMPLE);
+            }
+            files.put(SAMPLE, new String(sample.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        for (Path directory : directories) {
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path file : paths.filter(p -> p.toString().endsWith(".java")).sorted().toList()) {
+                    files.put(file.toString(), Files.readString(file, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return files;
+    }
+
+    /** One line per file whose spans differ, listing what only the parser and only the scanner found. */
+    private static List<String> check(Map<String, String> files) {
+        JavaParser parser = newParser();
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            List<MethodBoundaryScanner.MethodSpan> expected = parserSpans(parser, file.getValue());
+            if (expected == null) {
+                continue; // not valid Java for the parser: nothing to compare against
+            }
+            List<MethodBoundaryScanner.MethodSpan> actual = new ArrayList<>(MethodBoundaryScanner.scan(file.getValue()));
+            actual.sort(BY_POSITION);
+            if (!expected.equals(actual)) {
+                List<MethodBoundaryScanner.MethodSpan> missing = new ArrayList<>(expected);
+                missing.removeAll(actual);
+                List<MethodBoundaryScanner.MethodSpan> extra = new ArrayList<>(actual);
+                extra.removeAll(expected);
+                mismatches.add(file.getKey() + ": parser only " + missing + ", scanner only " + extra);
+            }
+        }
+        return mismatches;
+    }
+
+    /** @return the callables JavaParser finds, sorted like the check compares them; null if it does not parse */
+    private static List<MethodBoundaryScanner.MethodSpan> parserSpans(JavaParser parser, String content) {
+        ParseResult<CompilationUnit> result = parser.parse(content);
+        if (!result.isSuccessful() || result.getResult().isEmpty()) {
+            return null;
+        }
+        List<MethodBoundaryScanner.MethodSpan> spans = new ArrayList<>();
+        for (CallableDeclaration<?> callable : result.getResult().get().findAll(CallableDeclaration.class)) {
+            spans.add(new MethodBoundaryScanner.MethodSpan(callable.getNameAsString(),
+                    callable.getSignature().asString(),
+                    callable.getBegin().map(p -> p.line).orElse(-1),
+                    callable.getEnd().map(p -> p.line).orElse(-1),
+                    callable instanceof ConstructorDeclaration));
+        }
+        spans.sort(BY_POSITION);
+        return spans;
+    }
+
+    private static JavaParser newParser() {
+        return new JavaParser(new ParserConfiguration().setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_21));
+    }
+}
@@ -0,0 +1,101 @@
+package com.dipalma.whatif.labeling;
+
+import com.dipalma.whatif.model.JiraTicket;
+import com.dipalma.whatif.model.ProjectRelease;
+import com.dipalma.whatif.model.TrackedMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Labeling one release through a {@link BugIndex}, and building the index, on in-memory tickets
+ * with version indices already set (as after {@link TicketLabeler#label}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BugIndexBenchmark {
+
+    private static final int RELEASES = 20;
+
+    @Param({"10000"})
+    public int methods;
+
+    @Param({"1000"})
+    public int tickets;
+
+    private List<TrackedMethod> trackedMethods;
+    private List<JiraTicket> allTickets;
+    private Map<String, List<String>> bugToMethodsMap;
+    private ProjectRelease release;
+    private BugIndex bugs;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(42);
+        trackedMethods = new ArrayList<>(methods);
+        for (int m = 0; m < methods; m++) {
+            trackedMethods.add(new TrackedMethod("id" + m, "m" + m + "(int)", "src/C" + (m / 20) + ".java"));
+        }
+
+        allTickets = new ArrayList<>(tickets);
+        bugToMethodsMap = new HashMap<>();
+        LocalDateTime created = LocalDateTime.of(2015, 1, 1, 0, 0);
+        for (int t = 0; t < tickets; t++) {
+            JiraTicket ticket = new JiraTicket("SYN-" + t, created, List.of());
+            int opening = 1 + random.nextInt(RELEASES - 1);
+            ticket.setOpeningVersionIndex(opening);
+            ticket.setFixedVersionIndex(opening + 1 + random.nextInt(RELEASES - opening));
+            if (random.nextBoolean()) {
+                ticket.setIntroductionVersionIndex(1 + random.nextInt(opening));
+            }
+            allTickets.add(ticket);
+
+            List<String> fixed = new ArrayList<>();
+            for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                TrackedMethod method = trackedMethods.get(random.nextInt(methods));
+                fixed.add(method.filepath() + "::" + method.signature());
+            }
+            bugToMethodsMap.put(ticket.getKey(), fixed);
+        }
+        release = new ProjectRelease("1.10.0", LocalDate.of(2016, 1, 1), RELEASES / 2);
+        bugs = BugIndex.of(allTickets, bugToMethodsMap);
+    }
+
+    @Benchmark
+    public BugIndex buildIndex() {
+        return BugIndex.of(allTickets, bugToMethodsMap);
+    }
+
+    @Benchmark
+    public int labelRelease() {
+        int buggy = 0;
+        for (TrackedMethod method : trackedMethods) {
+            if (bugs.isBuggy(method, release)) {
+                buggy++;
+            }
+        }
+        return buggy;
+    }
+}
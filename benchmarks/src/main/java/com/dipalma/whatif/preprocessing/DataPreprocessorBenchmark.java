@@ -0,0 +1,73 @@
+package com.dipalma.whatif.preprocessing;
+
+import com.dipalma.whatif.benchmarks.SyntheticDatasetState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole preprocessing of a raw dataset, CSV load and save included, against processing only
+ * its last release with the transform fitted on the others.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataPreprocessorBenchmark {
+
+    /** The dataset without its last tenth of rows (one release), fitted; then the rows appended to the CSV. */
+    @State(Scope.Thread)
+    public static class FittedWithoutLastRelease {
+        Path directory;
+        Path csv;
+
+        @Setup(Level.Invocation)
+        public void fitAndAppend(SyntheticDatasetState dataset) throws Exception {
+            directory = Files.createTempDirectory("whatif-bench-append");
+            csv = directory.resolve("SYN.csv");
+            List<String> lines = Files.readAllLines(dataset.rawCsv, StandardCharsets.UTF_8);
+            int fitted = 1 + dataset.rows * 9 / 10;
+            Files.write(csv, lines.subList(0, fitted), StandardCharsets.UTF_8);
+            new DataPreprocessor(csv.toString()).refit();
+            Files.write(csv, lines.subList(fitted, lines.size()), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete() throws IOException {
+            try (var paths = Files.list(directory)) {
+                for (Path path : paths.toList()) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public void refit(SyntheticDatasetState dataset) throws Exception {
+        new DataPreprocessor(dataset.rawCsv.toString()).refit();
+    }
+
+    @Benchmark
+    public void appendLastRelease(FittedWithoutLastRelease fitted) throws Exception {
+        new DataPreprocessor(fitted.csv.toString()).processData();
+    }
+}
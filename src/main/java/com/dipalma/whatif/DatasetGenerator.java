@@ -2,177 +2,136 @@ package com.dipalma.whatif;
 
 import com.dipalma.whatif.analysis.MethodTracker;
 import com.dipalma.whatif.connectors.GitConnector;
+import com.dipalma.whatif.connectors.IoScope;
 import com.dipalma.whatif.connectors.JiraConnector;
+import com.dipalma.whatif.dataset.MethodDataset;
+import com.dipalma.whatif.labeling.BugIndex;
+import com.dipalma.whatif.labeling.Proportion;
+import com.dipalma.whatif.labeling.TicketLabeler;
 import com.dipalma.whatif.model.JiraTicket;
 import com.dipalma.whatif.model.ProjectRelease;
-import com.dipalma.whatif.model.TrackedMethod;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.revwalk.RevCommit;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.time.LocalDate;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DatasetGenerator {
+public class DatasetGenerator implements AutoCloseable {
 
     private final String projectKey;
     private final GitConnector git;
+    private final JiraConnector jira;
+    private final Proportion.Mode proportionMode;
+    // Whether the connectors were created here, and so are closed here.
+    private final boolean ownsConnectors;
 
     private static final Logger log = LoggerFactory.getLogger(DatasetGenerator.class);
 
     public DatasetGenerator(String projectKey, String gitUrl) {
         this.projectKey = projectKey;
-        this.git = new GitConnector(gitUrl, projectKey);
+        this.git = new GitConnector(gitUrl, Path.of("temp-repo", projectKey),
+                GitConnector.CloneMode.BARE, GitConnector.UpdateMode.NONE);
+        this.jira = new JiraConnector(projectKey);
+        this.proportionMode = Proportion.Mode.MEDIAN;
+        this.ownsConnectors = true;
     }
 
-    public void generateCsv() {
-        try {
-            JiraConnector jira = new JiraConnector(projectKey);
-            List<ProjectRelease> releases = jira.getProjectReleases();
-            List<JiraTicket> tickets = jira.getBugTickets();
-
-            git.cloneOrOpenRepo();
-            git.findAndSetFixCommits(tickets);
-
-            setVersionIndices(tickets, releases);
-
-            double pMedian = calculateProportionCoefficient(tickets);
-            log.info("Calculated P-coefficient for {}: {}", projectKey, pMedian);
-
-            Map<String, List<String>> bugToMethodsMap = git.getBugToMethodsMap(tickets);
-
-            Map<String, RevCommit> releaseCommits = git.getReleaseCommits(releases);
-            MethodTracker tracker = new MethodTracker(git);
-
-            int releaseCutoff = (int) (releases.size() * 0.34);
-            List<ProjectRelease> releasesToAnalyze = releases.subList(0, releaseCutoff);
-
-            // *** CORRECTED CSV HEADERS ***
-            // Using the single "MethodName" column and replacing "NSmells" with "Duplication"
-            String[] headers = {"Project", "MethodName", "Release", "LOC", "CyclomaticComplexity", "ParameterCount", "Duplication", "NR", "NAuth", "stmtAdded", "stmtDeleted", "maxChurn", "avgChurn", "IsBuggy"};
-            List<String[]> csvData = new ArrayList<>();
-            csvData.add(headers);
-
-            for (ProjectRelease release : releasesToAnalyze) {
-                if (!releaseCommits.containsKey(release.name())) {
-                    log.info("Skipping release {} as no matching Git tag was found.", release.name());
-                    continue;
-                }
-
-                log.info("Analyzing release: {}", release.name());
-                RevCommit releaseCommit = releaseCommits.get(release.name());
-
-                // This call now returns methods with all features already calculated.
-                List<TrackedMethod> methods = tracker.getMethodsForRelease(releaseCommit);
-
-                for (TrackedMethod method : methods) {
-                    // *** FIX: The redundant feature calculation line has been removed. ***
-
-                    boolean isBuggy = isMethodBuggy(method, release, tickets, pMedian, bugToMethodsMap);
-                    Map<String, Number> features = method.getFeatures();
-
-                    // Construct the specified identifier (e.g., /path/to/file.java/methodName(params))
-                    String methodName = method.filepath() + "/" + method.signature();
-
-                    // *** CORRECTED DATA ROW ***
-                    // This now matches the corrected headers perfectly.
-                    csvData.add(new String[]{
-                            projectKey,
-                            methodName,
-                            release.name(),
-                            features.getOrDefault("LOC", 0).toString(),
-                            features.getOrDefault("CyclomaticComplexity", 0).toString(),
-                            features.getOrDefault("ParameterCount", 0).toString(),
-                            features.getOrDefault("Duplication", 0).toString(), // Added new feature
-                            features.getOrDefault("NR", 0).toString(),
-                            features.getOrDefault("NAuth", 0).toString(),
-                            features.getOrDefault("stmtAdded", 0).toString(),
-                            features.getOrDefault("stmtDeleted", 0).toString(),
-                            features.getOrDefault("maxChurn", 0).toString(),
-                            features.getOrDefault("avgChurn", 0).toString(),
-                            isBuggy ? "yes" : "no"
-                    });
-                }
-            }
-            writeToCsv(projectKey + ".csv", csvData);
-        } catch (IOException | GitAPIException e) {
-            log.error("Failed while writing the csv file", e);
-        }
+    /**
+     * Mines through the given connectors, e.g. a local repository and a JIRA stub for load tests.
+     * They stay open on {@link #close()}: the caller closes them.
+     */
+    public DatasetGenerator(String projectKey, GitConnector git, JiraConnector jira) {
+        this(projectKey, git, jira, Proportion.Mode.MEDIAN);
     }
 
-    // ... (isMethodBuggy, setVersionIndices, and other helper methods remain the same)
-    private boolean isMethodBuggy(TrackedMethod method, ProjectRelease currentRelease, List<JiraTicket> allTickets, double pMedian, Map<String, List<String>> bugToMethodsMap) {
-        String methodKey = method.filepath() + "::" + method.signature();
-        for (JiraTicket ticket : allTickets) {
-            List<String> fixedMethods = bugToMethodsMap.get(ticket.getKey());
-            if (fixedMethods == null || !fixedMethods.contains(methodKey)) {
-                continue;
-            }
-            int iv = ticket.getIntroductionVersionIndex();
-            int fv = ticket.getFixedVersionIndex();
-            if (iv <= 0 && fv > 0 && ticket.getOpeningVersionIndex() > 0 && fv > ticket.getOpeningVersionIndex()) {
-                iv = (int) Math.round(fv - (fv - ticket.getOpeningVersionIndex()) * pMedian);
-                if (iv < 1) iv = 1;
-            }
-            if (iv > 0 && fv > 0 && currentRelease.index() >= iv && currentRelease.index() < fv) {
-                return true;
-            }
-        }
-        return false;
+    /** As above, estimating missing injected versions with the given proportion variant. */
+    public DatasetGenerator(String projectKey, GitConnector git, JiraConnector jira, Proportion.Mode proportionMode) {
+        this.projectKey = projectKey;
+        this.git = git;
+        this.jira = jira;
+        this.proportionMode = proportionMode;
+        this.ownsConnectors = false;
     }
-    private void setVersionIndices(List<JiraTicket> tickets, List<ProjectRelease> releases) {
-        Map<String, Integer> releaseNameIndexMap = releases.stream().collect(Collectors.toMap(ProjectRelease::name, ProjectRelease::index));
-        for (JiraTicket ticket : tickets) {
-            ticket.setOpeningVersionIndex(findReleaseIndexForDate(ticket.getCreationDate().toLocalDate(), releases));
-            if (ticket.getResolutionDate() != null) {
-                ticket.setFixedVersionIndex(findReleaseIndexForDate(ticket.getResolutionDate().toLocalDate(), releases));
-            }
-            ticket.getAffectedVersions().stream()
-                    .map(releaseNameIndexMap::get)
-                    .filter(Objects::nonNull)
-                    .min(Integer::compareTo)
-                    .ifPresent(ticket::setIntroductionVersionIndex);
-        }
+
+    /**
+     * Mines the project and writes {@code <projectKey>.csv}.
+     * Failures are propagated so that the pipeline stage is not checkpointed as completed.
+     */
+    public void generateCsv() throws IOException, GitAPIException {
+        String fileName = projectKey + ".csv";
+        generateDataset().writeCsv(fileName);
+        log.info("Successfully created {}", fileName);
     }
-    private int findReleaseIndexForDate(LocalDate date, List<ProjectRelease> releases) {
-        for (ProjectRelease release : releases) {
-            if (!date.isAfter(release.releaseDate())) {
-                return release.index();
-            }
+
+    /** Mines the project into memory, e.g. to hand it to Weka without going through the CSV. */
+    public MethodDataset generateDataset() throws IOException, GitAPIException {
+        // Releases and tickets are independent requests: fetched concurrently.
+        List<ProjectRelease> releases;
+        List<JiraTicket> tickets;
+        try (IoScope scope = IoScope.open("jira.fetch", 2)) {
+            IoScope.Subtask<List<ProjectRelease>> releasesTask = scope.fork(jira::getProjectReleases);
+            IoScope.Subtask<List<JiraTicket>> ticketsTask = scope.fork(jira::getBugTickets);
+            scope.join();
+            releases = releasesTask.get();
+            tickets = ticketsTask.get();
         }
-        return releases.isEmpty() ? -1 : releases.getLast().index();
-    }
-    private double calculateProportionCoefficient(List<JiraTicket> tickets) {
-        List<Double> pValues = new ArrayList<>();
-        for (JiraTicket ticket : tickets) {
-            if (ticket.getIntroductionVersionIndex() > 0
-                    && ticket.getFixedVersionIndex() > 0
-                    && ticket.getOpeningVersionIndex() > 0
-                    && ticket.getFixedVersionIndex() > ticket.getOpeningVersionIndex()) {
-                    double p = (double) (ticket.getFixedVersionIndex() - ticket.getIntroductionVersionIndex()) / (ticket.getFixedVersionIndex() - ticket.getOpeningVersionIndex());
-                    pValues.add(p);
+
+        git.cloneOrOpenRepo();
+        git.findAndSetFixCommits(tickets);
+
+        // OV, FV and IV of every ticket; missing IVs are estimated here, once, with proportion.
+        double pMedian = new TicketLabeler(releases, proportionMode, TicketLabeler.DEFAULT_WINDOW).label(tickets);
+        log.info("Calculated P-coefficient for {}: {}", projectKey, pMedian);
+
+        Map<String, List<String>> bugToMethodsMap = git.getBugToMethodsMap(tickets);
+
+        Map<String, RevCommit> releaseCommits = git.getReleaseCommits(releases);
+        MethodTracker tracker = new MethodTracker(git);
+
+        int releaseCutoff = (int) (releases.size() * 0.34);
+        List<ProjectRelease> releasesToAnalyze = new ArrayList<>();
+        List<RevCommit> commitsToAnalyze = new ArrayList<>();
+        for (ProjectRelease release : releases.subList(0, releaseCutoff)) {
+            if (!releaseCommits.containsKey(release.name())) {
+                log.info("Skipping release {} as no matching Git tag was found.", release.name());
+                continue;
             }
+            releasesToAnalyze.add(release);
+            commitsToAnalyze.add(releaseCommits.get(release.name()));
         }
-        if (pValues.isEmpty()) return 1.5;
-        pValues.sort(Comparator.naturalOrder());
-        if (pValues.size() % 2 == 1) {
-            return pValues.get(pValues.size() / 2);
-        } else {
-            return (pValues.get(pValues.size() / 2 - 1) + pValues.get(pValues.size() / 2)) / 2.0;
-        }
+
+        BugIndex bugs = BugIndex.of(tickets, bugToMethodsMap);
+
+        // Releases are mined in parallel and encoded as they come, so their feature maps do not pile up.
+        MethodDataset dataset = new MethodDataset(projectKey);
+        tracker.mineReleases(commitsToAnalyze, (r, methods) -> {
+            ProjectRelease release = releasesToAnalyze.get(r);
+            log.info("Analyzing release: {}", release.name());
+            dataset.addRelease(release.name(), methods, method -> bugs.isBuggy(method, release));
+        });
+        log.info("Dataset for {}: {} rows, {} methods, {} of {} feature values stored.", projectKey,
+                dataset.rows(), dataset.methods(), dataset.storedValues(),
+                (long) dataset.rows() * MethodDataset.FEATURES.size());
+        git.recordObjectCacheStats();
+        return dataset;
     }
-    private void writeToCsv(String fileName, List<String[]> data) throws IOException {
-        try (FileWriter out = new FileWriter(fileName);
-             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT)) {
-            printer.printRecords(data);
+
+    /** Closes the repository and the JIRA connector, if this generator created them. */
+    @Override
+    public void close() throws IOException {
+        if (!ownsConnectors) {
+            return;
+        }
+        try {
+            jira.close();
+        } finally {
+            if (git.getGit() != null) {
+                git.getGit().close();
+            }
         }
-        log.info("Successfully created {}", fileName);
     }
-}
\ No newline at end of file
+}
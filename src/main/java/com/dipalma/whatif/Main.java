@@ -1,11 +1,25 @@
 package com.dipalma.whatif;
 
 import com.dipalma.whatif.analysis.WhatIfSimulator;
+import com.dipalma.whatif.analysis.WhatIfSweep;
 import com.dipalma.whatif.analysis.FeatureComparer;
 import com.dipalma.whatif.analysis.DataAnalyzer;
+import com.dipalma.whatif.analysis.FeatureRanker;
+import com.dipalma.whatif.classification.ClassifierConfig;
 import com.dipalma.whatif.classification.ClassifierRunner;
+import com.dipalma.whatif.classification.HyperparameterSearch;
+import com.dipalma.whatif.connectors.ObjectCacheSettings;
+import com.dipalma.whatif.metrics.Metrics;
+import com.dipalma.whatif.pipeline.Pipeline;
 import com.dipalma.whatif.preprocessing.DataPreprocessor;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,88 +27,150 @@ public class Main {
 
     private static final Logger log = LoggerFactory.getLogger(Main.class);
 
-    public static void main(String[] args) {
-
-
-        log.info("Starting What-If Analysis Data Generation...");
-
-        final String BK_PROCESSED = "BOOKKEEPER_processed.csv";
-        final String SN_PROCESSED = "SYNCOPE_processed.csv";
+    private static final Path CHECKPOINT_DIR = Path.of(".whatif-checkpoints");
+    private static final Path METRICS_REPORT = Path.of("metrics-report.json");
+    // Feature rankings by dataset content hash, reused by later runs while the processed data is unchanged.
+    private static final Path RANKING_CACHE_DIR = CHECKPOINT_DIR.resolve("rankings");
+    // Where the <Name>_Original.txt / <Name>_Refactored.txt pairs are, unless --method-pairs=<dir> says otherwise.
+    private static final String DEFAULT_METHOD_PAIRS_DIR = "src/main/java/com/dipalma/whatif";
+    private static final double[] SWEEP_PERCENTILES = {0, 10, 25, 50, 75, 90};
+    private static final HyperparameterSearch.Strategy SEARCH_STRATEGY = HyperparameterSearch.Strategy.SUCCESSIVE_HALVING;
+
+    private record Project(String key, String gitUrl) {
+        String csv() { return key + ".csv"; }
+        String processedCsv() { return key + "_processed.csv"; }
+        Path effort() { return DataPreprocessor.effortFileFor(processedCsv()); }
+        Path transform() { return DataPreprocessor.transformFileFor(processedCsv()); }
+        String bestModel() { return key + "_best_model.txt"; }
+        String pipelinesReport() { return key + "_pipelines.csv"; }
+        String analysisReport() { return key + "_analysis.txt"; }
+        String whatIfReport() { return key + "_whatif_sweep.csv"; }
+        String stage(String step) { return key + "/" + step; }
+    }
 
+    private static final List<Project> PROJECTS = List.of(
+            new Project("BOOKKEEPER", "https://github.com/apache/bookkeeper.git"),
+            new Project("SYNCOPE", "https://github.com/apache/syncope.git"));
 
+    /** The method pair files the comparison reads, so that editing other files does not make it stale. */
+    private static List<Path> methodPairInputs(Path methodPairs) {
         try {
+            return FeatureComparer.inputFiles(methodPairs);
+        } catch (IOException e) {
+            log.warn("Could not list the method pairs in {}: {}", methodPairs, e.getMessage());
+            return List.of(methodPairs);
+        }
+    }
 
-            // --- STAGE 1: DATASET CREATION ---
-            log.info("--- [1/3] CREATING DATASETS ---");
-            DatasetGenerator bookkeeperGenerator = new DatasetGenerator("BOOKKEEPER", "https://github.com/apache/bookkeeper.git");
-            bookkeeperGenerator.generateCsv();
-
-            DatasetGenerator syncopeGenerator = new DatasetGenerator("SYNCOPE", "https://github.com/apache/syncope.git");
-            syncopeGenerator.generateCsv();
-            log.info("--- DATASET CREATION COMPLETE ---");
-
-
-            // --- STAGE 2: DATA PREPROCESSING ---
-            log.info("--- [2/3] PREPROCESSING DATASETS ---");
-            DataPreprocessor bookkeeperProcessor = new DataPreprocessor("BOOKKEEPER.csv");
-            bookkeeperProcessor.processData();
-
-            DataPreprocessor syncopeProcessor = new DataPreprocessor("SYNCOPE.csv");
-            syncopeProcessor.processData();
-            log.info("--- PREPROCESSING COMPLETE ---");
-
-
-            // --- STAGE 3: CLASSIFIER EVALUATION ---
-            log.info("--- [3/4] EVALUATING CLASSIFIERS ---");
-            ClassifierRunner bookkeeperRunner = new ClassifierRunner(BK_PROCESSED);
-            bookkeeperRunner.runClassification();
-
-            ClassifierRunner syncopeRunner = new ClassifierRunner(SN_PROCESSED);
-            syncopeRunner.runClassification();
-            log.info("--- CLASSIFIER EVALUATION COMPLETE ---");
-
-            // --- STAGE 4: FEATURE & METHOD SELECTION (NEW STEP) ---
-            log.info("--- [4/4] SELECTING FEATURE AND METHOD FOR SIMULATION ---");
-            // We use the original CSV to get true feature values and the processed CSV for correlation
-            DataAnalyzer bookkeeperAnalyzer = new DataAnalyzer("BOOKKEEPER.csv", BK_PROCESSED);
-            bookkeeperAnalyzer.findActionableFeatureAndMethod();
-
-            DataAnalyzer syncopeAnalyzer = new DataAnalyzer("SYNCOPE.csv", SN_PROCESSED);
-            syncopeAnalyzer.findActionableFeatureAndMethod();
-            log.info("--- FEATURE & METHOD SELECTION COMPLETE ---");
-
-
-            log.info("--- CLASSIFIER EVALUATION COMPLETE ---");
-
-
-            FeatureComparer comparer = new FeatureComparer();
+    /**
+     * Runs the whole study as a checkpointed pipeline: stages whose inputs did not change since
+     * their last successful run are skipped. Pass {@code --force} to ignore the checkpoints, and
+     * {@code --refit} to refit the preprocessing on the whole datasets instead of only processing
+     * the rows they gained with the stored transform. {@code --method-pairs=<dir>} sets the
+     * directory (or manifest CSV) of the method pairs to compare; relative paths resolve against
+     * the working directory.
+     */
+    public static void main(String[] args) {
+        log.info("Starting What-If Analysis Data Generation...");
+        boolean force = Arrays.asList(args).contains("--force");
+        boolean refit = Arrays.asList(args).contains("--refit");
+        Path methodPairs = Path.of(Arrays.stream(args).filter(arg -> arg.startsWith("--method-pairs="))
+                .map(arg -> arg.substring("--method-pairs=".length()))
+                .reduce((first, last) -> last).orElse(DEFAULT_METHOD_PAIRS_DIR)).toAbsolutePath().normalize();
+        ObjectCacheSettings.forMining().install();
+
+        Pipeline pipeline = new Pipeline(CHECKPOINT_DIR);
+
+        // --- STAGE 1: DATASET CREATION ---
+        for (Project project : PROJECTS) {
+            pipeline.add(project.stage("dataset"), List.of(), project.gitUrl(),
+                    List.of(), List.of(Path.of(project.csv())),
+                    () -> {
+                        try (DatasetGenerator generator = new DatasetGenerator(project.key(), project.gitUrl())) {
+                            generator.generateCsv();
+                        }
+                    });
+        }
 
-            log.info("--- METHOD COMPARING COMPLETE ---");
-            // --- Analysis for BookKeeper ---
-            String bookkeeperOriginal = "D:/isw2project/DefectPredictionProject/src/main/java/com/dipalma/whatif/Bookkeeper_Original.txt";
-            String bookkeeperRefactored = "D:/isw2project/DefectPredictionProject/src/main/java/com/dipalma/whatif//Bookkeeper_Refactored.txt";
-            comparer.compareMethods(bookkeeperOriginal, bookkeeperRefactored);
+        // --- STAGE 2: DATA PREPROCESSING ---
+        for (Project project : PROJECTS) {
+            pipeline.add(project.stage("processed"), List.of(project.stage("dataset")), refit ? "refit" : "",
+                    List.of(Path.of(project.csv())), List.of(Path.of(project.processedCsv()), project.effort(), project.transform()),
+                    () -> {
+                        DataPreprocessor preprocessor = new DataPreprocessor(project.csv());
+                        if (refit) {
+                            preprocessor.refit();
+                        } else {
+                            preprocessor.processData();
+                        }
+                    });
+        }
 
-            // --- Analysis for Syncope ---
-            String syncopeOriginal = "D:/isw2project/DefectPredictionProject/src/main/java/com/dipalma/whatif/Syncope_Original.txt";
-            String syncopeRefactored = "D:/isw2project/DefectPredictionProject/src/main/java/com/dipalma/whatif/Syncope_Refactored.txt";
-            comparer.compareMethods(syncopeOriginal, syncopeRefactored);
+        // --- STAGE 3: CLASSIFIER EVALUATION AND HYPERPARAMETER SEARCH ---
+        for (Project project : PROJECTS) {
+            pipeline.add(project.stage("evaluation"), List.of(project.stage("processed")), SEARCH_STRATEGY.name(),
+                    List.of(Path.of(project.processedCsv()), project.effort(), project.transform()), List.of(Path.of(project.bestModel())),
+                    () -> {
+                        ClassifierRunner runner = new ClassifierRunner(project.processedCsv());
+                        runner.runClassification();
+                        runner.tuneHyperparameters(SEARCH_STRATEGY, Path.of(project.bestModel()));
+                    });
+        }
 
-            // STAGE 3: FINAL WHAT-IF ANALYSIS
-            log.info("--- What-if Analysis ---");
+        // --- Balancing x feature selection x classifier comparison ---
+        for (Project project : PROJECTS) {
+            pipeline.add(project.stage("pipelines"), List.of(project.stage("processed")), "",
+                    List.of(Path.of(project.processedCsv())), List.of(Path.of(project.pipelinesReport())),
+                    () -> new ClassifierRunner(project.processedCsv()).comparePipelines(Path.of(project.pipelinesReport())));
+        }
 
-            log.info("--- Analysis for BOOKKEEPER ---");
-            WhatIfSimulator bookkeeperSimulator = new WhatIfSimulator(BK_PROCESSED);
-            bookkeeperSimulator.runFullDatasetSimulation();
+        // --- STAGE 4: FEATURE & METHOD SELECTION ---
+        // We use the original CSV to get true feature values and the processed CSV for correlation
+        FeatureRanker ranker = new FeatureRanker(RANKING_CACHE_DIR);
+        for (Project project : PROJECTS) {
+            pipeline.add(project.stage("analysis"), List.of(project.stage("processed")), "",
+                    List.of(Path.of(project.csv()), Path.of(project.processedCsv())), List.of(Path.of(project.analysisReport())),
+                    () -> new DataAnalyzer(project.csv(), project.processedCsv(), ranker)
+                            .findActionableFeatureAndMethod(Path.of(project.analysisReport())));
+        }
 
-            log.info("--- Analysis for SYNCOPE ---");
-            WhatIfSimulator syncopeSimulator = new WhatIfSimulator(SN_PROCESSED);
-            syncopeSimulator.runFullDatasetSimulation();
+        // --- Refactoring comparison: every <Name>_Original.txt / <Name>_Refactored.txt pair ---
+        pipeline.add("method-comparison", List.of(), "",
+                methodPairInputs(methodPairs), List.of(Path.of("method_comparison.csv")),
+                () -> new FeatureComparer().compareAll(methodPairs, Path.of("method_comparison.csv")));
+
+        // --- STAGE 5: FINAL WHAT-IF ANALYSIS (single feature, then a sweep over actionable features) ---
+        // The model is the best one found by the hyperparameter search of stage 3.
+        for (Project project : PROJECTS) {
+            pipeline.add(project.stage("simulation"), List.of(project.stage("processed"), project.stage("evaluation")),
+                    Arrays.toString(SWEEP_PERCENTILES) + DataAnalyzer.ACTIONABLE_FEATURES,
+                    List.of(Path.of(project.processedCsv()), Path.of(project.bestModel())), List.of(Path.of(project.whatIfReport())),
+                    () -> {
+                        log.info("--- What-if Analysis for {} ---", project.key());
+                        WhatIfSimulator simulator = new WhatIfSimulator(project.processedCsv(),
+                                ClassifierConfig.read(Path.of(project.bestModel())));
+                        List<WhatIfSweep.ScenarioResult> results = new ArrayList<>();
+                        WhatIfSweep.ScenarioResult single = simulator.runFullDatasetSimulation();
+                        if (single != null) {
+                            results.add(single);
+                        }
+                        results.addAll(simulator.runFeatureSweep(DataAnalyzer.ACTIONABLE_FEATURES, SWEEP_PERCENTILES));
+                        WhatIfSweep.writeCsv(results, Path.of(project.whatIfReport()));
+                    });
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        Map<String, Pipeline.Outcome> outcomes = pipeline.run(force);
+        if (outcomes.containsValue(Pipeline.Outcome.FAILED) || outcomes.containsValue(Pipeline.Outcome.BLOCKED)) {
+            log.warn("Some stages did not complete; rerun to resume from them.");
+        } else {
+            log.info("All projects processed and evaluated.");
         }
 
-        log.info("All projects processed and evaluated.");
+        try {
+            Metrics.writeReport(METRICS_REPORT);
+            log.info("Timing and metrics report written to {}", METRICS_REPORT);
+        } catch (IOException e) {
+            log.warn("Could not write the metrics report: {}", e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
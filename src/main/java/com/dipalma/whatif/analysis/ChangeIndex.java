@@ -0,0 +1,218 @@
+package com.dipalma.whatif.analysis;
+
+import com.dipalma.whatif.connectors.GitConnector;
+import com.dipalma.whatif.metrics.Metrics;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The history behind a set of releases, diffed once and then shared read-only by every method of
+ * every release: each commit reachable from a release is diffed against its first parent a single
+ * time, and its edits are indexed by path. The change-history features of a method are then a
+ * lookup over the commits that touched its file, restricted to the ancestors of its release.
+ * <p>
+ * Same semantics as walking the history of each method: every ancestor with a parent counts
+ * (second parents of merges are walked, but diffs are against the first parent, without rename
+ * detection), and an edit touches the method when its post-change range overlaps the method's
+ * lines in the release.
+ */
+final class ChangeIndex {
+
+    private static final int MIN_COMMITS_PER_CHUNK = 32;
+
+    /** The edits of one commit to one path, as (beginA, endA, beginB, endB) quadruples. */
+    private record Touch(int commit, int[] edits) {
+    }
+
+    /** The edits of one commit, by path. */
+    private record CommitEdits(int commit, Map<String, int[]> editsByPath) {
+    }
+
+    /** Counters behind the change-history features of one method. */
+    static final class ChangeStats {
+        int revisions = 0;
+        final BitSet authors = new BitSet();
+        int linesAdded = 0;
+        int linesDeleted = 0;
+        int maxChurn = 0;
+        int totalChurn = 0;
+
+        Map<String, Number> toFeatures() {
+            Map<String, Number> features = new HashMap<>();
+            features.put("NR", revisions);
+            features.put("NAuth", authors.cardinality());
+            features.put("stmtAdded", linesAdded);
+            features.put("stmtDeleted", linesDeleted);
+            features.put("maxChurn", maxChurn);
+            features.put("avgChurn", revisions == 0 ? 0.0 : (double) totalChurn / revisions);
+            return features;
+        }
+    }
+
+    private final int[] authorOf;
+    private final Map<String, List<Touch>> touchesByPath;
+    private final Map<ObjectId, BitSet> ancestorsByRelease;
+
+    private ChangeIndex(int[] authorOf, Map<String, List<Touch>> touchesByPath, Map<ObjectId, BitSet> ancestorsByRelease) {
+        this.authorOf = authorOf;
+        this.touchesByPath = touchesByPath;
+        this.ancestorsByRelease = ancestorsByRelease;
+    }
+
+    static ChangeIndex build(GitConnector git, List<RevCommit> releases, int parallelism) throws IOException {
+        try (Metrics.Span span = Metrics.time("tracker.changeIndex")) {
+            return index(git, releases, parallelism);
+        }
+    }
+
+    private static ChangeIndex index(GitConnector git, List<RevCommit> releases, int parallelism) throws IOException {
+        // Commit graph: every ancestor of a release gets an ordinal, its parents and its author.
+        List<RevCommit> commits = new ArrayList<>();
+        Map<ObjectId, Integer> ordinals = new HashMap<>();
+        try (RevWalk walk = new RevWalk(git.getRepository())) {
+            for (RevCommit release : releases) {
+                walk.markStart(walk.parseCommit(release.getId()));
+            }
+            for (RevCommit commit : walk) {
+                ordinals.put(commit.getId(), commits.size());
+                commits.add(commit);
+            }
+        }
+        Metrics.add("tracker.churn.commitsWalked", commits.size());
+
+        int[][] parents = new int[commits.size()][];
+        int[] authorOf = new int[commits.size()];
+        Map<String, Integer> authorIds = new HashMap<>();
+        List<Integer> diffed = new ArrayList<>();
+        for (int c = 0; c < commits.size(); c++) {
+            RevCommit commit = commits.get(c);
+            parents[c] = new int[commit.getParentCount()];
+            for (int p = 0; p < parents[c].length; p++) {
+                parents[c][p] = ordinals.get(commit.getParent(p).getId());
+            }
+            authorOf[c] = authorIds.computeIfAbsent(commit.getAuthorIdent().getEmailAddress(), email -> authorIds.size());
+            if (commit.getParentCount() > 0) {
+                diffed.add(c);
+            }
+        }
+
+        List<CommitEdits> edits = git.mapWithReaders("tracker.churn", diffed, parallelism, MIN_COMMITS_PER_CHUNK, (reader, c) -> {
+            RevCommit commit = commits.get(c);
+            try (DiffFormatter fmt = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+                fmt.setReader(reader, git.getRepository().getConfig());
+                return new CommitEdits(c, editsByPath(fmt, commit.getParent(0).getTree(), commit.getTree()));
+            }
+        });
+        Metrics.add("tracker.churn.diffs", edits.size());
+
+        Map<String, List<Touch>> touchesByPath = new HashMap<>();
+        for (CommitEdits commitEdits : edits) {
+            commitEdits.editsByPath().forEach((path, pathEdits) ->
+                    touchesByPath.computeIfAbsent(path, p -> new ArrayList<>()).add(new Touch(commitEdits.commit(), pathEdits)));
+        }
+
+        Map<ObjectId, BitSet> ancestorsByRelease = new HashMap<>();
+        for (RevCommit release : releases) {
+            ancestorsByRelease.put(release.getId(), ancestors(ordinals.get(release.getId()), parents));
+        }
+        return new ChangeIndex(authorOf, touchesByPath, ancestorsByRelease);
+    }
+
+    private static Map<String, int[]> editsByPath(DiffFormatter fmt, ObjectId parentTree, ObjectId tree) throws IOException {
+        Map<String, int[]> editsByPath = new LinkedHashMap<>();
+        for (DiffEntry diff : fmt.scan(parentTree, tree)) {
+            List<Edit> editList = fmt.toFileHeader(diff).toEditList();
+            int[] flat = new int[editList.size() * 4];
+            for (int e = 0; e < editList.size(); e++) {
+                Edit edit = editList.get(e);
+                flat[4 * e] = edit.getBeginA();
+                flat[4 * e + 1] = edit.getEndA();
+                flat[4 * e + 2] = edit.getBeginB();
+                flat[4 * e + 3] = edit.getEndB();
+            }
+            for (String path : new String[]{diff.getOldPath(), diff.getNewPath()}) {
+                if (!DiffEntry.DEV_NULL.equals(path)) {
+                    editsByPath.merge(path, flat, ChangeIndex::concat);
+                }
+            }
+        }
+        return editsByPath;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (a == b) {
+            return a;
+        }
+        int[] result = new int[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static BitSet ancestors(int release, int[][] parents) {
+        BitSet seen = new BitSet(parents.length);
+        Deque<Integer> pending = new ArrayDeque<>();
+        seen.set(release);
+        pending.push(release);
+        while (!pending.isEmpty()) {
+            for (int parent : parents[pending.pop()]) {
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    pending.push(parent);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /** Change statistics of the lines [startLine, endLine] of {@code path} over the history of {@code release}. */
+    ChangeStats collectChangeStats(String path, int startLine, int endLine, ObjectId release) {
+        ChangeStats stats = new ChangeStats();
+        BitSet ancestors = ancestorsByRelease.get(release);
+        List<Touch> touches = touchesByPath.get(path);
+        if (ancestors == null || touches == null) {
+            return stats;
+        }
+        for (Touch touch : touches) {
+            if (!ancestors.get(touch.commit())) {
+                continue;
+            }
+            boolean touched = false;
+            int churn = 0;
+            int[] edits = touch.edits();
+            for (int e = 0; e < edits.length; e += 4) {
+                if (Math.max(startLine, edits[e + 2]) > Math.min(endLine, edits[e + 3])) {
+                    continue;
+                }
+                touched = true;
+                int added = Math.max(0, edits[e + 3] - edits[e + 2]);
+                int deleted = Math.max(0, edits[e + 1] - edits[e]);
+                stats.linesAdded += added;
+                stats.linesDeleted += deleted;
+                churn += added + deleted;
+            }
+            if (touched) {
+                stats.revisions++;
+                stats.authors.set(authorOf[touch.commit()]);
+                stats.totalChurn += churn;
+                stats.maxChurn = Math.max(stats.maxChurn, churn);
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,204 @@
+package com.dipalma.whatif.analysis;
+
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.Position;
+import com.github.javaparser.TokenRange;
+import com.github.javaparser.ast.body.CallableDeclaration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Token-based clone detection behind the "Duplication" feature.
+ * Each method is reduced to a sequence of normalized tokens (identifiers and literals collapse to
+ * a placeholder, so renamed copies still match), hashed into k-grams with a rolling hash and
+ * winnowed down to a small set of fingerprints. A release-wide index counts every fingerprint;
+ * a method's duplication is the share of its tokens covered by fingerprints that also occur
+ * elsewhere (in another method or in another place of the same method).
+ * <p>
+ * A callable declared inside another one (in an anonymous, local or enum-constant class) has
+ * tokens that are a subrange of the enclosing callable's: matches between the two are not clones
+ * and are not counted, for either of them. Apart from that check, which stops at the first
+ * occurrence in an unrelated method, the computation is linear in the number of tokens.
+ */
+public class CloneDetector {
+
+    /** Tokens per k-gram: shorter matches are not reported as clones. */
+    static final int K = 20;
+    /** Winnowing window: any match of at least {@code K + W - 1} tokens is guaranteed to be found. */
+    static final int W = 5;
+
+    private static final int BASE = 31;
+    private static final int BASE_POW_K_MINUS_1 = pow(BASE, K - 1);
+
+    /**
+     * Winnowed fingerprints of one method.
+     * @param hashes     the selected k-gram hashes
+     * @param positions  index of the first token of each selected k-gram
+     * @param tokenCount number of normalized tokens in the method
+     * @param begin      where the callable starts in its file, as {@code line << 32 | column}
+     * @param end        where it ends, likewise
+     */
+    public record MethodFingerprint(int[] hashes, int[] positions, int tokenCount, long begin, long end) {
+
+        /** Whether the two callables, from the same file, overlap: one is nested in the other. */
+        boolean overlaps(MethodFingerprint other) {
+            return begin <= other.end && other.begin <= end;
+        }
+    }
+
+    private CloneDetector() {
+    }
+
+    /** Fingerprints the tokens of a parsed callable (the parser must keep tokens, which is the default). */
+    public static MethodFingerprint fingerprint(CallableDeclaration<?> callable) {
+        int[] tokens = callable.getTokenRange().map(CloneDetector::normalizedTokens).orElse(new int[0]);
+        long begin = callable.getBegin().map(CloneDetector::pack).orElse(-1L);
+        long end = callable.getEnd().map(CloneDetector::pack).orElse(-1L);
+        return winnow(tokens, begin, end);
+    }
+
+    private static long pack(Position position) {
+        return (long) position.line << 32 | position.column;
+    }
+
+    /**
+     * Duplicated-token ratio, between 0 and 1, of every method against all the others.
+     * @param methods the fingerprints of every method of a release, keyed by any method identifier
+     * @param fileOf  the file of a method: only callables of the same file can be nested
+     */
+    public static <T> Map<T, Double> duplicationRatios(Map<T, MethodFingerprint> methods, Function<T, ?> fileOf) {
+        // Every occurrence of a hash, by the method it occurs in (a method once per occurrence).
+        Map<Integer, List<T>> occurrences = new HashMap<>();
+        Map<T, Object> files = new HashMap<>();
+        for (Map.Entry<T, MethodFingerprint> entry : methods.entrySet()) {
+            files.put(entry.getKey(), fileOf.apply(entry.getKey()));
+            for (int hash : entry.getValue().hashes()) {
+                occurrences.computeIfAbsent(hash, h -> new ArrayList<>(1)).add(entry.getKey());
+            }
+        }
+
+        Map<T, Double> ratios = new HashMap<>();
+        for (T method : methods.keySet()) {
+            ratios.put(method, coveredRatio(method, methods, files, occurrences));
+        }
+        return ratios;
+    }
+
+    /**
+     * Whether {@code hash} of {@code method} occurs elsewhere: twice in the method itself, or in a
+     * method that is neither nested in it nor encloses it.
+     */
+    private static <T> boolean duplicated(T method, List<T> owners, Map<T, MethodFingerprint> methods,
+                                          Map<T, Object> files) {
+        int own = 0;
+        for (T owner : owners) {
+            if (owner.equals(method)) {
+                if (++own > 1) {
+                    return true;
+                }
+            } else if (!Objects.equals(files.get(owner), files.get(method))
+                    || !methods.get(owner).overlaps(methods.get(method))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> double coveredRatio(T method, Map<T, MethodFingerprint> methods, Map<T, Object> files,
+                                           Map<Integer, List<T>> occurrences) {
+        MethodFingerprint fp = methods.get(method);
+        if (fp.tokenCount() == 0) {
+            return 0.0;
+        }
+        // Fingerprints are in token order, so covered ranges can be merged in one sweep.
+        int covered = 0;
+        int coveredUntil = 0;
+        for (int i = 0; i < fp.hashes().length; i++) {
+            if (duplicated(method, occurrences.get(fp.hashes()[i]), methods, files)) {
+                int start = Math.max(fp.positions()[i], coveredUntil);
+                int end = fp.positions()[i] + K;
+                if (end > start) {
+                    covered += end - start;
+                    coveredUntil = end;
+                }
+            }
+        }
+        return (double) covered / fp.tokenCount();
+    }
+
+    private static int[] normalizedTokens(TokenRange range) {
+        int[] tokens = new int[64];
+        int count = 0;
+        for (JavaToken token : range) {
+            JavaToken.Category category = token.getCategory();
+            if (category.isWhitespaceOrComment()) {
+                continue;
+            }
+            int value = switch (category) {
+                case IDENTIFIER -> 1;
+                case LITERAL -> 2;
+                default -> token.getText().hashCode();
+            };
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, count * 2);
+            }
+            tokens[count++] = value;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    /** Rolling k-gram hashes followed by winnowing (Schleimer et al.): the rightmost minimum of each window. */
+    private static MethodFingerprint winnow(int[] tokens, long begin, long finish) {
+        int grams = tokens.length - K + 1;
+        if (grams <= 0) {
+            return new MethodFingerprint(new int[0], new int[0], tokens.length, begin, finish);
+        }
+        int[] kgrams = new int[grams];
+        int hash = 0;
+        for (int i = 0; i < K; i++) {
+            hash = hash * BASE + tokens[i];
+        }
+        kgrams[0] = hash;
+        for (int i = 1; i < grams; i++) {
+            hash = (hash - tokens[i - 1] * BASE_POW_K_MINUS_1) * BASE + tokens[i + K - 1];
+            kgrams[i] = hash;
+        }
+
+        int[] hashes = new int[grams];
+        int[] positions = new int[grams];
+        int selected = 0;
+        int lastPicked = -1;
+        int windows = Math.max(1, grams - W + 1);
+        for (int start = 0; start < windows; start++) {
+            int end = Math.min(grams, start + W);
+            int min = start;
+            for (int i = start + 1; i < end; i++) {
+                if (kgrams[i] <= kgrams[min]) {
+                    min = i;
+                }
+            }
+            if (min != lastPicked) {
+                hashes[selected] = kgrams[min];
+                positions[selected] = min;
+                selected++;
+                lastPicked = min;
+            }
+        }
+        return new MethodFingerprint(Arrays.copyOf(hashes, selected), Arrays.copyOf(positions, selected), tokens.length,
+                begin, finish);
+    }
+
+    private static int pow(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+}
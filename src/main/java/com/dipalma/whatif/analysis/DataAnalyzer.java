@@ -1,22 +1,16 @@
 package com.dipalma.whatif.analysis;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import weka.attributeSelection.AttributeSelection;
-import weka.attributeSelection.InfoGainAttributeEval;
-import weka.attributeSelection.Ranker;
 import weka.core.Instances;
 import weka.core.converters.CSVLoader;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,13 +19,30 @@ public class DataAnalyzer {
 
     private final String originalCsvPath;
     private final String processedCsvPath;
+    private final FeatureRanker ranker;
     private Instances data;
     private static final Logger log = LoggerFactory.getLogger(DataAnalyzer.class);
     private static final String RANK_ROW_FMT = "%-4d | %-7.4f | %s";
+    private static final int TOP_CANDIDATES = 5;
+
+    // Shared by the analyzers that are not given a ranker, so its cache outlives each of them.
+    private static final FeatureRanker SHARED_RANKER = new FeatureRanker();
+
+    private static final List<RankingStrategy> RANKING_STRATEGIES =
+            List.of(RankingStrategy.INFO_GAIN, RankingStrategy.GAIN_RATIO, RankingStrategy.CORRELATION);
+
+    /** Features a developer can act on by refactoring, as opposed to process/history metrics. */
+    public static final List<String> ACTIONABLE_FEATURES = List.of("LOC", "CyclomaticComplexity", "ParameterCount", "Duplication");
 
     public DataAnalyzer(String originalCsvPath, String processedCsvPath) {
+        this(originalCsvPath, processedCsvPath, SHARED_RANKER);
+    }
+
+    /** Ranks with {@code ranker}, e.g. one shared across projects with an on-disk cache. */
+    public DataAnalyzer(String originalCsvPath, String processedCsvPath, FeatureRanker ranker) {
         this.originalCsvPath = originalCsvPath;
         this.processedCsvPath = processedCsvPath;
+        this.ranker = ranker;
     }
 
     private void loadProcessedData() throws IOException {
@@ -43,90 +54,91 @@ public class DataAnalyzer {
         }
     }
 
-    public void findActionableFeatureAndMethod() throws Exception {
+    /** Finds AFeature and AFMethod, writing the rankings and both choices to {@code reportFile}. */
+    public void findActionableFeatureAndMethod(Path reportFile) throws Exception {
         if (this.data == null) {
             loadProcessedData();
         }
+        List<String> report = new ArrayList<>();
 
         log.info("--- Step 4: Calculating Feature Correlation with Bugginess ---");
-        AttributeSelection selector = new AttributeSelection();
-        InfoGainAttributeEval evaluator = new InfoGainAttributeEval();
-        Ranker search = new Ranker();
-        selector.setEvaluator(evaluator);
-        selector.setSearch(search);
-        selector.SelectAttributes(data);
-
-        // rankedAttributes() returns features from best to worst.
-        double[][] rankedAttributes = selector.rankedAttributes();
-        log.info("Rank | Score   | Feature");
-
-        // *** THE FIX IS HERE ***
-        // We use a simple counter variable for the rank instead of calling a non-existent method.
-        int rank = 1;
-        for (double[] rankedAttribute : rankedAttributes) {
-            // Weka returns an array where [0] is the attribute index and [1] is its score.
-            int index = (int) rankedAttribute[0];
-            double score = rankedAttribute[1];
-            if (log.isDebugEnabled()) {
-                String attrName = data.attribute(index).name();
-                log.debug("{}", String.format(RANK_ROW_FMT, rank, score, attrName));
+        // Info gain drives the choice of AFeature; the other rankings are computed concurrently for comparison.
+        Map<String, double[][]> rankings = ranker.rank(data, RANKING_STRATEGIES);
+        double[][] rankedAttributes = rankings.get(RankingStrategy.INFO_GAIN.name());
+
+        for (Map.Entry<String, double[][]> ranking : rankings.entrySet()) {
+            log.info("{} ranking:", ranking.getKey());
+            log.info("Rank | Score   | Feature");
+            report.add(ranking.getKey() + " ranking:");
+            report.add("Rank | Score   | Feature");
+            int rank = 1;
+            for (double[] rankedAttribute : ranking.getValue()) {
+                // Each row is [attribute index, score], best first.
+                int index = (int) rankedAttribute[0];
+                double score = rankedAttribute[1];
+                String row = String.format(RANK_ROW_FMT, rank, score, data.attribute(index).name());
+                log.debug("{}", row);
+                report.add(row);
+                rank++;
             }
-            rank++;
+            report.add("");
         }
 
 
         log.info("--- Step 5: Identifying Top Actionable Feature (AFeature) ---");
-        List<String> actionableFeatures = Arrays.asList("LOC", "CyclomaticComplexity", "ParameterCount", "Duplication");
         String aFeature = "";
         double highestScore = -1.0;
 
         // Iterate through the ranked list to find the first one that is "actionable"
         for (double[] rankedAttribute : rankedAttributes) {
             String featureName = data.attribute((int) rankedAttribute[0]).name();
-            if (actionableFeatures.contains(featureName)) {
+            if (ACTIONABLE_FEATURES.contains(featureName)) {
                 aFeature = featureName;
                 highestScore = rankedAttribute[1];
                 break; // Found the highest ranked actionable feature
             }
         }
-        if (log.isInfoEnabled()) {
-            String score4 = String.format("%.4f", highestScore);
-            log.info("Identified AFeature: {} (Score: {})", aFeature, score4);
-        }
+        String score4 = String.format("%.4f", highestScore);
+        log.info("Identified AFeature: {} (Score: {})", aFeature, score4);
+        report.add("AFeature: " + aFeature + " (Score: " + score4 + ")");
 
         log.info("--- Step 6: Identifying Target Method (AFMethod) ---");
-        findHighImpactMethod(aFeature);
+        findHighImpactMethod(aFeature, report);
+
+        Files.write(reportFile, report, StandardCharsets.UTF_8);
+        log.info("Analysis report saved to: {}", reportFile);
     }
 
-    private void findHighImpactMethod(String aFeature) throws IOException {
-        Reader in = new FileReader(originalCsvPath);
-        CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in);
-        List<CSVRecord> records = parser.getRecords();
+    private void findHighImpactMethod(String aFeature, List<String> report) throws IOException {
+        Map<String, List<TopMethodSelector.RankedMethod>> topPerRelease =
+                new TopMethodSelector(originalCsvPath).topBuggyPerRelease(aFeature, TOP_CANDIDATES);
 
-        if (records.isEmpty()) {
+        if (topPerRelease.isEmpty()) {
             log.info("Dataset is empty, cannot find AFMethod.");
+            report.add("AFMethod: none (empty dataset)");
             return;
         }
 
-        String lastRelease = records.getLast().get("Release");
+        String lastRelease = List.copyOf(topPerRelease.keySet()).getLast();
+        List<TopMethodSelector.RankedMethod> candidates = topPerRelease.get(lastRelease);
 
-        Optional<CSVRecord> afMethodOpt = records.stream()
-                .filter(r -> r.get("Release").equals(lastRelease))
-                .filter(r -> r.get("IsBuggy").equalsIgnoreCase("yes"))
-                .max(Comparator.comparingDouble(r -> Double.parseDouble(r.get(aFeature))));
-
-        if (afMethodOpt.isPresent()) {
-            CSVRecord afMethod = afMethodOpt.get();
+        if (!candidates.isEmpty()) {
+            TopMethodSelector.RankedMethod afMethod = candidates.getFirst();
             log.info("Identified AFMethod (buggy method in last release with highest {}):", aFeature);
-            if (log.isInfoEnabled()) {
-                Object methodName   = afMethod.get("MethodName");
-                Object featureValue = afMethod.get(aFeature);
+            log.info("  MethodName: {}", afMethod.methodName());
+            log.info("  {} Value: {}", aFeature, afMethod.value());
+
+            report.add("AFMethod: " + afMethod.methodName() + " (" + aFeature + " = " + afMethod.value()
+                    + ", release " + lastRelease + ")");
 
-                log.info("  MethodName: {}", methodName);
-                log.info("  {} Value: {}", aFeature, featureValue);
+            log.info("Other refactoring candidates in release {}:", lastRelease);
+            for (TopMethodSelector.RankedMethod candidate : candidates.subList(1, candidates.size())) {
+                log.info("  {} ({} = {})", candidate.methodName(), aFeature, candidate.value());
+                report.add("Candidate: " + candidate.methodName() + " (" + aFeature + " = " + candidate.value() + ")");
             }
         } else {
             log.warn("Could not find any buggy methods in the last release ({}) to select AFMethod.", lastRelease);
+            report.add("AFMethod: none (no buggy methods in release " + lastRelease + ")");
         }
     }
 }
\ No newline at end of file
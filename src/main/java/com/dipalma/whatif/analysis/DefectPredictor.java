@@ -0,0 +1,168 @@
+package com.dipalma.whatif.analysis;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.BatchPredictor;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Batched, parallel inference for a trained defect model.
+ * The rows of a dataset, or of a {@link WhatIfView} over it, are split into contiguous chunks,
+ * each predicted on its own copy of the model (Weka classifiers are not thread-safe). Chunks go
+ * through {@link BatchPredictor} when the classifier has a more efficient batch path, and one row
+ * at a time otherwise.
+ * Predictions are memoized per dataset, so subsets of an already predicted dataset can be counted
+ * from the cached result instead of running the model again.
+ */
+public class DefectPredictor {
+
+    private static final int MIN_ROWS_PER_CHUNK = 256;
+
+    private final Classifier model;
+    private final int parallelism;
+    private final Map<Instances, boolean[]> memo = new IdentityHashMap<>();
+    private Classifier[] workerModels;
+
+    public DefectPredictor(Classifier model) {
+        this(model, Runtime.getRuntime().availableProcessors());
+    }
+
+    public DefectPredictor(Classifier model, int parallelism) {
+        this.model = model;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Returns, for every row of {@code data}, whether the model predicts it as defective.
+     * The result is cached for this exact {@code Instances} object; callers must not modify the
+     * dataset after it has been predicted.
+     */
+    public synchronized boolean[] predictDefective(Instances data) throws Exception {
+        boolean[] cached = memo.get(data);
+        if (cached != null) {
+            return cached;
+        }
+        boolean[] predictions = runPrediction(WhatIfView.of(data));
+        memo.put(data, predictions);
+        return predictions;
+    }
+
+    /**
+     * Returns, for every row of the view, whether the model predicts it as defective.
+     * Views are cheap to build, so their predictions are not memoized.
+     */
+    public boolean[] predictDefective(WhatIfView view) throws Exception {
+        return runPrediction(view);
+    }
+
+    /** Number of rows predicted as defective. */
+    public static int countDefective(boolean[] predictions) {
+        int count = 0;
+        for (boolean p : predictions) {
+            if (p) count++;
+        }
+        return count;
+    }
+
+    /** Number of the given rows predicted as defective, e.g. a partition of an already predicted dataset. */
+    public static int countDefective(boolean[] predictions, int[] rows) {
+        int count = 0;
+        for (int row : rows) {
+            if (predictions[row]) count++;
+        }
+        return count;
+    }
+
+    /** Index of the "buggy" label of the class attribute ("1" or "yes"), or -1 if absent. */
+    public static int buggyClassIndex(Attribute classAttribute) {
+        int index = classAttribute.indexOfValue("1");
+        if (index == -1) {
+            index = classAttribute.indexOfValue("yes");
+        }
+        return index;
+    }
+
+    private synchronized boolean[] runPrediction(WhatIfView view) throws Exception {
+        int numRows = view.size();
+        int buggyIndex = buggyClassIndex(view.base().classAttribute());
+        boolean[] predictions = new boolean[numRows];
+
+        int chunks = Math.min(parallelism, Math.max(1, numRows / MIN_ROWS_PER_CHUNK));
+        if (chunks == 1) {
+            predictRange(model, view, 0, numRows, buggyIndex, predictions);
+            return predictions;
+        }
+
+        Classifier[] copies = workerModels(chunks);
+        int chunkSize = (numRows + chunks - 1) / chunks;
+        try (ExecutorService pool = Executors.newFixedThreadPool(chunks)) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int c = 0; c < chunks; c++) {
+                Classifier copy = copies[c];
+                int from = c * chunkSize;
+                int to = Math.min(numRows, from + chunkSize);
+                futures.add(pool.submit(() -> {
+                    predictRange(copy, view, from, to, buggyIndex, predictions);
+                    return null;
+                }));
+            }
+            awaitAll(futures);
+        }
+        return predictions;
+    }
+
+    private Classifier[] workerModels(int count) throws Exception {
+        if (workerModels == null || workerModels.length < count) {
+            workerModels = AbstractClassifier.makeCopies(model, count);
+        }
+        return workerModels;
+    }
+
+    private static void predictRange(Classifier model, WhatIfView view, int from, int to,
+                                     int buggyIndex, boolean[] predictions) throws Exception {
+        if (from >= to) {
+            return;
+        }
+        WhatIfView.Cursor cursor = view.cursor();
+        if (model instanceof BatchPredictor batch && batch.implementsMoreEfficientBatchPrediction()) {
+            // The batch API needs real Instances: only this chunk is materialized.
+            Instances chunk = new Instances(view.base(), to - from);
+            for (int i = from; i < to; i++) {
+                chunk.add(cursor.instance(i));
+            }
+            double[][] distributions = batch.distributionsForInstances(chunk);
+            for (int i = 0; i < distributions.length; i++) {
+                predictions[from + i] = Utils.maxIndex(distributions[i]) == buggyIndex;
+            }
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            predictions[i] = model.classifyInstance(cursor.instance(i)) == buggyIndex;
+        }
+    }
+
+    static void awaitAll(List<? extends Future<?>> futures) throws Exception {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
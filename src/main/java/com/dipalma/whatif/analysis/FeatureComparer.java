@@ -4,17 +4,28 @@ import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.ast.body.ConstructorDeclaration;
-import com.github.javaparser.ast.expr.ConditionalExpr;
-import com.github.javaparser.ast.stmt.*;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.file.Files;
-import java.util.Arrays;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +35,10 @@ public class FeatureComparer {
     private static final Logger log = LoggerFactory.getLogger(FeatureComparer.class);
     private static final String HEADER_FMT = "%-25s | %-15s | %-15s";
     private static final String ROW_FMT    = "%-25s | %-15s | %-15s%s";
+    private static final String ORIGINAL_SUFFIX = "_Original.txt";
+    private static final String REFACTORED_SUFFIX = "_Refactored.txt";
+    private static final List<String> FEATURE_NAMES = List.of("LOC", "CyclomaticComplexity", "ParameterCount", "Duplication",
+            "StatementCount", "MaxNesting", "FanOut", "ReturnCount", "NR", "NAuth");
 
     /**
      * Analyzes two text files and compares the features of the method found in each.
@@ -32,15 +47,16 @@ public class FeatureComparer {
         log.info("--- Comparing Features of Original vs. Refactored Method ---");
 
         log.info("Analyzing original file: {}", originalFilePath);
-        Map<String, Number> featuresBefore = extractFeaturesFromFile(originalFilePath);
+        Map<String, Number> featuresBefore = extractFeaturesFromFile(originalFilePath).orElseGet(HashMap::new);
 
         log.info("Analyzing refactored file: {}", refactoredFilePath);
-        Map<String, Number> featuresAfter = extractFeaturesFromFile(refactoredFilePath);
+        Map<String, Number> featuresAfter = extractFeaturesFromFile(refactoredFilePath).orElseGet(HashMap::new);
 
         printComparison(featuresBefore, featuresAfter);
     }
 
-    private Map<String, Number> extractFeaturesFromFile(String filePath) throws IOException {
+    /** @return the features of the method in {@code filePath}, or empty if it does not parse */
+    private Optional<Map<String, Number>> extractFeaturesFromFile(String filePath) throws IOException {
         String content = Files.readString(new File(filePath).toPath());
 
         String nameToken = content.trim().split("\\(")[0].trim();
@@ -60,34 +76,187 @@ public class FeatureComparer {
             }
         } catch (Exception e) {
             log.error("FATAL: Failed to parse content from file: {}", filePath, e);
-            return new HashMap<>();
+            return Optional.empty();
         }
 
-        return calculateFeatures(callable);
+        return Optional.of(calculateFeatures(callable));
     }
 
     private Map<String, Number> calculateFeatures(CallableDeclaration<?> callable) {
-        Map<String, Number> features = new HashMap<>();
+        Map<String, Number> features = StaticMetricsVisitor.compute(callable);
+        // A single method has no release to compare against: only its internal repetition counts.
+        features.put("Duplication", CloneDetector.duplicationRatios(Map.of(callable, CloneDetector.fingerprint(callable)), c -> c).get(callable));
+        features.put("NR", 2);
+        features.put("NAuth", 2);
+        return features;
+    }
+
+    /** An original/refactored pair of method files, named after the original file's prefix. */
+    public record MethodPair(String name, Path original, Path refactored) {
+    }
 
-        int loc = callable.getEnd().map(p -> p.line).orElse(0) - callable.getBegin().map(p -> p.line).orElse(0);
-        features.put("LOC", loc);
+    /** The features of both files of a pair; {@code error} names the file that did not parse, if any. */
+    private record PairFeatures(MethodPair pair, Map<String, Number> before, Map<String, Number> after, String error) {
 
-        AtomicInteger complexity = new AtomicInteger(1);
-        callable.walk(node -> {
-            if (node instanceof IfStmt || node instanceof ForStmt || node instanceof WhileStmt ||
-                    node instanceof DoStmt || node instanceof SwitchEntry || node instanceof CatchClause ||
-                    node instanceof ConditionalExpr) {
-                complexity.incrementAndGet();
+        static PairFeatures of(MethodPair pair, Optional<Map<String, Number>> before, Optional<Map<String, Number>> after) {
+            if (before.isEmpty()) {
+                return new PairFeatures(pair, Map.of(), Map.of(), "unparsable " + pair.original());
             }
-        });
-        features.put("CyclomaticComplexity", complexity.get());
-        features.put("ParameterCount", callable.getParameters().size());
+            if (after.isEmpty()) {
+                return new PairFeatures(pair, Map.of(), Map.of(), "unparsable " + pair.refactored());
+            }
+            return new PairFeatures(pair, before.get(), after.get(), null);
+        }
 
-        features.put("Duplication", 0);
-        features.put("NR", 2);
-        features.put("NAuth", 2);
+        boolean failed() {
+            return error != null;
+        }
+    }
 
-        return features;
+    /**
+     * Batch mode: compares every original/refactored pair found in {@code source} and writes a single
+     * feature-delta table to {@code outputCsv}. {@code source} is either a directory holding
+     * {@code <name>_Original.txt} / {@code <name>_Refactored.txt} files, or a manifest CSV with one
+     * {@code original,refactored} pair per line (relative paths resolve against the manifest's folder).
+     * Pairs are parsed in parallel. A pair with a file that does not parse gets a row with its
+     * {@code Status} and empty feature cells, so it can never be mistaken for a measurement.
+     */
+    public void compareAll(Path source, Path outputCsv) throws IOException {
+        if (!Files.exists(source)) {
+            throw new NoSuchFileException(source.toAbsolutePath().toString(), null,
+                    "no method pairs directory or manifest here (set it with --method-pairs=<dir>)");
+        }
+        List<MethodPair> pairs = Files.isDirectory(source) ? findPairsInDirectory(source) : readManifest(source);
+        log.info("--- Comparing {} method pairs from {} ---", pairs.size(), source);
+
+        List<PairFeatures> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            List<Future<PairFeatures>> futures = new ArrayList<>();
+            for (MethodPair pair : pairs) {
+                futures.add(pool.submit(() -> PairFeatures.of(pair,
+                        extractFeaturesFromFile(pair.original().toString()),
+                        extractFeaturesFromFile(pair.refactored().toString()))));
+            }
+            for (Future<PairFeatures> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while comparing method pairs", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compare method pairs", e.getCause());
+        }
+
+        int failed = 0;
+        for (PairFeatures result : results) {
+            if (result.failed()) {
+                log.warn("Pair {} not compared: {}", result.pair().name(), result.error());
+                failed++;
+                continue;
+            }
+            log.info("Pair: {}", result.pair().name());
+            printComparison(result.before(), result.after());
+        }
+        writeDeltaTable(results, outputCsv);
+        log.info("Feature-delta table for {} pairs saved to: {}", pairs.size(), outputCsv);
+        if (failed > 0) {
+            log.warn("{} of {} pairs could not be parsed; their rows in {} have no feature values.",
+                    failed, pairs.size(), outputCsv);
+        }
+    }
+
+    /**
+     * The files {@link #compareAll} reads from {@code source}: the manifest if it is one, and both
+     * files of every pair. Just {@code source} if it does not exist.
+     */
+    public static List<Path> inputFiles(Path source) throws IOException {
+        if (!Files.exists(source)) {
+            return List.of(source);
+        }
+        List<Path> files = new ArrayList<>();
+        List<MethodPair> pairs;
+        if (Files.isDirectory(source)) {
+            pairs = findPairsInDirectory(source);
+        } else {
+            files.add(source);
+            pairs = readManifest(source);
+        }
+        for (MethodPair pair : pairs) {
+            files.add(pair.original());
+            files.add(pair.refactored());
+        }
+        return files;
+    }
+
+    private static List<MethodPair> findPairsInDirectory(Path dir) throws IOException {
+        List<MethodPair> pairs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path original : files.filter(f -> f.getFileName().toString().endsWith(ORIGINAL_SUFFIX)).sorted().toList()) {
+                String fileName = original.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - ORIGINAL_SUFFIX.length());
+                Path refactored = dir.resolve(name + REFACTORED_SUFFIX);
+                if (Files.exists(refactored)) {
+                    pairs.add(new MethodPair(name, original, refactored));
+                } else {
+                    log.warn("No refactored counterpart for {}, skipping.", original);
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static List<MethodPair> readManifest(Path manifest) throws IOException {
+        Path baseDir = manifest.toAbsolutePath().getParent();
+        List<MethodPair> pairs = new ArrayList<>();
+        try (Reader in = Files.newBufferedReader(manifest);
+             CSVParser parser = CSVFormat.DEFAULT.parse(in)) {
+            for (CSVRecord r : parser) {
+                if (r.size() < 2 || r.get(0).isBlank() || r.get(0).startsWith("#")) {
+                    continue;
+                }
+                Path original = baseDir.resolve(r.get(0).trim());
+                Path refactored = baseDir.resolve(r.get(1).trim());
+                String name = r.size() > 2 ? r.get(2).trim() : original.getFileName().toString();
+                pairs.add(new MethodPair(name, original, refactored));
+            }
+        }
+        return pairs;
+    }
+
+    private static void writeDeltaTable(List<PairFeatures> results, Path outputCsv) throws IOException {
+        List<String> header = new ArrayList<>(List.of("Pair", "Original", "Refactored", "Status"));
+        for (String feature : FEATURE_NAMES) {
+            header.add(feature + "_before");
+            header.add(feature + "_after");
+            header.add(feature + "_delta");
+        }
+        try (Writer out = Files.newBufferedWriter(outputCsv);
+             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT)) {
+            printer.printRecord(header);
+            for (PairFeatures result : results) {
+                MethodPair pair = result.pair();
+                Map<String, Number> before = result.before();
+                Map<String, Number> after = result.after();
+                List<Object> row = new ArrayList<>(List.of(pair.name(), pair.original(), pair.refactored()));
+                if (result.failed()) {
+                    row.add(result.error());
+                    for (int i = 0; i < FEATURE_NAMES.size() * 3; i++) {
+                        row.add("");
+                    }
+                    printer.printRecord(row);
+                    continue;
+                }
+                row.add("OK");
+                for (String feature : FEATURE_NAMES) {
+                    Number b = before.getOrDefault(feature, 0);
+                    Number a = after.getOrDefault(feature, 0);
+                    row.add(b);
+                    row.add(a);
+                    row.add(a.doubleValue() - b.doubleValue());
+                }
+                printer.printRecord(row);
+            }
+        }
     }
 
     private void printComparison(Map<String, Number> before, Map<String, Number> after) {
@@ -96,9 +265,7 @@ public class FeatureComparer {
             log.info("{}", String.format(HEADER_FMT, "Feature", "Before Refactor", "After Refactor"));
         }
 
-        List<String> featureNames = Arrays.asList("LOC", "CyclomaticComplexity", "ParameterCount", "Duplication", "NR", "NAuth");
-
-        for(String feature : featureNames) {
+        for(String feature : FEATURE_NAMES) {
             // *** THE FIX IS HERE: Use a valid Number (0) as the default value ***
             String beforeValue = before.getOrDefault(feature, 0).toString();
             String afterValue = after.getOrDefault(feature, 0).toString();
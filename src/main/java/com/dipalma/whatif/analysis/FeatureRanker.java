@@ -0,0 +1,224 @@
+package com.dipalma.whatif.analysis;
+
+import weka.attributeSelection.ASEvaluation;
+import weka.attributeSelection.AttributeEvaluator;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Remove;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ranks the attributes of a dataset against its class with one or more {@link RankingStrategy}s.
+ * All strategies run concurrently; strategies that score attributes independently are further
+ * split into one task per attribute. Each ranker caches its rankings by a hash of the dataset
+ * content: asking the same ranker again for the same data costs one pass over the values to hash
+ * them, but no scoring. The cache lives as long as the ranker and, if the ranker has a cache
+ * directory, on disk too, one file per dataset hash and strategy, so later runs reuse it.
+ */
+public class FeatureRanker {
+
+    private final Map<String, double[][]> cache = new ConcurrentHashMap<>();
+    private final Path cacheDir;
+    private final int parallelism;
+
+    public FeatureRanker() {
+        this(null);
+    }
+
+    /** A ranker that also stores its rankings in {@code cacheDir}, or only in memory if it is null. */
+    public FeatureRanker(Path cacheDir) {
+        this(cacheDir, Runtime.getRuntime().availableProcessors());
+    }
+
+    public FeatureRanker(Path cacheDir, int parallelism) {
+        this.cacheDir = cacheDir;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Ranks the non-class attributes of {@code data} with a single strategy.
+     * @return rows of {@code [attributeIndex, score]} from best to worst, like Weka's {@code rankedAttributes()}.
+     */
+    public double[][] rank(Instances data, RankingStrategy strategy) throws Exception {
+        return rank(data, List.of(strategy)).get(strategy.name());
+    }
+
+    /** Ranks {@code data} with every strategy concurrently; the result is keyed by strategy name. */
+    public Map<String, double[][]> rank(Instances data, List<RankingStrategy> strategies) throws Exception {
+        String dataHash = contentHash(data);
+        Map<String, double[][]> rankings = new LinkedHashMap<>();
+        List<RankingStrategy> missing = new ArrayList<>();
+        for (RankingStrategy strategy : strategies) {
+            double[][] cached = cached(dataHash, strategy);
+            if (cached != null) {
+                rankings.put(strategy.name(), cached);
+            } else {
+                missing.add(strategy);
+            }
+        }
+        if (missing.isEmpty()) {
+            return rankings;
+        }
+
+        int[] attributes = nonClassAttributes(data);
+        Map<RankingStrategy, List<Future<double[]>>> pending = new LinkedHashMap<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(parallelism)) {
+            for (RankingStrategy strategy : missing) {
+                List<Future<double[]>> scores = new ArrayList<>();
+                if (strategy.perAttribute()) {
+                    for (int attr : attributes) {
+                        scores.add(pool.submit(() -> new double[]{scoreOnProjection(data, attr, strategy)}));
+                    }
+                } else {
+                    scores.add(pool.submit(() -> scoreAll(data, attributes, strategy)));
+                }
+                pending.put(strategy, scores);
+            }
+            DefectPredictor.awaitAll(pending.values().stream().flatMap(List::stream).toList());
+
+            for (Map.Entry<RankingStrategy, List<Future<double[]>>> entry : pending.entrySet()) {
+                double[] scores = new double[attributes.length];
+                int k = 0;
+                for (Future<double[]> future : entry.getValue()) {
+                    for (double score : future.get()) {
+                        scores[k++] = score;
+                    }
+                }
+                double[][] ranked = toRanking(attributes, scores);
+                store(dataHash, entry.getKey(), ranked);
+                rankings.put(entry.getKey().name(), ranked);
+            }
+        }
+        return rankings;
+    }
+
+    /** Scores one attribute on a copy of the data reduced to that attribute and the class. */
+    private static double scoreOnProjection(Instances data, int attr, RankingStrategy strategy) throws Exception {
+        Remove keep = new Remove();
+        keep.setAttributeIndicesArray(new int[]{attr, data.classIndex()});
+        keep.setInvertSelection(true);
+        keep.setInputFormat(data);
+        Instances projection = Filter.useFilter(data, keep);
+
+        ASEvaluation evaluator = strategy.evaluator().get();
+        evaluator.buildEvaluator(projection);
+        return ((AttributeEvaluator) evaluator).evaluateAttribute(attr < data.classIndex() ? 0 : 1);
+    }
+
+    private static double[] scoreAll(Instances data, int[] attributes, RankingStrategy strategy) throws Exception {
+        ASEvaluation evaluator = strategy.evaluator().get();
+        evaluator.buildEvaluator(data);
+        double[] scores = new double[attributes.length];
+        for (int k = 0; k < attributes.length; k++) {
+            scores[k] = ((AttributeEvaluator) evaluator).evaluateAttribute(attributes[k]);
+        }
+        return scores;
+    }
+
+    private static double[][] toRanking(int[] attributes, double[] scores) {
+        double[][] ranked = new double[attributes.length][];
+        for (int k = 0; k < attributes.length; k++) {
+            ranked[k] = new double[]{attributes[k], scores[k]};
+        }
+        Arrays.sort(ranked, Comparator.comparingDouble((double[] r) -> r[1]).reversed());
+        return ranked;
+    }
+
+    private static int[] nonClassAttributes(Instances data) {
+        int[] attributes = new int[data.numAttributes() - 1];
+        int k = 0;
+        for (int i = 0; i < data.numAttributes(); i++) {
+            if (i != data.classIndex()) {
+                attributes[k++] = i;
+            }
+        }
+        return attributes;
+    }
+
+    private static String cacheKey(String dataHash, RankingStrategy strategy) {
+        return dataHash + "-" + strategy.name();
+    }
+
+    /** The ranking from memory, else from the cache directory; null if neither has it. */
+    private double[][] cached(String dataHash, RankingStrategy strategy) throws IOException {
+        String key = cacheKey(dataHash, strategy);
+        double[][] ranked = cache.get(key);
+        if (ranked != null || cacheDir == null || !Files.exists(cacheFile(key))) {
+            return ranked;
+        }
+        List<String> lines = Files.readAllLines(cacheFile(key), StandardCharsets.UTF_8);
+        ranked = new double[lines.size()][];
+        for (int k = 0; k < ranked.length; k++) {
+            String[] row = lines.get(k).split(",");
+            ranked[k] = new double[]{Double.parseDouble(row[0]), Double.parseDouble(row[1])};
+        }
+        cache.put(key, ranked);
+        return ranked;
+    }
+
+    /** Keeps the ranking in memory and, moved into place atomically, in the cache directory. */
+    private void store(String dataHash, RankingStrategy strategy, double[][] ranked) throws IOException {
+        String key = cacheKey(dataHash, strategy);
+        cache.put(key, ranked);
+        if (cacheDir == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(ranked.length);
+        for (double[] row : ranked) {
+            // Double.toString round-trips exactly.
+            lines.add((int) row[0] + "," + row[1]);
+        }
+        Files.createDirectories(cacheDir);
+        Path temp = Files.createTempFile(cacheDir, key, ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, cacheFile(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path cacheFile(String key) {
+        return cacheDir.resolve(key + ".csv");
+    }
+
+    /** SHA-256 over the attribute names, class index and every value of the dataset. */
+    static String contentHash(Instances data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        for (int i = 0; i < data.numAttributes(); i++) {
+            digest.update(data.attribute(i).name().getBytes(StandardCharsets.UTF_8));
+        }
+        ByteBuffer row = ByteBuffer.allocate(Double.BYTES * data.numAttributes() + Integer.BYTES);
+        row.putInt(data.classIndex());
+        digest.update(row.array(), 0, Integer.BYTES);
+        for (Instance instance : data) {
+            row.clear();
+            for (int j = 0; j < data.numAttributes(); j++) {
+                row.putDouble(instance.value(j));
+            }
+            digest.update(row.array(), 0, row.position());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
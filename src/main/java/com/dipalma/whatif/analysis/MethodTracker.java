@@ -4,283 +4,236 @@ package com.dipalma.whatif.analysis;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.CallableDeclaration;
-import com.github.javaparser.ast.expr.ConditionalExpr;
-import com.github.javaparser.ast.stmt.*;
 import com.dipalma.whatif.connectors.GitConnector;
+import com.dipalma.whatif.metrics.Metrics;
 import com.dipalma.whatif.model.TrackedMethod;
-import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.diff.Edit;
-import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.patch.FileHeader;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Extracts the methods of each release, with their static metrics and change-history features.
+ * <p>
+ * Releases are mined together, in parallel, against indexes shared read-only by all of them:
+ * <ul>
+ *   <li>the {@link ChangeIndex}, with every commit behind the releases diffed once;</li>
+ *   <li>the blob cache: each distinct file content is parsed once, in parallel, into its methods'
+ *       line ranges, static metrics and clone fingerprints, whichever releases contain it.</li>
+ * </ul>
+ * A release is then only lookups into both, so none depends on another. Method ids are the only
+ * state carried between releases: they are resolved in release order, in a cheap sequential pass,
+ * as each window of concurrently mined releases completes.
+ */
 public class MethodTracker {
+    private static final int MIN_BLOBS_PER_CHUNK = 16;
+
     private final GitConnector git;
+    private final int parallelism;
     private final Map<String, TrackedMethod> lastKnownMethods = new HashMap<>();
+    // Blobs of the last release mined, reused by the next call.
+    private Map<ObjectId, List<MethodInfo>> methodsByBlob = Map.of();
     private static final Logger log = LoggerFactory.getLogger(MethodTracker.class);
 
     public MethodTracker(GitConnector git) {
-        this.git = git;
+        this(git, Runtime.getRuntime().availableProcessors());
     }
 
-    public List<TrackedMethod> getMethodsForRelease(RevCommit releaseCommit) throws IOException, GitAPIException {
-        String commitId = releaseCommit.getName();
-        List<String> javaFiles = git.getJavaFilesForCommit(commitId);
-
-        List<TrackedMethod> currentMethods = new ArrayList<>();
-        Map<TrackedMethod, CallableDeclaration<?>> methodAstMap = new HashMap<>();
-
-        for (String file : javaFiles) {
-            String content = git.getFileContent(file, commitId);
-            if (content == null || content.isEmpty()) continue;
-
-            try {
-                CompilationUnit cu = StaticJavaParser.parse(content);
-                cu.findAll(CallableDeclaration.class).forEach(callable -> {
-                    String signature = callable.getSignature().asString();
-                    String fullSignatureKey = file + "::" + signature;
-
-                    String id;
-                    if (lastKnownMethods.containsKey(fullSignatureKey)) {
-                        id = lastKnownMethods.get(fullSignatureKey).id();
-                    } else {
-                        id = UUID.randomUUID().toString();
-                    }
+    public MethodTracker(GitConnector git, int parallelism) {
+        this.git = git;
+        this.parallelism = Math.max(1, parallelism);
+    }
 
-                    TrackedMethod trackedMethod = new TrackedMethod(id, signature, file);
-                    currentMethods.add(trackedMethod);
-                    methodAstMap.put(trackedMethod, callable);
-                });
-            } catch (Exception e) {
-                log.warn("Failed to parse Java file {} in commit {} | {}",
-                        file, commitId, e.getMessage(), e);
-            }
-        }
+    /** What parsing a blob yields for one of its methods; the same wherever the blob appears. */
+    record MethodInfo(String signature, int beginLine, int endLine, Map<String, Number> staticMetrics,
+                      CloneDetector.MethodFingerprint fingerprint) {
+    }
 
-        // Calculate all features now that we have all methods for this release
-        for(TrackedMethod method : currentMethods) {
-            CallableDeclaration<?> callable = methodAstMap.get(method);
-            calculateAllFeatures(method, callable, releaseCommit);
-        }
+    /** A method of one release with all of its features, before it gets an id. */
+    private record MinedMethod(String file, String signature, Map<String, Number> features) {
+    }
 
-        lastKnownMethods.clear();
-        currentMethods.forEach(m -> lastKnownMethods.put(m.filepath() + "::" + m.signature(), m));
+    /** Receives the methods of each release, in release order, as soon as they are mined. */
+    @FunctionalInterface
+    public interface ReleaseConsumer {
+        void accept(int release, List<TrackedMethod> methods) throws IOException;
+    }
 
-        return currentMethods;
+    public List<TrackedMethod> getMethodsForRelease(RevCommit releaseCommit) throws IOException {
+        return getMethodsForReleases(List.of(releaseCommit)).getFirst();
     }
 
-    private void calculateAllFeatures(TrackedMethod method, CallableDeclaration<?> callable, RevCommit releaseCommit) {
-        int loc = callable.getEnd().map(p -> p.line).orElse(0) - callable.getBegin().map(p -> p.line).orElse(0);
-        method.addFeature("LOC", loc);
+    /**
+     * Mines {@code releaseCommits}, which must be in release order: a method keeps its id from the
+     * previous release (including the last one mined by an earlier call) while its file and
+     * signature stay the same.
+     * @return the methods of each release, in the order of {@code releaseCommits}
+     */
+    public List<List<TrackedMethod>> getMethodsForReleases(List<RevCommit> releaseCommits) throws IOException {
+        List<List<TrackedMethod>> releases = new ArrayList<>(releaseCommits.size());
+        mineReleases(releaseCommits, (r, methods) -> releases.add(methods));
+        return releases;
+    }
 
-        AtomicInteger complexity = new AtomicInteger(1);
-        callable.walk(node -> {
-            if (node instanceof IfStmt || node instanceof ForStmt || node instanceof WhileStmt ||
-                    node instanceof DoStmt || node instanceof SwitchEntry || node instanceof CatchClause ||
-                    node instanceof ConditionalExpr) {
-                complexity.incrementAndGet();
+    /**
+     * Like {@link #getMethodsForReleases}, but hands each release to {@code consumer} instead of
+     * keeping it. Releases are mined {@code parallelism} at a time, so at most that many releases'
+     * feature maps are held at once, plus whatever {@code consumer} keeps.
+     */
+    public void mineReleases(List<RevCommit> releaseCommits, ReleaseConsumer consumer) throws IOException {
+        try (Metrics.Span span = Metrics.time("tracker.releases")) {
+            List<Map<String, ObjectId>> filesByRelease = new ArrayList<>();
+            for (RevCommit release : releaseCommits) {
+                filesByRelease.add(git.getJavaBlobsForCommit(release.getName()));
+            }
+            ChangeIndex changes = ChangeIndex.build(git, releaseCommits, parallelism);
+            Map<ObjectId, List<MethodInfo>> blobs = parseBlobs(filesByRelease);
+
+            for (int from = 0; from < releaseCommits.size(); from += parallelism) {
+                List<Integer> window = IntStream.range(from, Math.min(releaseCommits.size(), from + parallelism))
+                        .boxed().toList();
+                List<List<MinedMethod>> mined = git.mapWithReaders("tracker.releases", window, parallelism, 1,
+                        (reader, r) -> mineRelease(filesByRelease.get(r), blobs, changes, releaseCommits.get(r)));
+                for (int w = 0; w < window.size(); w++) {
+                    List<TrackedMethod> methods = assignIds(mined.get(w));
+                    // Handed over: the mined feature maps of this release are no longer needed here.
+                    mined.set(w, null);
+                    consumer.accept(window.get(w), methods);
+                }
             }
-        });
-        method.addFeature("CyclomaticComplexity", complexity.get());
-        method.addFeature("ParameterCount", callable.getParameters().size());
-        method.addFeature("Duplication", 0); // Placeholder until the full release can be analyzed
 
-        try {
-            Map<String, Number> changeFeatures = calculateChangeHistoryFeatures(method, callable, releaseCommit);
-            method.addAllFeatures(changeFeatures);
-        } catch (Exception e) {
-            log.info("Warning: Could not compute full history for method: {}", method.signature());
-            addPlaceholderChangeFeatures(method);
+            Map<ObjectId, List<MethodInfo>> lastBlobs = new HashMap<>();
+            if (!filesByRelease.isEmpty()) {
+                filesByRelease.getLast().values().forEach(blob -> lastBlobs.put(blob, blobs.get(blob)));
+            }
+            methodsByBlob = lastBlobs;
         }
     }
 
-    // Piccolo contenitore per accumulare i contatori
-    private static final class ChangeStats {
-        int revisions = 0;
-        final Set<String> authors = new HashSet<>();
-        int linesAdded = 0;
-        int linesDeleted = 0;
-        int maxChurn = 0;
-        int totalChurn = 0; // per la media
-    }
-
-
-    private ChangeStats collectChangeStats(
-            String filepath,
-            int methodStartLine,
-            int methodEndLine,
-            RevCommit releaseCommit
-    ) throws IOException {
-
-        ChangeStats stats = new ChangeStats();
-        Repository repo = git.getRepository();
-        try (RevWalk walk = new RevWalk(repo);
-             DiffFormatter fmt = newDiffFormatter(repo)) {
-
-            walk.markStart(releaseCommit);
-
-            for (RevCommit commit : walk) {
-
-                if (commit.getParentCount() > 0) {
-
-                    CommitChurn churn = computeCommitChurn(
-                            fmt, walk, commit,
-                            filepath, methodStartLine, methodEndLine
-                    );
-
-                    if (churn.touched) {
-                        stats.revisions++;
-                        stats.authors.add(churn.authorEmail);
-                        stats.linesAdded   += churn.linesAdded;
-                        stats.linesDeleted += churn.linesDeleted;
-                        stats.totalChurn   += churn.totalChurn;
-                        if (churn.totalChurn > stats.maxChurn) {
-                            stats.maxChurn = churn.totalChurn;
-                        }
-                    }
+    /** Methods of every distinct blob of the releases: from the previous call when still known, else parsed in parallel. */
+    private Map<ObjectId, List<MethodInfo>> parseBlobs(List<Map<String, ObjectId>> filesByRelease) throws IOException {
+        Map<ObjectId, List<MethodInfo>> blobs = new HashMap<>();
+        Map<ObjectId, String> toParse = new LinkedHashMap<>();
+        for (Map<String, ObjectId> files : filesByRelease) {
+            for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+                ObjectId blob = file.getValue();
+                if (blobs.containsKey(blob) || toParse.containsKey(blob)) {
+                    Metrics.increment("tracker.blobCache.hits");
+                } else if (methodsByBlob.containsKey(blob)) {
+                    Metrics.increment("tracker.blobCache.hits");
+                    blobs.put(blob, methodsByBlob.get(blob));
+                } else {
+                    Metrics.increment("tracker.blobCache.misses");
+                    toParse.put(blob, file.getKey());
                 }
             }
         }
 
-        return stats;
-    }
-
-    /* ========= Helper & DTO interni ========= */
-
-    private static final class CommitChurn {
-        final String authorEmail;
-        boolean touched = false;
-        int linesAdded = 0;
-        int linesDeleted = 0;
-        int totalChurn = 0;
-
-        CommitChurn(String authorEmail) {
-            this.authorEmail = authorEmail;
+        List<ObjectId> pending = new ArrayList<>(toParse.keySet());
+        List<List<MethodInfo>> parsed = git.mapWithReaders("tracker.parse", pending, parallelism, MIN_BLOBS_PER_CHUNK,
+                (reader, blob) -> parse(reader, toParse.get(blob), blob));
+        for (int i = 0; i < pending.size(); i++) {
+            blobs.put(pending.get(i), parsed.get(i));
         }
+        return blobs;
     }
 
-    private CommitChurn computeCommitChurn(
-            DiffFormatter fmt,
-            RevWalk walk,
-            RevCommit commit,
-            String filepath,
-            int methodStartLine,
-            int methodEndLine
-    ) throws IOException {
-
-        RevCommit parent = walk.parseCommit(commit.getParent(0).getId());
-        List<DiffEntry> diffs = fmt.scan(parent.getTree(), commit.getTree());
-
-        CommitChurn churn = new CommitChurn(commit.getAuthorIdent().getEmailAddress());
-
-        for (DiffEntry diff : diffs) {
-            if (!affectsFile(diff, filepath)) {
-                continue;
+    /**
+     * Parses one file straight from the blob stream.
+     * @return its methods, or none if the file does not parse
+     */
+    private List<MethodInfo> parse(ObjectReader reader, String file, ObjectId blob) {
+        try {
+            CompilationUnit cu;
+            try (Metrics.Span span = Metrics.time("tracker.parse");
+                 InputStream in = git.openBlob(reader, blob).openStream()) {
+                cu = StaticJavaParser.parse(in);
             }
-            FileHeader header = fmt.toFileHeader(diff);
-            accumulateEdits(churn, header.toEditList(), methodStartLine, methodEndLine);
+            Metrics.increment("tracker.filesParsed");
+
+            List<MethodInfo> methods = new ArrayList<>();
+            for (CallableDeclaration<?> callable : cu.findAll(CallableDeclaration.class)) {
+                methods.add(new MethodInfo(
+                        callable.getSignature().asString(),
+                        callable.getBegin().map(p -> p.line).orElse(-1),
+                        callable.getEnd().map(p -> p.line).orElse(-1),
+                        Map.copyOf(StaticMetricsVisitor.compute(callable)),
+                        CloneDetector.fingerprint(callable)));
+            }
+            return methods;
+        } catch (Exception e) {
+            log.warn("Failed to parse Java file {} (blob {}) | {}",
+                    file, blob.name(), e.getMessage(), e);
+            return List.of();
         }
-        return churn;
     }
 
-    private static void accumulateEdits(
-            CommitChurn churn,
-            List<Edit> edits,
-            int methodStartLine,
-            int methodEndLine
-    ) {
-        for (Edit edit : edits) {
-            if (!overlapsMethod(methodStartLine, methodEndLine, edit)) {
-                continue;
+    /** One release from the shared indexes only, so releases can be mined concurrently. */
+    private List<MinedMethod> mineRelease(Map<String, ObjectId> files, Map<ObjectId, List<MethodInfo>> blobs,
+                                          ChangeIndex changes, RevCommit releaseCommit) {
+        try (Metrics.Span span = Metrics.time("tracker.release")) {
+            List<MinedMethod> methods = new ArrayList<>();
+            Map<Integer, CloneDetector.MethodFingerprint> fingerprints = new HashMap<>();
+            for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+                for (MethodInfo info : blobs.get(file.getValue())) {
+                    Map<String, Number> features = new HashMap<>(info.staticMetrics());
+                    features.putAll(calculateChangeHistoryFeatures(changes, file.getKey(), info, releaseCommit));
+                    fingerprints.put(methods.size(), info.fingerprint());
+                    methods.add(new MinedMethod(file.getKey(), info.signature(), features));
+                }
             }
-            churn.touched = true;
-
-            int added   = linesAdded(edit);
-            int deleted = linesDeleted(edit);
-
-            churn.linesAdded  += added;
-            churn.linesDeleted += deleted;
-            churn.totalChurn  += added + deleted;
+            // Duplication needs every method of the release in the clone index.
+            CloneDetector.duplicationRatios(fingerprints, i -> methods.get(i).file()).forEach((i, ratio) -> methods.get(i).features().put("Duplication", ratio));
+            return methods;
         }
     }
 
-    private static DiffFormatter newDiffFormatter(Repository repo) {
-        DiffFormatter fmt = new DiffFormatter(DisabledOutputStream.INSTANCE);
-        fmt.setRepository(repo);
-        // Manteniamo lo stesso comportamento del codice originale (niente rename detection, ecc.)
-        return fmt;
-    }
-
-    private static int linesAdded(Edit edit) {
-        return Math.max(0, edit.getEndB() - edit.getBeginB());
-    }
-
-    private static int linesDeleted(Edit edit) {
-        return Math.max(0, edit.getEndA() - edit.getBeginA());
-    }
+    /** Ids of one release, the next in order: a method keeps the id of the same file and signature in the previous one. */
+    private List<TrackedMethod> assignIds(List<MinedMethod> release) {
+        List<TrackedMethod> currentMethods = new ArrayList<>(release.size());
+        for (MinedMethod method : release) {
+            String fullSignatureKey = method.file() + "::" + method.signature();
 
+            String id;
+            if (lastKnownMethods.containsKey(fullSignatureKey)) {
+                id = lastKnownMethods.get(fullSignatureKey).id();
+            } else {
+                id = UUID.randomUUID().toString();
+            }
 
-    /** Ritorna true se il diff tocca il file del metodo (gestisce rename/oldPath/newPath). */
-    private static boolean affectsFile(DiffEntry diff, String filepath) {
-        return filepath.equals(diff.getNewPath()) || filepath.equals(diff.getOldPath());
-    }
+            TrackedMethod trackedMethod = new TrackedMethod(id, method.signature(), method.file());
+            trackedMethod.addAllFeatures(method.features());
+            currentMethods.add(trackedMethod);
+        }
+        Metrics.add("tracker.methods", currentMethods.size());
 
-    /** Overlap semplice tra il range del metodo e il range della edit nella "B side" (post-change). */
-    private static boolean overlapsMethod(int methodStart, int methodEnd, Edit edit) {
-        int changeStart = edit.getBeginB();
-        int changeEnd = edit.getEndB();
-        return Math.max(methodStart, changeStart) <= Math.min(methodEnd, changeEnd);
+        lastKnownMethods.clear();
+        currentMethods.forEach(m -> lastKnownMethods.put(m.filepath() + "::" + m.signature(), m));
+        return currentMethods;
     }
 
     /**
-     * Accurately calculates all change history features by analyzing git diffs.
+     * Change history features from the commits that touched the method's lines.
+     * Only the method's line range is needed: it can come from the AST or from a
+     * {@link com.dipalma.whatif.connectors.MethodBoundaryScanner} span.
      */
-    private Map<String, Number> calculateChangeHistoryFeatures(
-            TrackedMethod trackedMethod,
-            CallableDeclaration<?> callable,
-            RevCommit releaseCommit
-    ) throws IOException {
-
-        if (trackedMethod == null || callable == null || releaseCommit == null) {
-            return getPlaceholderChangeFeatures();
-        }
-
-        final int methodStartLine = callable.getBegin().map(p -> p.line).orElse(-1);
-        final int methodEndLine   = callable.getEnd().map(p -> p.line).orElse(-1);
-        if (methodStartLine < 0 || methodEndLine < 0) {
+    private static Map<String, Number> calculateChangeHistoryFeatures(ChangeIndex changes, String filepath,
+                                                                      MethodInfo method, RevCommit releaseCommit) {
+        if (method.beginLine() < 0 || method.endLine() < 0) {
             return getPlaceholderChangeFeatures();
         }
-
-        final ChangeStats stats = collectChangeStats(
-                trackedMethod.filepath(),
-                methodStartLine,
-                methodEndLine,
-                releaseCommit
-        );
-
-        Map<String, Number> features = new HashMap<>();
-        features.put("NR",        stats.revisions);
-        features.put("NAuth",     stats.authors.size());
-        features.put("stmtAdded", stats.linesAdded);
-        features.put("stmtDeleted", stats.linesDeleted);
-        features.put("maxChurn",  stats.maxChurn);
-        features.put("avgChurn",  stats.revisions == 0 ? 0.0 : (double) stats.totalChurn / stats.revisions);
-        return features;
+        return changes.collectChangeStats(filepath, method.beginLine(), method.endLine(), releaseCommit.getId())
+                .toFeatures();
     }
 
-
-    private Map<String, Number> getPlaceholderChangeFeatures() {
+    private static Map<String, Number> getPlaceholderChangeFeatures() {
         Map<String, Number> features = new HashMap<>();
         features.put("NR", 0);
         features.put("NAuth", 0);
@@ -290,8 +243,4 @@ public class MethodTracker {
         features.put("avgChurn", 0);
         return features;
     }
-
-    private void addPlaceholderChangeFeatures(TrackedMethod method) {
-        method.addAllFeatures(getPlaceholderChangeFeatures());
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package com.dipalma.whatif.analysis;
+
+import weka.attributeSelection.ASEvaluation;
+import weka.attributeSelection.AttributeEvaluator;
+import weka.attributeSelection.CorrelationAttributeEval;
+import weka.attributeSelection.GainRatioAttributeEval;
+import weka.attributeSelection.InfoGainAttributeEval;
+import weka.attributeSelection.ReliefFAttributeEval;
+
+import java.util.function.Supplier;
+
+/**
+ * A single-attribute evaluator used by {@link FeatureRanker}.
+ *
+ * @param name         label used in logs and as part of the cache key
+ * @param evaluator    creates a fresh Weka evaluator; it must implement {@link AttributeEvaluator}
+ * @param perAttribute true if an attribute's score depends only on that attribute and the class,
+ *                     so it can be computed on a two-column projection in its own task
+ */
+public record RankingStrategy(String name, Supplier<ASEvaluation> evaluator, boolean perAttribute) {
+
+    public static final RankingStrategy INFO_GAIN = new RankingStrategy("InfoGain", InfoGainAttributeEval::new, true);
+    public static final RankingStrategy GAIN_RATIO = new RankingStrategy("GainRatio", GainRatioAttributeEval::new, true);
+    public static final RankingStrategy CORRELATION = new RankingStrategy("Correlation", CorrelationAttributeEval::new, true);
+    // ReliefF scores depend on distances over all attributes, so it cannot be split per attribute.
+    public static final RankingStrategy RELIEF_F = new RankingStrategy("ReliefF", ReliefFAttributeEval::new, false);
+}
@@ -0,0 +1,210 @@
+package com.dipalma.whatif.analysis;
+
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.stmt.*;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes every static (code) metric of a method in a single traversal of its AST.
+ * Shared by {@link MethodTracker} and {@link FeatureComparer} so that dataset rows and refactoring
+ * comparisons are measured the same way. Counters are plain fields of a visitor created per
+ * method; a new metric is one more counter updated in the same pass.
+ * Duplication is not included: it depends on the other methods, see {@link CloneDetector}.
+ */
+public final class StaticMetricsVisitor extends VoidVisitorAdapter<Void> {
+
+    private int complexity = 1;
+    private int statements = 0;
+    private int returns = 0;
+    private int depth = 0;
+    private int maxDepth = 0;
+    private Set<String> calledMethods;
+
+    private StaticMetricsVisitor() {
+    }
+
+    /**
+     * @return LOC, CyclomaticComplexity, ParameterCount, StatementCount, MaxNesting, FanOut (distinct
+     * called method names) and ReturnCount of {@code callable}.
+     */
+    public static Map<String, Number> compute(CallableDeclaration<?> callable) {
+        StaticMetricsVisitor visitor = new StaticMetricsVisitor();
+        callable.accept(visitor, null);
+
+        Map<String, Number> features = new HashMap<>();
+        int loc = callable.getEnd().map(p -> p.line).orElse(0) - callable.getBegin().map(p -> p.line).orElse(0);
+        features.put("LOC", loc);
+        features.put("CyclomaticComplexity", visitor.complexity);
+        features.put("ParameterCount", callable.getParameters().size());
+        features.put("StatementCount", visitor.statements);
+        features.put("MaxNesting", visitor.maxDepth);
+        features.put("FanOut", visitor.calledMethods == null ? 0 : visitor.calledMethods.size());
+        features.put("ReturnCount", visitor.returns);
+        return features;
+    }
+
+    private void enterBlock() {
+        depth++;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    private void exitBlock() {
+        depth--;
+    }
+
+    // --- Decision points: one extra path each, and one nesting level for their bodies ---
+
+    @Override
+    public void visit(IfStmt n, Void arg) {
+        complexity++;
+        statements++;
+        n.getCondition().accept(this, arg);
+        enterBlock();
+        n.getThenStmt().accept(this, arg);
+        exitBlock();
+        Statement elseStmt = n.getElseStmt().orElse(null);
+        if (elseStmt instanceof IfStmt) {
+            // "else if" chains stay at the same nesting level as the first if, and count as one statement.
+            statements--;
+            elseStmt.accept(this, arg);
+        } else if (elseStmt != null) {
+            enterBlock();
+            elseStmt.accept(this, arg);
+            exitBlock();
+        }
+    }
+
+    @Override
+    public void visit(ForStmt n, Void arg) {
+        complexity++;
+        statements++;
+        enterBlock();
+        super.visit(n, arg);
+        exitBlock();
+    }
+
+    @Override
+    public void visit(ForEachStmt n, Void arg) {
+        statements++;
+        enterBlock();
+        super.visit(n, arg);
+        exitBlock();
+    }
+
+    @Override
+    public void visit(WhileStmt n, Void arg) {
+        complexity++;
+        statements++;
+        enterBlock();
+        super.visit(n, arg);
+        exitBlock();
+    }
+
+    @Override
+    public void visit(DoStmt n, Void arg) {
+        complexity++;
+        statements++;
+        enterBlock();
+        super.visit(n, arg);
+        exitBlock();
+    }
+
+    @Override
+    public void visit(SwitchStmt n, Void arg) {
+        statements++;
+        enterBlock();
+        super.visit(n, arg);
+        exitBlock();
+    }
+
+    @Override
+    public void visit(SwitchEntry n, Void arg) {
+        complexity++;
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(TryStmt n, Void arg) {
+        statements++;
+        enterBlock();
+        super.visit(n, arg);
+        exitBlock();
+    }
+
+    @Override
+    public void visit(CatchClause n, Void arg) {
+        complexity++;
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(ConditionalExpr n, Void arg) {
+        complexity++;
+        super.visit(n, arg);
+    }
+
+    // --- Simple statements ---
+
+    @Override
+    public void visit(ExpressionStmt n, Void arg) {
+        statements++;
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(ReturnStmt n, Void arg) {
+        statements++;
+        returns++;
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(ThrowStmt n, Void arg) {
+        statements++;
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(BreakStmt n, Void arg) {
+        statements++;
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(ContinueStmt n, Void arg) {
+        statements++;
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(ExplicitConstructorInvocationStmt n, Void arg) {
+        statements++;
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(SynchronizedStmt n, Void arg) {
+        statements++;
+        super.visit(n, arg);
+    }
+
+    // --- Coupling ---
+
+    @Override
+    public void visit(MethodCallExpr n, Void arg) {
+        if (calledMethods == null) {
+            calledMethods = new HashSet<>();
+        }
+        calledMethods.add(n.getNameAsString());
+        super.visit(n, arg);
+    }
+}
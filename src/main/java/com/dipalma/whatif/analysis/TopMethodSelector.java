@@ -0,0 +1,70 @@
+package com.dipalma.whatif.analysis;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Selects, in a single streaming pass over a dataset CSV, the K buggy methods with the highest
+ * value of a feature in each release. Memory is bounded by K entries per release: records are
+ * never collected, and each candidate's feature value is parsed exactly once.
+ */
+public class TopMethodSelector {
+
+    /** A candidate method; {@code row} is its record number in the CSV and breaks ties in file order. */
+    public record RankedMethod(String release, String methodName, double value, long row) {
+    }
+
+    // Worst candidate first, i.e. the heap head that is evicted: lowest value, and on equal values
+    // the latest row, so that the earliest rows are kept.
+    private static final Comparator<RankedMethod> WORST_FIRST =
+            Comparator.comparingDouble(RankedMethod::value).thenComparing(Comparator.comparingLong(RankedMethod::row).reversed());
+
+    private final String csvPath;
+
+    public TopMethodSelector(String csvPath) {
+        this.csvPath = csvPath;
+    }
+
+    /**
+     * @return for every release, in the order releases first appear in the file, its top-{@code k}
+     * buggy methods by {@code feature}, best first. Releases without buggy methods map to an empty list.
+     */
+    public Map<String, List<RankedMethod>> topBuggyPerRelease(String feature, int k) throws IOException {
+        Map<String, PriorityQueue<RankedMethod>> heaps = new LinkedHashMap<>();
+        try (Reader in = new FileReader(csvPath);
+             CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in)) {
+            for (CSVRecord r : parser) {
+                PriorityQueue<RankedMethod> heap = heaps.computeIfAbsent(r.get("Release"), key -> new PriorityQueue<>(WORST_FIRST));
+                if (!r.get("IsBuggy").equalsIgnoreCase("yes")) {
+                    continue;
+                }
+                double value = Double.parseDouble(r.get(feature));
+                if (heap.size() < k) {
+                    heap.add(new RankedMethod(r.get("Release"), r.get("MethodName"), value, r.getRecordNumber()));
+                } else if (k > 0 && value > heap.peek().value()) {
+                    heap.poll();
+                    heap.add(new RankedMethod(r.get("Release"), r.get("MethodName"), value, r.getRecordNumber()));
+                }
+            }
+        }
+
+        Map<String, List<RankedMethod>> top = new LinkedHashMap<>();
+        for (Map.Entry<String, PriorityQueue<RankedMethod>> entry : heaps.entrySet()) {
+            List<RankedMethod> ranked = new ArrayList<>(entry.getValue());
+            ranked.sort(WORST_FIRST.reversed());
+            top.put(entry.getKey(), ranked);
+        }
+        return top;
+    }
+}
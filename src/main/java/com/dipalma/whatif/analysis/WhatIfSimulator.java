@@ -1,16 +1,17 @@
 package com.dipalma.whatif.analysis;
 
+import com.dipalma.whatif.classification.ClassifierConfig;
+import com.dipalma.whatif.metrics.Metrics;
 import weka.classifiers.Classifier;
-import weka.classifiers.meta.FilteredClassifier;
-import weka.classifiers.trees.RandomForest;
 import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.converters.CSVLoader;
 import weka.filters.Filter;
-import weka.filters.supervised.instance.Resample;
 import weka.filters.unsupervised.attribute.NumericToNominal;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,13 +19,22 @@ import org.slf4j.LoggerFactory;
 public class WhatIfSimulator {
 
     private final String processedCsvPath;  
+    private final ClassifierConfig modelConfig;
     private Instances datasetA;
+    // Trained on A once, shared by the simulation and the sweep.
+    private Classifier trainedModel;
     private static final Logger log = LoggerFactory.getLogger(WhatIfSimulator.class);
     private static final String TABLE_HEADER_FMT = "| %-20s | %-15s | %-15s |";
     private static final String ROW_FMT_NO_NL    = "| %-20s | %-15d | %-15d |";
 
     public WhatIfSimulator(String processedCsvPath) {
+        this(processedCsvPath, ClassifierConfig.defaultModel());
+    }
+
+    /** Simulates with the given model, e.g. the best one found by the hyperparameter search. */
+    public WhatIfSimulator(String processedCsvPath, ClassifierConfig modelConfig) {
         this.processedCsvPath = processedCsvPath;
+        this.modelConfig = modelConfig;
     }
 
     private void loadAndPrepareData() throws Exception {
@@ -47,12 +57,52 @@ public class WhatIfSimulator {
         log.info("Loaded and prepared dataset A with {} instances and {} attributes.", datasetA.numInstances(), datasetA.numAttributes());
     }
 
+    /** The model trained on A, trained on first use. */
+    private Classifier trainModel() throws Exception {
+        if (this.trainedModel == null) {
+            Classifier model = modelConfig.build();
+            try (Metrics.Span span = Metrics.time("whatif.train")) {
+                model.buildClassifier(datasetA);
+            }
+            this.trainedModel = model;
+        }
+        return this.trainedModel;
+    }
+
+    /**
+     * Runs one what-if scenario per (feature, percentile) pair against a single model trained on A,
+     * the one {@link #runFullDatasetSimulation} trained if it ran first.
+     * Each scenario lowers the feature to the given percentile for the methods above it.
+     */
+    public List<WhatIfSweep.ScenarioResult> runFeatureSweep(List<String> features, double... percentiles) throws Exception {
+        if (this.datasetA == null) {
+            loadAndPrepareData();
+        }
+        List<WhatIfSweep.Scenario> scenarios = new ArrayList<>();
+        for (String feature : features) {
+            scenarios.addAll(WhatIfSweep.percentileGrid(datasetA, feature, percentiles));
+        }
+        log.info("--- What-If Sweep: {} scenarios over {} features ---", scenarios.size(), features.size());
+
+        Classifier model = trainModel();
+        List<WhatIfSweep.ScenarioResult> results;
+        try (Metrics.Span span = Metrics.time("whatif.sweep")) {
+            results = new WhatIfSweep(datasetA, model).run(scenarios);
+        }
+        Metrics.add("whatif.scenarios", results.size());
+        WhatIfSweep.logTable(results);
+        return results;
+    }
+
     /**
      * Runs the final What-If analysis (Steps 10-13).
+     * @return the B+ / B comparison as a scenario (LOC read as 0), or null if there is no LOC
      */
-    public void runFullDatasetSimulation() throws Exception {
+    public WhatIfSweep.ScenarioResult runFullDatasetSimulation() throws Exception {
         // Load the data first
-        loadAndPrepareData();
+        if (this.datasetA == null) {
+            loadAndPrepareData();
+        }
 
         // --- Step 10: Create datasets B+, C, and B ---
         log.info("--- Step 10: Creating What-If Datasets ---");
@@ -61,54 +111,46 @@ public class WhatIfSimulator {
         Attribute locAttribute = datasetA.attribute(aFeature);
         if (locAttribute == null) {
             log.info("Error: Could not find AFeature '{}' in the dataset.", aFeature);
-            return;
+            return null;
         }
 
-        Instances datasetBplus = new Instances(datasetA, 0);
-        Instances datasetC = new Instances(datasetA, 0);
-
-        for (int i = 0; i < datasetA.numInstances(); i++) {
-            if (datasetA.instance(i).value(locAttribute) > 0) {
-                datasetBplus.add(datasetA.instance(i));
-            } else {
-                datasetC.add(datasetA.instance(i));
-            }
-        }
-        log.info("Created Dataset B+ (size: {}) and C (size: {})", datasetBplus.numInstances(), datasetC.numInstances());
+        // B+, C and B are views over A: partitions by row index, and B+ with LOC read as 0.
+        int locIndex = locAttribute.index();
+        WhatIfView viewA = WhatIfView.of(datasetA);
+        int[] datasetBplus = WhatIfView.rowsWhere(datasetA, locIndex, v -> v > 0);
+        int[] datasetC = WhatIfView.rowsWhere(datasetA, locIndex, v -> !(v > 0));
+        log.info("Created Dataset B+ (size: {}) and C (size: {})", datasetBplus.length, datasetC.length);
 
-        Instances datasetB = new Instances(datasetBplus);
-        for (int i = 0; i < datasetB.numInstances(); i++) {
-            datasetB.instance(i).setValue(locAttribute, 0.0);
-        }
+        WhatIfView datasetB = viewA.select(datasetBplus).withOverride(locIndex, 0.0);
         log.info("Created Dataset B by setting LOC to 0 for all instances in B+.");
 
         // --- Step 11: Train BClassifier on the full dataset A ---
-        log.info("--- Step 11: Training BClassifier (RandomForest) on full dataset A ---");
-        Classifier bClassifier = new RandomForest();
-        Resample resample = new Resample();
-        resample.setBiasToUniformClass(1.0);
-
-        FilteredClassifier trainedModel = new FilteredClassifier();
-        trainedModel.setFilter(resample);
-        trainedModel.setClassifier(bClassifier);
-
-        trainedModel.buildClassifier(datasetA);
+        log.info("--- Step 11: Training BClassifier ({}) on full dataset A ---", modelConfig);
+        Classifier model = trainModel();
         log.info("Model training complete.");
 
         // --- Step 12: Predict on all datasets and create the results table ---
         log.info("--- Step 12: Predicting Defectiveness and Creating Results Table ---");
-        int defectsInA = countDefectivePredictions(trainedModel, datasetA);
-        int defectsInBplus = countDefectivePredictions(trainedModel, datasetBplus);
-        double defectsInB = countDefectivePredictions(trainedModel, datasetB);
-        int defectsInC = countDefectivePredictions(trainedModel, datasetC);
+        // B+ and C are partitions of A, so they are counted from A's predictions; only B needs inference.
+        DefectPredictor predictor = new DefectPredictor(model);
+        boolean[] predictionsA;
+        boolean[] predictionsB;
+        try (Metrics.Span span = Metrics.time("whatif.predict")) {
+            predictionsA = predictor.predictDefective(datasetA);
+            predictionsB = predictor.predictDefective(datasetB);
+        }
+        int defectsInA = DefectPredictor.countDefective(predictionsA);
+        int defectsInBplus = DefectPredictor.countDefective(predictionsA, datasetBplus);
+        double defectsInB = DefectPredictor.countDefective(predictionsB);
+        int defectsInC = DefectPredictor.countDefective(predictionsA, datasetC);
 
         log.info("                      WHAT-IF ANALYSIS RESULTS                      ");
         if (log.isInfoEnabled()) {
             log.info("{}", String.format(TABLE_HEADER_FMT, "Dataset", "Total Instances", "Predicted Defects"));
             log.info("{}", String.format(ROW_FMT_NO_NL, "A (Full Dataset)",  datasetA.numInstances(), defectsInA));
-            log.info("{}", String.format(ROW_FMT_NO_NL, "B+ (LOC > 0)",      datasetBplus.numInstances(), defectsInBplus));
-            log.info("{}", String.format(ROW_FMT_NO_NL, "B (B+ with LOC = 0)", datasetB.numInstances(), (int)Math.round(defectsInB)));
-            log.info("{}", String.format(ROW_FMT_NO_NL, "C (LOC = 0)",      datasetC.numInstances(),    defectsInC));
+            log.info("{}", String.format(ROW_FMT_NO_NL, "B+ (LOC > 0)",      datasetBplus.length, defectsInBplus));
+            log.info("{}", String.format(ROW_FMT_NO_NL, "B (B+ with LOC = 0)", datasetB.size(), (int)Math.round(defectsInB)));
+            log.info("{}", String.format(ROW_FMT_NO_NL, "C (LOC = 0)",      datasetC.length,    defectsInC));
         }
 
         // --- Step 13: Analyze the table and answer the main question ---
@@ -128,20 +170,7 @@ public class WhatIfSimulator {
         } else {
             log.info("No defects were predicted in the 'at-risk' group (B+), so no preventable defects were found.");
         }
-    }
-
-    private int countDefectivePredictions(Classifier model, Instances data) throws Exception {
-        int defectiveCount = 0;
-        double buggyClassIndex = data.classAttribute().indexOfValue("1");
-        if (buggyClassIndex == -1) {
-            buggyClassIndex = data.classAttribute().indexOfValue("yes");
-        }
-
-        for (int i = 0; i < data.numInstances(); i++) {
-            if (model.classifyInstance(data.instance(i)) == buggyClassIndex) {
-                defectiveCount++;
-            }
-        }
-        return defectiveCount;
+        return new WhatIfSweep.ScenarioResult(new WhatIfSweep.Scenario(aFeature, aFeature + " = 0 (B+ -> B)", 0.0),
+                datasetBplus.length, defectsInBplus, (int) Math.round(defectsInB));
     }
 }
\ No newline at end of file
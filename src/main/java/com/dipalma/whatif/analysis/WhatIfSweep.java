@@ -0,0 +1,171 @@
+package com.dipalma.whatif.analysis;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs many what-if scenarios against one trained model.
+ * A scenario picks a feature and a target value: the "at-risk" rows are those above the target
+ * (the B+ of the single-feature simulation) and the counterfactual reads their feature as the
+ * target (B). Scenarios are evaluated in parallel, one model copy per worker, on copy-free
+ * {@link WhatIfView}s, while the baseline predictions on A are computed once and shared.
+ */
+public class WhatIfSweep {
+
+    private static final Logger log = LoggerFactory.getLogger(WhatIfSweep.class);
+    private static final String TABLE_HEADER_FMT = "| %-22s | %-12s | %-10s | %-10s | %-10s | %-10s |";
+    private static final String ROW_FMT          = "| %-22s | %-12.4f | %-10d | %-10d | %-10d | %-10d |";
+
+    /** One counterfactual: rows with {@code feature > targetValue} are read as {@code targetValue}. */
+    public record Scenario(String feature, String label, double targetValue) {
+    }
+
+    /** Predicted defects among the at-risk rows before and after applying the scenario. */
+    public record ScenarioResult(Scenario scenario, int atRisk, int defectsBefore, int defectsAfter) {
+        public int preventable() {
+            return defectsBefore - defectsAfter;
+        }
+    }
+
+    private final Instances datasetA;
+    private final Classifier trainedModel;
+    private final int parallelism;
+
+    public WhatIfSweep(Instances datasetA, Classifier trainedModel) {
+        this(datasetA, trainedModel, Runtime.getRuntime().availableProcessors());
+    }
+
+    public WhatIfSweep(Instances datasetA, Classifier trainedModel, int parallelism) {
+        this.datasetA = datasetA;
+        this.trainedModel = trainedModel;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** One scenario per target value. */
+    public static List<Scenario> valueGrid(String feature, double... values) {
+        List<Scenario> scenarios = new ArrayList<>();
+        for (double value : values) {
+            scenarios.add(new Scenario(feature, feature + " = " + value, value));
+        }
+        return scenarios;
+    }
+
+    /** One scenario per percentile (0-100) of the feature's distribution in {@code data}. */
+    public static List<Scenario> percentileGrid(Instances data, String feature, double... percentiles) {
+        Attribute attribute = data.attribute(feature);
+        if (attribute == null) {
+            return List.of();
+        }
+        double[] sorted = data.attributeToDoubleArray(attribute.index());
+        Arrays.sort(sorted);
+        List<Scenario> scenarios = new ArrayList<>();
+        for (double p : percentiles) {
+            int rank = (int) Math.round(p / 100.0 * (sorted.length - 1));
+            double value = sorted.length == 0 ? 0.0 : sorted[Math.clamp(rank, 0, sorted.length - 1)];
+            scenarios.add(new Scenario(feature, feature + " @ p" + (int) p, value));
+        }
+        return scenarios;
+    }
+
+    /**
+     * Evaluates every scenario and returns one result per scenario, in input order.
+     * Scenarios on features missing from the dataset (e.g. dropped as constant) are skipped.
+     */
+    public List<ScenarioResult> run(List<Scenario> scenarios) throws Exception {
+        List<Scenario> runnable = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            if (datasetA.attribute(scenario.feature()) == null) {
+                log.warn("Skipping scenario '{}': feature not in the dataset.", scenario.label());
+            } else {
+                runnable.add(scenario);
+            }
+        }
+        if (runnable.isEmpty()) {
+            return List.of();
+        }
+
+        boolean[] baseline = new DefectPredictor(trainedModel, parallelism).predictDefective(datasetA);
+        WhatIfView viewA = WhatIfView.of(datasetA);
+
+        int workers = Math.min(parallelism, runnable.size());
+        BlockingQueue<DefectPredictor> predictors = new ArrayBlockingQueue<>(workers);
+        for (Classifier copy : AbstractClassifier.makeCopies(trainedModel, workers)) {
+            predictors.add(new DefectPredictor(copy, 1));
+        }
+
+        List<ScenarioResult> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(workers)) {
+            List<Future<ScenarioResult>> futures = new ArrayList<>();
+            for (Scenario scenario : runnable) {
+                futures.add(pool.submit(() -> {
+                    DefectPredictor predictor = predictors.take();
+                    try {
+                        return evaluate(scenario, viewA, baseline, predictor);
+                    } finally {
+                        predictors.add(predictor);
+                    }
+                }));
+            }
+            DefectPredictor.awaitAll(futures);
+            for (Future<ScenarioResult> future : futures) {
+                results.add(future.get());
+            }
+        }
+        return results;
+    }
+
+    private ScenarioResult evaluate(Scenario scenario, WhatIfView viewA, boolean[] baseline,
+                                    DefectPredictor predictor) throws Exception {
+        int attrIndex = datasetA.attribute(scenario.feature()).index();
+        double target = scenario.targetValue();
+        int[] atRisk = WhatIfView.rowsWhere(datasetA, attrIndex, v -> v > target);
+
+        int before = DefectPredictor.countDefective(baseline, atRisk);
+        int after = DefectPredictor.countDefective(
+                predictor.predictDefective(viewA.select(atRisk).withOverride(attrIndex, target)));
+        return new ScenarioResult(scenario, atRisk.length, before, after);
+    }
+
+    /** Writes one row per result, in order. */
+    public static void writeCsv(List<ScenarioResult> results, Path csv) throws IOException {
+        try (Writer out = Files.newBufferedWriter(csv);
+             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT)) {
+            printer.printRecord("Scenario", "Feature", "Target", "AtRisk", "DefectsBefore", "DefectsAfter", "Prevented");
+            for (ScenarioResult r : results) {
+                printer.printRecord(r.scenario().label(), r.scenario().feature(), r.scenario().targetValue(),
+                        r.atRisk(), r.defectsBefore(), r.defectsAfter(), r.preventable());
+            }
+        }
+    }
+
+    public static void logTable(List<ScenarioResult> results) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        log.info("{}", String.format(TABLE_HEADER_FMT, "Scenario", "Target", "At risk", "Before", "After", "Prevented"));
+        for (ScenarioResult r : results) {
+            log.info("{}", String.format(ROW_FMT, r.scenario().label(), r.scenario().targetValue(),
+                    r.atRisk(), r.defectsBefore(), r.defectsAfter(), r.preventable()));
+        }
+    }
+}
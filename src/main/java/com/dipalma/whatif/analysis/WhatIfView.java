@@ -0,0 +1,120 @@
+package com.dipalma.whatif.analysis;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+
+/**
+ * Read-only view over a dataset: a subset of its rows, optionally with some attributes forced
+ * to a counterfactual value. The underlying {@link Instances} are never copied or modified;
+ * rows with overrides are presented through a per-reader {@link Cursor}.
+ */
+public final class WhatIfView {
+
+    private final Instances base;
+    private final int[] rows;
+    private final int[] overrideAttrs;
+    private final double[] overrideValues;
+
+    private WhatIfView(Instances base, int[] rows, int[] overrideAttrs, double[] overrideValues) {
+        this.base = base;
+        this.rows = rows;
+        this.overrideAttrs = overrideAttrs;
+        this.overrideValues = overrideValues;
+    }
+
+    /** A view over every row of {@code base}, without overrides. */
+    public static WhatIfView of(Instances base) {
+        int[] all = new int[base.numInstances()];
+        Arrays.setAll(all, i -> i);
+        return new WhatIfView(base, all, new int[0], new double[0]);
+    }
+
+    /** Indices of the rows of {@code base} whose value for {@code attrIndex} satisfies {@code condition}. */
+    public static int[] rowsWhere(Instances base, int attrIndex, DoublePredicate condition) {
+        int[] selected = new int[base.numInstances()];
+        int count = 0;
+        for (int i = 0; i < base.numInstances(); i++) {
+            if (condition.test(base.instance(i).value(attrIndex))) {
+                selected[count++] = i;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /** The same overrides restricted to the given rows of the base dataset. */
+    public WhatIfView select(int[] baseRows) {
+        return new WhatIfView(base, baseRows, overrideAttrs, overrideValues);
+    }
+
+    /** A view where {@code attrIndex} reads as {@code value} for every row. */
+    public WhatIfView withOverride(int attrIndex, double value) {
+        int existing = -1;
+        for (int k = 0; k < overrideAttrs.length; k++) {
+            if (overrideAttrs[k] == attrIndex) existing = k;
+        }
+        int[] attrs = existing >= 0 ? overrideAttrs : Arrays.copyOf(overrideAttrs, overrideAttrs.length + 1);
+        double[] values = Arrays.copyOf(overrideValues, attrs.length);
+        int slot = existing >= 0 ? existing : attrs.length - 1;
+        attrs[slot] = attrIndex;
+        values[slot] = value;
+        return new WhatIfView(base, rows, attrs, values);
+    }
+
+    public Instances base() { return base; }
+    public int size() { return rows.length; }
+    public int baseRow(int i) { return rows[i]; }
+    public int[] baseRows() { return rows; }
+    public boolean hasOverrides() { return overrideAttrs.length > 0; }
+
+    /** A reader over this view. Cursors are cheap but not thread-safe: use one per thread. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Presents the rows of the view as {@link Instance}s. Without overrides the base instance is
+     * returned as is; otherwise the row is loaded into a single scratch instance that is reused
+     * for every call, so callers must not keep a reference to it across calls.
+     */
+    public final class Cursor {
+        private ScratchInstance scratch;
+
+        private Cursor() {
+        }
+
+        public Instance instance(int i) {
+            Instance source = base.instance(rows[i]);
+            if (overrideAttrs.length == 0) {
+                return source;
+            }
+            if (scratch == null) {
+                scratch = new ScratchInstance(base);
+            }
+            scratch.load(source, overrideAttrs, overrideValues);
+            return scratch;
+        }
+    }
+
+    /** Dense instance whose value buffer is overwritten in place instead of reallocated on every set. */
+    private static final class ScratchInstance extends DenseInstance {
+
+        ScratchInstance(Instances header) {
+            super(1.0, new double[header.numAttributes()]);
+            setDataset(header);
+        }
+
+        void load(Instance source, int[] attrs, double[] values) {
+            for (int j = 0; j < m_AttValues.length; j++) {
+                m_AttValues[j] = source.value(j);
+            }
+            for (int k = 0; k < attrs.length; k++) {
+                m_AttValues[attrs[k]] = values[k];
+            }
+            m_Weight = source.weight();
+        }
+    }
+}
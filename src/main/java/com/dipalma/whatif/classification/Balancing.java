@@ -0,0 +1,71 @@
+package com.dipalma.whatif.classification;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.supervised.instance.Resample;
+import weka.filters.supervised.instance.SMOTE;
+import weka.filters.supervised.instance.SpreadSubsample;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A class-balancing step applied to training sets only, used by {@link PipelineEvaluator}.
+ *
+ * @param name   label used in logs and reports
+ * @param filter creates a fresh Weka filter for a training set, or {@code null} to leave it as it is
+ */
+public record Balancing(String name, Function<Instances, Filter> filter) {
+
+    public static final Balancing NONE = new Balancing("None", train -> null);
+    // The filter ClassifierRunner has always trained behind, seeded as its FilteredClassifier
+    // (seed 1) reseeds it from the training set, so both draw the same resample.
+    public static final Balancing RESAMPLE = new Balancing("Resample", train -> {
+        Resample resample = new Resample();
+        resample.setBiasToUniformClass(1.0);
+        if (train.numInstances() > 0) {
+            resample.setRandomSeed(train.getRandomNumberGenerator(1).nextInt());
+        }
+        return resample;
+    });
+    public static final Balancing SMOTE = new Balancing("SMOTE", Balancing::smote);
+    public static final Balancing UNDERSAMPLING = new Balancing("Undersampling", train -> {
+        SpreadSubsample undersample = new SpreadSubsample();
+        undersample.setDistributionSpread(1.0);
+        return undersample;
+    });
+
+    public static final List<Balancing> ALL = List.of(NONE, RESAMPLE, SMOTE, UNDERSAMPLING);
+
+    /** {@code train} balanced by this step; {@code train} itself for {@link #NONE}. */
+    public Instances apply(Instances train) throws Exception {
+        Filter instance = filter.apply(train);
+        if (instance == null) {
+            return train;
+        }
+        instance.setInputFormat(train);
+        return Filter.useFilter(train, instance);
+    }
+
+    /** SMOTE on the minority class, with as many synthetic rows as it takes to match the majority. */
+    private static Filter smote(Instances train) {
+        double[] counts = new double[train.numClasses()];
+        for (Instance instance : train) {
+            if (!instance.isMissing(train.classIndex())) {
+                counts[(int) instance.classValue()]++;
+            }
+        }
+        double minority = Double.MAX_VALUE;
+        double majority = 0;
+        for (double count : counts) {
+            if (count > 0) {
+                minority = Math.min(minority, count);
+                majority = Math.max(majority, count);
+            }
+        }
+        SMOTE smote = new SMOTE();
+        smote.setPercentage(majority > minority ? (majority - minority) * 100.0 / minority : 0.0);
+        return smote;
+    }
+}
@@ -0,0 +1,139 @@
+package com.dipalma.whatif.classification;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.lazy.IBk;
+import weka.classifiers.trees.RandomForest;
+import weka.core.EuclideanDistance;
+import weka.core.ManhattanDistance;
+import weka.core.neighboursearch.LinearNNSearch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A classifier with its hyperparameters, trained (like every model of the study) behind a
+ * {@code Resample} filter whose {@code bias} pulls the training set towards a uniform class.
+ * <p>
+ * Written on one line as {@code RandomForest numTrees=100 maxDepth=0 bias=1.0}, the form read back
+ * by {@link #parse}: that is how the evaluation stage hands its best model to the simulation stage.
+ *
+ * @param classifier {@code RandomForest}, {@code NaiveBayes} or {@code IBk}
+ * @param parameters {@code numTrees} and {@code maxDepth} (0 for unlimited) for RandomForest,
+ *                   {@code k} and {@code distance} ({@code euclidean} or {@code manhattan}) for IBk,
+ *                   and {@code bias} for all of them
+ */
+public record ClassifierConfig(String classifier, Map<String, String> parameters) {
+
+    public static final String RANDOM_FOREST = "RandomForest";
+    public static final String NAIVE_BAYES = "NaiveBayes";
+    public static final String IBK = "IBk";
+
+    private static final Set<String> CLASSIFIERS = Set.of(RANDOM_FOREST, NAIVE_BAYES, IBK);
+
+    public ClassifierConfig {
+        if (!CLASSIFIERS.contains(classifier)) {
+            throw new IllegalArgumentException("Unknown classifier: " + classifier);
+        }
+        parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+    }
+
+    public static ClassifierConfig randomForest(int numTrees, int maxDepth, double bias) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("numTrees", Integer.toString(numTrees));
+        parameters.put("maxDepth", Integer.toString(maxDepth));
+        parameters.put("bias", Double.toString(bias));
+        return new ClassifierConfig(RANDOM_FOREST, parameters);
+    }
+
+    public static ClassifierConfig naiveBayes(double bias) {
+        return new ClassifierConfig(NAIVE_BAYES, Map.of("bias", Double.toString(bias)));
+    }
+
+    public static ClassifierConfig ibk(int k, String distance, double bias) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("k", Integer.toString(k));
+        parameters.put("distance", distance);
+        parameters.put("bias", Double.toString(bias));
+        return new ClassifierConfig(IBK, parameters);
+    }
+
+    /** Weka's default RandomForest on a fully balanced resample: the model used before any tuning. */
+    public static ClassifierConfig defaultModel() {
+        return randomForest(100, 0, 1.0);
+    }
+
+    /** A fresh, untrained classifier for this configuration. */
+    public Classifier build() throws Exception {
+        return ClassifierRunner.withResample(buildBase(), bias());
+    }
+
+    /** The classifier alone, without the {@code Resample} filter, for data balanced beforehand. */
+    public Classifier buildBase() throws Exception {
+        return switch (classifier) {
+            case RANDOM_FOREST -> {
+                RandomForest forest = new RandomForest();
+                forest.setNumIterations(intParameter("numTrees"));
+                forest.setMaxDepth(intParameter("maxDepth"));
+                yield forest;
+            }
+            case IBK -> {
+                IBk ibk = new IBk(intParameter("k"));
+                LinearNNSearch search = new LinearNNSearch();
+                search.setDistanceFunction("manhattan".equals(parameters.get("distance"))
+                        ? new ManhattanDistance() : new EuclideanDistance());
+                ibk.setNearestNeighbourSearchAlgorithm(search);
+                yield ibk;
+            }
+            default -> new NaiveBayes();
+        };
+    }
+
+    public double bias() {
+        return Double.parseDouble(parameters.getOrDefault("bias", "1.0"));
+    }
+
+    private int intParameter(String name) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException(classifier + " needs parameter " + name);
+        }
+        return Integer.parseInt(value);
+    }
+
+    /** Reads a configuration written by {@link #toString()}. */
+    public static ClassifierConfig parse(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (int i = 1; i < tokens.length; i++) {
+            int eq = tokens[i].indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got '" + tokens[i] + "' in: " + line);
+            }
+            parameters.put(tokens[i].substring(0, eq), tokens[i].substring(eq + 1).toLowerCase(Locale.ROOT));
+        }
+        return new ClassifierConfig(tokens[0], parameters);
+    }
+
+    public static ClassifierConfig read(Path file) throws IOException {
+        return parse(Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    public void write(Path file) throws IOException {
+        Files.writeString(file, this + System.lineSeparator(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(classifier);
+        parameters.forEach((name, value) -> line.append(' ').append(name).append('=').append(value));
+        return line.toString();
+    }
+}
@@ -1,11 +1,18 @@
 package com.dipalma.whatif.classification;
 
+import com.dipalma.whatif.analysis.DefectPredictor;
+import com.dipalma.whatif.metrics.Metrics;
+import com.dipalma.whatif.preprocessing.DataPreprocessor;
+import com.dipalma.whatif.preprocessing.PreprocessingTransform;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
-import weka.classifiers.bayes.NaiveBayes;
-import weka.classifiers.lazy.IBk;
 import weka.classifiers.meta.FilteredClassifier;
-import weka.classifiers.trees.RandomForest;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.converters.CSVLoader;
 import weka.filters.Filter;
@@ -13,6 +20,13 @@ import weka.filters.supervised.instance.Resample;
 import weka.filters.unsupervised.attribute.NumericToNominal;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import org.slf4j.Logger;
@@ -22,9 +36,21 @@ public class ClassifierRunner {
 
     private final String csvFilePath;
     private Instances data;
+    // Folds of the 10 repetitions, split once and shared by every evaluation of this dataset.
+    private FoldSplits splits;
+    // Unscaled LOC of each row, for the effort-aware metrics; null if not available.
+    private double[] effort;
     private static final Logger log = LoggerFactory.getLogger(ClassifierRunner.class);
-    private static final String ROW_FMT    = "%-20s | %-10.3f | %-10.3f | %-10.3f | %-10.3f";
-    private static final String HEADER_FMT = "%-20s | %-10s | %-10s | %-10s | %-10s";
+    private static final String ROW_FMT    = "%-20s | %-10.3f | %-10.3f | %-10.3f | %-10.3f | %-10.3f | %-10.3f";
+    private static final String HEADER_FMT = "%-20s | %-10s | %-10s | %-10s | %-10s | %-10s | %-10s";
+    private static final String SEARCH_ROW_FMT    = "%-55s | %-7d | %-10.3f | %-10.3f | %-10.3f | %-10.3f";
+    private static final String SEARCH_HEADER_FMT = "%-55s | %-7s | %-10s | %-10s | %-10s | %-10s";
+    private static final String PIPELINE_ROW_FMT    = "%-70s | %-10.3f | %-10.3f";
+    private static final String PIPELINE_HEADER_FMT = "%-70s | %-10s | %-10s";
+    private static final int NUM_FOLDS = 10;
+    private static final int NUM_REPEATS = 10;
+    private static final int SEARCH_ROWS = 10;
+    private static final int INFO_GAIN_TOP_K = 5;
 
     public ClassifierRunner(String csvFilePath) {
         this.csvFilePath = csvFilePath;
@@ -60,6 +86,51 @@ public class ClassifierRunner {
             log.info("Clean data loaded. Class attribute '{}' is: {}", clsAttr.name(), kind);
         }
         log.info("Using {} attributes for classification.", this.data.numAttributes());
+        this.splits = new FoldSplits(this.data, NUM_FOLDS);
+        this.effort = loadEffort(DataPreprocessor.effortFileFor(csvFilePath));
+    }
+
+    /**
+     * The LOC column written by {@link DataPreprocessor} next to the processed CSV, one value per
+     * row of {@link #data}; null (effort-aware metrics reported as NaN) if it is missing or stale.
+     * It is stale unless the stored transform was written with this processed CSV and this effort
+     * file, and it has one row per processed row with strictly increasing row ids.
+     */
+    private double[] loadEffort(Path effortFile) throws IOException {
+        if (!Files.exists(effortFile) || DefectPredictor.buggyClassIndex(data.classAttribute()) < 0) {
+            log.warn("No effort data for {}: effort-aware metrics are not available.", csvFilePath);
+            return null;
+        }
+        Path transformFile = DataPreprocessor.transformFileFor(csvFilePath);
+        if (!Files.exists(transformFile) || !PreprocessingTransform.read(transformFile).outputDigest()
+                .equals(DataPreprocessor.outputDigest(csvFilePath))) {
+            log.warn("{} was not written with {}: effort-aware metrics are not available.", effortFile, csvFilePath);
+            return null;
+        }
+        double[] loc = new double[data.numInstances()];
+        int row = 0;
+        long lastRowId = -1;
+        try (Reader in = Files.newBufferedReader(effortFile);
+             CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in)) {
+            for (CSVRecord effortRecord : parser) {
+                long rowId = Long.parseLong(effortRecord.get("RowId"));
+                if (rowId <= lastRowId) {
+                    log.warn("{} has row ids out of order at row {}: effort-aware metrics are not available.",
+                            effortFile, row);
+                    return null;
+                }
+                lastRowId = rowId;
+                if (row < loc.length) {
+                    loc[row] = Double.parseDouble(effortRecord.get("LOC"));
+                }
+                row++;
+            }
+        }
+        if (row != loc.length) {
+            log.warn("{} does not match the rows of {}: effort-aware metrics are not available.", effortFile, csvFilePath);
+            return null;
+        }
+        return loc;
     }
 
     public void runClassification() throws Exception {
@@ -70,49 +141,183 @@ public class ClassifierRunner {
         log.info("--- Starting Classifier Evaluation for: {} ---", csvFilePath);
         log.info("Validation Method: 10 times 10-fold Cross-Validation");
 
-        Classifier[] classifiers = {
-                new RandomForest(),
-                new NaiveBayes(),
-                new IBk(3)
-        };
+        List<ClassifierConfig> classifiers = List.of(
+                ClassifierConfig.defaultModel(),
+                ClassifierConfig.naiveBayes(1.0),
+                ClassifierConfig.ibk(3, "euclidean", 1.0)
+        );
+        // The three classifiers run in parallel on the same folds of each repetition.
+        List<HyperparameterSearch.Result> results = new HyperparameterSearch(splits, effort, NUM_REPEATS).evaluate(classifiers);
 
         if (log.isInfoEnabled()) {
-            log.info("{}", String.format(HEADER_FMT, "Classifier", "AUC", "Precision", "Recall", "Kappa"));
-        }
-        for (Classifier baseClassifier : classifiers) {
-            Resample resample = new Resample();
-            resample.setBiasToUniformClass(1.0);
-
-            FilteredClassifier classifierWithResample = new FilteredClassifier();
-            classifierWithResample.setClassifier(baseClassifier);
-            classifierWithResample.setFilter(resample);
-
-            int numRepeats = 10;
-            double totalAuc = 0;
-            double totalPrecision = 0;
-            double totalKappa = 0;
-            double totalRecall = 0;
-
-            for (int i = 0; i < numRepeats; i++) {
-                Evaluation eval = new Evaluation(this.data);
-                eval.crossValidateModel(classifierWithResample, this.data, 10, new Random(i));
-
-                totalAuc += eval.weightedAreaUnderROC();
-                totalPrecision += eval.weightedPrecision();
-                totalRecall += eval.weightedRecall();
-                totalKappa += eval.kappa();
-            }
-
-            if (log.isInfoEnabled()) {
+            log.info("{}", String.format(HEADER_FMT, "Classifier", "AUC", "Precision", "Recall", "Kappa", "NPofB20", "Popt"));
+            for (HyperparameterSearch.Result result : results) {
                 log.info("{}", String.format(
                         ROW_FMT,
-                        baseClassifier.getClass().getSimpleName(),
-                        totalAuc / numRepeats,
-                        totalPrecision / numRepeats,
-                        totalRecall / numRepeats,
-                        totalKappa / numRepeats
+                        result.config().classifier(),
+                        result.auc(),
+                        result.precision(),
+                        result.recall(),
+                        result.kappa(),
+                        result.npofB20(),
+                        result.popt()
                 ));
             }
         }
     }
+
+    /**
+     * Searches the hyperparameters of every classifier (see {@link HyperparameterSearch#defaultSpace()})
+     * with 10 times 10-fold cross-validation and writes the best configuration to {@code bestModelFile},
+     * for {@link com.dipalma.whatif.analysis.WhatIfSimulator}.
+     * @return the best configuration
+     */
+    public ClassifierConfig tuneHyperparameters(HyperparameterSearch.Strategy strategy, Path bestModelFile) throws Exception {
+        if (this.data == null) {
+            loadAndPrepareData();
+        }
+        List<ClassifierConfig> space = HyperparameterSearch.defaultSpace();
+        log.info("--- Hyperparameter search for: {} ({} candidates, {}) ---", csvFilePath, space.size(), strategy);
+
+        List<HyperparameterSearch.Result> ranked = new HyperparameterSearch(splits, effort, NUM_REPEATS).run(space, strategy);
+
+        if (log.isInfoEnabled()) {
+            log.info("{}", String.format(SEARCH_HEADER_FMT, "Candidate", "Repeats", "AUC", "Kappa", "NPofB20", "Popt"));
+            for (HyperparameterSearch.Result result : ranked.subList(0, Math.min(SEARCH_ROWS, ranked.size()))) {
+                log.info("{}", String.format(SEARCH_ROW_FMT, result.config(), result.repeats(), result.auc(), result.kappa(),
+                        result.npofB20(), result.popt()));
+            }
+        }
+        ClassifierConfig best = ranked.getFirst().config();
+        best.write(bestModelFile);
+        log.info("Best model: {} (written to {})", best, bestModelFile);
+        return best;
+    }
+
+    /**
+     * Evaluates every balancing x feature selection x classifier combination with 10 times 10-fold
+     * cross-validation and writes the results, best first, to {@code reportCsv}.
+     */
+    public List<PipelineEvaluator.Result> comparePipelines(Path reportCsv) throws Exception {
+        if (this.data == null) {
+            loadAndPrepareData();
+        }
+        List<FeatureSelection> selections = List.of(FeatureSelection.NONE, FeatureSelection.CFS_BEST_FIRST,
+                FeatureSelection.infoGainTopK(INFO_GAIN_TOP_K));
+        List<ClassifierConfig> classifiers = List.of(ClassifierConfig.defaultModel(),
+                ClassifierConfig.naiveBayes(1.0), ClassifierConfig.ibk(3, "euclidean", 1.0));
+        log.info("--- Pipeline comparison for: {} ({} balancings x {} selections x {} classifiers) ---",
+                csvFilePath, Balancing.ALL.size(), selections.size(), classifiers.size());
+
+        List<PipelineEvaluator.Result> ranked = new ArrayList<>(
+                new PipelineEvaluator(splits, NUM_REPEATS).evaluate(Balancing.ALL, selections, classifiers));
+        ranked.sort(PipelineEvaluator.RANKING);
+
+        try (Writer out = Files.newBufferedWriter(reportCsv);
+             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT)) {
+            printer.printRecord("Balancing", "FeatureSelection", "Classifier", "AUC", "Kappa", "Precision", "Recall");
+            for (PipelineEvaluator.Result result : ranked) {
+                printer.printRecord(result.balancing().name(), result.selection().name(), result.classifier().classifier(),
+                        result.auc(), result.kappa(), result.precision(), result.recall());
+            }
+        }
+        if (log.isInfoEnabled()) {
+            log.info("{}", String.format(PIPELINE_HEADER_FMT, "Pipeline", "AUC", "Kappa"));
+            for (PipelineEvaluator.Result result : ranked.subList(0, Math.min(SEARCH_ROWS, ranked.size()))) {
+                log.info("{}", String.format(PIPELINE_ROW_FMT, result.pipeline(), result.auc(), result.kappa()));
+            }
+        }
+        log.info("Pipeline comparison written to {}", reportCsv);
+        return ranked;
+    }
+
+    /** {@code baseClassifier} trained on a class-balanced resample of each training set. */
+    static FilteredClassifier withResample(Classifier baseClassifier) {
+        return withResample(baseClassifier, 1.0);
+    }
+
+    /** {@code baseClassifier} trained on a resample of each training set, biased towards a uniform class by {@code bias}. */
+    static FilteredClassifier withResample(Classifier baseClassifier, double bias) {
+        Resample resample = new Resample();
+        resample.setBiasToUniformClass(bias);
+
+        FilteredClassifier classifierWithResample = new FilteredClassifier();
+        classifierWithResample.setClassifier(baseClassifier);
+        classifierWithResample.setFilter(resample);
+        return classifierWithResample;
+    }
+
+    /**
+     * Same folds and results as {@link Evaluation#crossValidateModel}, with each fold timed
+     * (overall as {@code cv.fold} and per classifier).
+     */
+    static void crossValidate(Evaluation eval, Classifier classifier, Instances data,
+                                      int numFolds, Random random) throws Exception {
+        crossValidate(eval, classifier, FoldSplits.split(data, numFolds, random));
+    }
+
+    /**
+     * Cross-validates {@code classifier} on already split folds. The folds are only read, so
+     * several classifiers can be evaluated on the same folds concurrently.
+     */
+    static void crossValidate(Evaluation eval, Classifier classifier, FoldSplits.Fold[] folds) throws Exception {
+        crossValidate(eval, classifier, folds, null, null);
+    }
+
+    /**
+     * As above, also scoring every fold with {@link EffortAwareMetrics} into {@code effortScores},
+     * from the same predictions; {@code effort[r]} is the LOC of row {@code r} of the dataset.
+     * Without {@code effort}, only {@code eval} is filled.
+     */
+    static void crossValidate(Evaluation eval, Classifier classifier, FoldSplits.Fold[] folds,
+                              double[] effort, EffortAwareMetrics.Mean effortScores) throws Exception {
+        String foldTimer = "cv.fold." + classifierName(classifier);
+        for (FoldSplits.Fold fold : folds) {
+            long start = System.nanoTime();
+            eval.setPriors(fold.train());
+            Classifier copy = AbstractClassifier.makeCopy(classifier);
+            copy.buildClassifier(fold.train());
+            if (effort == null) {
+                eval.evaluateModel(copy, fold.test());
+            } else {
+                effortScores.add(evaluateWithEffort(eval, copy, fold, effort));
+            }
+            long elapsed = System.nanoTime() - start;
+            Metrics.record("cv.fold", elapsed);
+            Metrics.record(foldTimer, elapsed);
+        }
+    }
+
+    /**
+     * What {@link Evaluation#evaluateModel} does, one instance at a time, keeping each predicted
+     * distribution to score the fold with {@link EffortAwareMetrics}.
+     */
+    private static EffortAwareMetrics.Scores evaluateWithEffort(Evaluation eval, Classifier model,
+                                                               FoldSplits.Fold fold, double[] effort) throws Exception {
+        Instances test = fold.test();
+        int buggyIndex = DefectPredictor.buggyClassIndex(test.classAttribute());
+        int n = test.numInstances();
+        double[] risk = new double[n];
+        boolean[] buggy = new boolean[n];
+        double[] loc = new double[n];
+        for (int i = 0; i < n; i++) {
+            Instance instance = test.instance(i);
+            Instance classMissing = (Instance) instance.copy();
+            classMissing.setDataset(test);
+            classMissing.setClassMissing();
+            double[] distribution = model.distributionForInstance(classMissing);
+            eval.evaluateModelOnceAndRecordPrediction(distribution, instance);
+            risk[i] = distribution[buggyIndex];
+            buggy[i] = !instance.classIsMissing() && (int) instance.classValue() == buggyIndex;
+            loc[i] = effort[fold.testRows()[i]];
+        }
+        return EffortAwareMetrics.score(risk, buggy, loc);
+    }
+
+    private static String classifierName(Classifier classifier) {
+        if (classifier instanceof FilteredClassifier filtered) {
+            return filtered.getClassifier().getClass().getSimpleName();
+        }
+        return classifier.getClass().getSimpleName();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package com.dipalma.whatif.classification;
+
+import java.util.Arrays;
+
+/**
+ * Effort-aware metrics: how many defective methods a reviewer finds when inspecting them in the
+ * order of predicted risk per line of code (the probability of "buggy" over LOC), with LOC as the
+ * inspection effort.
+ * <ul>
+ *   <li>PofB20: share of the defective methods found within the first 20% of the LOC;</li>
+ *   <li>NPofB20: PofB20 over the PofB20 of the optimal ranking (defective methods first, smallest
+ *       first), so that 1 is the best any model can do on the fold;</li>
+ *   <li>Popt: {@code 1 - (opt - model) / (opt - worst)}, with the areas under the curves of defects
+ *       found against effort spent for the optimal ranking, the model's and the worst one
+ *       (defective methods last, largest first).</li>
+ * </ul>
+ * A fold is scored in one pass over its predictions sorted by risk per LOC; the optimal and worst
+ * curves only need the LOC of its defective methods, sorted once. Methods count at least one line,
+ * and the 20% cut-off only counts methods inspected in full. A metric that is undefined on a fold
+ * (no defective methods, or no difference between the optimal and worst rankings) is NaN there and
+ * left out of the means.
+ */
+public final class EffortAwareMetrics {
+
+    private static final double EFFORT_CUTOFF = 0.2;
+
+    public record Scores(double pofB20, double npofB20, double popt) {
+    }
+
+    private EffortAwareMetrics() {
+    }
+
+    /**
+     * Scores one fold.
+     * @param risk   predicted probability of being buggy, per method
+     * @param buggy  actual label, per method
+     * @param effort LOC, per method
+     */
+    public static Scores score(double[] risk, boolean[] buggy, double[] effort) {
+        int n = risk.length;
+        double totalEffort = 0;
+        int bugs = 0;
+        for (int i = 0; i < n; i++) {
+            totalEffort += lines(effort[i]);
+            bugs += buggy[i] ? 1 : 0;
+        }
+        if (bugs == 0) {
+            return new Scores(Double.NaN, Double.NaN, Double.NaN);
+        }
+
+        // Highest risk per LOC first; ties go to the smaller method, then to the earlier row.
+        Integer[] order = new Integer[n];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> {
+            int byDensity = Double.compare(risk[b] / lines(effort[b]), risk[a] / lines(effort[a]));
+            if (byDensity != 0) {
+                return byDensity;
+            }
+            int bySize = Double.compare(lines(effort[a]), lines(effort[b]));
+            return bySize != 0 ? bySize : Integer.compare(a, b);
+        });
+
+        double x = 0;
+        int found = 0;
+        double modelArea = 0;
+        double foundAt20 = 0;
+        for (int i : order) {
+            double nextX = x + lines(effort[i]) / totalEffort;
+            int nextFound = found + (buggy[i] ? 1 : 0);
+            modelArea += (nextX - x) * (found + nextFound) / (2.0 * bugs);
+            if (nextX <= EFFORT_CUTOFF + 1e-12) {
+                foundAt20 = (double) nextFound / bugs;
+            }
+            x = nextX;
+            found = nextFound;
+        }
+
+        double[] bugEfforts = new double[bugs];
+        double cleanEffort = totalEffort;
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (buggy[i]) {
+                bugEfforts[k++] = lines(effort[i]);
+                cleanEffort -= lines(effort[i]);
+            }
+        }
+        Arrays.sort(bugEfforts);
+        double optimalArea = 0;
+        double optimalAt20 = 0;
+        x = 0;
+        for (int b = 0; b < bugs; b++) {
+            double nextX = x + bugEfforts[b] / totalEffort;
+            optimalArea += (nextX - x) * (2.0 * b + 1) / (2.0 * bugs);
+            if (nextX <= EFFORT_CUTOFF + 1e-12) {
+                optimalAt20 = (b + 1.0) / bugs;
+            }
+            x = nextX;
+        }
+        optimalArea += 1 - x;
+        // Worst: clean methods first (no defects found), then the defective ones, largest first.
+        double worstArea = 0;
+        x = cleanEffort / totalEffort;
+        for (int b = 0; b < bugs; b++) {
+            double nextX = x + bugEfforts[bugs - 1 - b] / totalEffort;
+            worstArea += (nextX - x) * (2.0 * b + 1) / (2.0 * bugs);
+            x = nextX;
+        }
+
+        double npofB20 = optimalAt20 > 0 ? foundAt20 / optimalAt20 : Double.NaN;
+        double spread = optimalArea - worstArea;
+        double popt = spread > 1e-12 ? 1 - (optimalArea - modelArea) / spread : Double.NaN;
+        return new Scores(foundAt20, npofB20, popt);
+    }
+
+    private static double lines(double loc) {
+        return Math.max(1.0, loc);
+    }
+
+    /** Means of fold scores, each metric over the folds where it is defined. */
+    public static final class Mean {
+        private final double[] sums = new double[3];
+        private final int[] counts = new int[3];
+
+        public void add(Scores scores) {
+            add(0, scores.pofB20());
+            add(1, scores.npofB20());
+            add(2, scores.popt());
+        }
+
+        private void add(int metric, double value) {
+            if (!Double.isNaN(value)) {
+                sums[metric] += value;
+                counts[metric]++;
+            }
+        }
+
+        public Scores result() {
+            return new Scores(mean(0), mean(1), mean(2));
+        }
+
+        private double mean(int metric) {
+            return counts[metric] == 0 ? Double.NaN : sums[metric] / counts[metric];
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.dipalma.whatif.classification;
+
+import weka.attributeSelection.BestFirst;
+import weka.attributeSelection.CfsSubsetEval;
+import weka.attributeSelection.InfoGainAttributeEval;
+import weka.attributeSelection.Ranker;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.AttributeSelection;
+
+import java.util.function.Supplier;
+
+/**
+ * A feature-selection step used by {@link PipelineEvaluator}: fitted on a training set, then
+ * applied unchanged to the matching test set.
+ *
+ * @param name   label used in logs and reports
+ * @param filter creates a fresh Weka filter, or {@code null} to keep every attribute
+ */
+public record FeatureSelection(String name, Supplier<Filter> filter) {
+
+    /** The attributes of a training set and of its test set after selection. */
+    public record Selected(Instances train, Instances test) {
+    }
+
+    public static final FeatureSelection NONE = new FeatureSelection("None", () -> null);
+    public static final FeatureSelection CFS_BEST_FIRST = new FeatureSelection("CFS-BestFirst", () -> {
+        AttributeSelection selection = new AttributeSelection();
+        selection.setEvaluator(new CfsSubsetEval());
+        selection.setSearch(new BestFirst());
+        return selection;
+    });
+
+    /** The {@code k} attributes with the highest information gain. */
+    public static FeatureSelection infoGainTopK(int k) {
+        return new FeatureSelection("InfoGain-top" + k, () -> {
+            Ranker ranker = new Ranker();
+            ranker.setNumToSelect(k);
+            AttributeSelection selection = new AttributeSelection();
+            selection.setEvaluator(new InfoGainAttributeEval());
+            selection.setSearch(ranker);
+            return selection;
+        });
+    }
+
+    /** Selects on {@code train} and projects both sets on the selected attributes. */
+    public Selected apply(Instances train, Instances test) throws Exception {
+        Filter instance = filter.get();
+        if (instance == null) {
+            return new Selected(train, test);
+        }
+        instance.setInputFormat(train);
+        Instances selectedTrain = Filter.useFilter(train, instance);
+        // After the first batch the filter keeps its selection: the test set is only projected.
+        return new Selected(selectedTrain, Filter.useFilter(test, instance));
+    }
+}
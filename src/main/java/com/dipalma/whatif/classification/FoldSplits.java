@@ -0,0 +1,138 @@
+package com.dipalma.whatif.classification;
+
+import com.dipalma.whatif.metrics.Metrics;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The cross-validation folds of one dataset, split once and shared by every classifier evaluated
+ * on it.
+ * <p>
+ * A split is only row indices into the dataset: Weka's {@code randomize}, {@code stratify},
+ * {@code trainCV} and {@code testCV} are replayed on an index array, so repetition {@code r}
+ * yields exactly the folds {@link Evaluation#crossValidateModel} builds with {@code new Random(r)},
+ * row for row and in the same order. Each fold is presented as {@link Instances} holding the
+ * dataset's own rows, without copying them. The indices of a repetition are computed on first
+ * use and kept; folds are read-only, so classifiers can train and test on them concurrently.
+ */
+public final class FoldSplits {
+
+    /**
+     * The training and test sets of one cross-validation fold.
+     * {@code testRows[i]} is the row of the dataset that is the {@code i}-th test instance.
+     */
+    public record Fold(Instances train, Instances test, int[] testRows) {
+    }
+
+    /** Rows of a dataset presented as {@link Instances}: the row objects are shared, not copied. */
+    private static final class RowView extends Instances {
+        RowView(Instances data, int[] rows) {
+            super(data, 0);
+            m_Instances.ensureCapacity(rows.length);
+            for (int row : rows) {
+                m_Instances.add(data.instance(row));
+            }
+        }
+    }
+
+    private final Instances data;
+    private final int numFolds;
+    private final double[] classValues;
+    private final Map<Integer, Fold[]> repeats = new HashMap<>();
+
+    public FoldSplits(Instances data, int numFolds) {
+        if (numFolds < 2 || numFolds > data.numInstances()) {
+            throw new IllegalArgumentException("Cannot split " + data.numInstances() + " rows into " + numFolds + " folds");
+        }
+        this.data = data;
+        this.numFolds = numFolds;
+        this.classValues = data.classAttribute().isNominal() ? data.attributeToDoubleArray(data.classIndex()) : null;
+    }
+
+    public Instances data() {
+        return data;
+    }
+
+    public int numFolds() {
+        return numFolds;
+    }
+
+    /** The folds of repetition {@code repeat}, split with {@code new Random(repeat)} on first use. */
+    public synchronized Fold[] folds(int repeat) {
+        return repeats.computeIfAbsent(repeat, r -> split(new Random(r)));
+    }
+
+    /** The folds {@link Evaluation#crossValidateModel} would use for {@code random}, not cached. */
+    public static Fold[] split(Instances data, int numFolds, Random random) {
+        return new FoldSplits(data, numFolds).split(random);
+    }
+
+    private Fold[] split(Random random) {
+        try (Metrics.Span span = Metrics.time("cv.split")) {
+            int n = data.numInstances();
+            int[] order = new int[n];
+            Arrays.setAll(order, i -> i);
+            randomize(order, random);
+            if (classValues != null) {
+                order = stratify(order);
+            }
+
+            Fold[] folds = new Fold[numFolds];
+            for (int fold = 0; fold < numFolds; fold++) {
+                // Instances.trainCV / testCV: the first n % numFolds folds get one extra row.
+                int size = n / numFolds + (fold < n % numFolds ? 1 : 0);
+                int first = fold * (n / numFolds) + Math.min(fold, n % numFolds);
+                int[] test = Arrays.copyOfRange(order, first, first + size);
+                int[] train = new int[n - size];
+                System.arraycopy(order, 0, train, 0, first);
+                System.arraycopy(order, first + size, train, first, n - first - size);
+                randomize(train, random);
+                folds[fold] = new Fold(new RowView(data, train), new RowView(data, test), test);
+            }
+            return folds;
+        }
+    }
+
+    /** Instances.randomize. */
+    private static void randomize(int[] rows, Random random) {
+        for (int j = rows.length - 1; j > 0; j--) {
+            int k = random.nextInt(j + 1);
+            int swap = rows[j];
+            rows[j] = rows[k];
+            rows[k] = swap;
+        }
+    }
+
+    /** Instances.stratify for a nominal class: group the rows by class, then deal them out fold by fold. */
+    private int[] stratify(int[] rows) {
+        int n = rows.length;
+        int index = 1;
+        while (index < n) {
+            double first = classValues[rows[index - 1]];
+            for (int j = index; j < n; j++) {
+                double value = classValues[rows[j]];
+                if (value == first || (Double.isNaN(value) && Double.isNaN(first))) {
+                    int swap = rows[index];
+                    rows[index] = rows[j];
+                    rows[j] = swap;
+                    index++;
+                }
+            }
+            index++;
+        }
+
+        int[] stratified = new int[n];
+        int k = 0;
+        for (int start = 0; k < n; start++) {
+            for (int j = start; j < n; j += numFolds) {
+                stratified[k++] = rows[j];
+            }
+        }
+        return stratified;
+    }
+}
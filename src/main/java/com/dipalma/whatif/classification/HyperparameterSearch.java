@@ -0,0 +1,203 @@
+package com.dipalma.whatif.classification;
+
+import com.dipalma.whatif.metrics.Metrics;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parallel hyperparameter search over {@link ClassifierConfig}s, scored like {@link ClassifierRunner}:
+ * repeated stratified k-fold cross-validation, averaged over the repetitions, ranked by AUC and
+ * then Kappa.
+ * <ul>
+ *   <li>{@link Strategy#GRID} runs every candidate on every repetition;</li>
+ *   <li>{@link Strategy#SUCCESSIVE_HALVING} runs every candidate on one repetition, keeps the best
+ *       third, gives them three times as many repetitions, and so on until the survivors have the
+ *       full budget. Candidates dropped early are ranked after the survivors.</li>
+ * </ul>
+ * Repetitions are run one at a time, every candidate still in the race evaluated in parallel on the
+ * folds of the repetition, which come from {@link FoldSplits} (split once, seeded with {@code r} as
+ * in {@link ClassifierRunner}, and shared read-only). A candidate's scores therefore do not depend
+ * on the strategy or on the other candidates.
+ */
+public class HyperparameterSearch {
+
+    public enum Strategy { GRID, SUCCESSIVE_HALVING }
+
+    /**
+     * Mean scores of a candidate over the repetitions it was evaluated on; the effort-aware ones
+     * ({@link EffortAwareMetrics}) are NaN when the search has no effort data.
+     */
+    public record Result(ClassifierConfig config, int repeats, double auc, double kappa,
+                         double precision, double recall, double npofB20, double popt) {
+    }
+
+    /** Best first: highest AUC, then highest Kappa. */
+    public static final Comparator<Result> RANKING =
+            Comparator.comparingDouble(Result::auc).thenComparingDouble(Result::kappa).reversed();
+
+    private static final int ETA = 3;
+    private static final Logger log = LoggerFactory.getLogger(HyperparameterSearch.class);
+
+    private final FoldSplits splits;
+    private final double[] effort;
+    private final int numRepeats;
+    private final int parallelism;
+
+    public HyperparameterSearch(Instances data, int numFolds, int numRepeats) {
+        this(new FoldSplits(data, numFolds), null, numRepeats);
+    }
+
+    /**
+     * Evaluates on {@code splits}, e.g. shared with other evaluations of the same dataset, also
+     * computing the effort-aware metrics if {@code effort} (the LOC of each row) is given.
+     */
+    public HyperparameterSearch(FoldSplits splits, double[] effort, int numRepeats) {
+        this(splits, effort, numRepeats, Runtime.getRuntime().availableProcessors());
+    }
+
+    public HyperparameterSearch(FoldSplits splits, double[] effort, int numRepeats, int parallelism) {
+        this.splits = splits;
+        this.effort = effort;
+        this.numRepeats = numRepeats;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * numTrees and maxDepth for RandomForest, k and the distance for IBk, each with three
+     * {@code Resample} biases: none, half and full balancing.
+     */
+    public static List<ClassifierConfig> defaultSpace() {
+        List<ClassifierConfig> space = new ArrayList<>();
+        for (double bias : new double[]{0.0, 0.5, 1.0}) {
+            for (int numTrees : new int[]{50, 100, 200}) {
+                for (int maxDepth : new int[]{0, 8, 16}) {
+                    space.add(ClassifierConfig.randomForest(numTrees, maxDepth, bias));
+                }
+            }
+            space.add(ClassifierConfig.naiveBayes(bias));
+            for (int k : new int[]{1, 3, 5, 9}) {
+                for (String distance : new String[]{"euclidean", "manhattan"}) {
+                    space.add(ClassifierConfig.ibk(k, distance, bias));
+                }
+            }
+        }
+        return space;
+    }
+
+    /** @return every candidate's result, best first */
+    public List<Result> run(List<ClassifierConfig> candidates, Strategy strategy) throws Exception {
+        try (Metrics.Span span = Metrics.time("search." + strategy.name().toLowerCase())) {
+            List<Result> results = strategy == Strategy.GRID ? evaluate(candidates) : successiveHalving(candidates);
+            List<Result> ranked = new ArrayList<>(results);
+            ranked.sort(Comparator.comparingInt(Result::repeats).reversed().thenComparing(RANKING));
+            return ranked;
+        }
+    }
+
+    /** Every candidate on every repetition. @return the results in the order of {@code candidates} */
+    public List<Result> evaluate(List<ClassifierConfig> candidates) throws Exception {
+        List<Scores> scores = candidates.stream().map(Scores::new).toList();
+        evaluateRepeats(scores, 0, numRepeats);
+        return scores.stream().map(Scores::result).toList();
+    }
+
+    private List<Result> successiveHalving(List<ClassifierConfig> candidates) throws Exception {
+        List<Scores> all = candidates.stream().map(Scores::new).toList();
+        List<Scores> survivors = all;
+        int done = 0;
+        int budget = 1;
+        while (true) {
+            evaluateRepeats(survivors, done, budget);
+            done = budget;
+            log.info("Successive halving: {} candidates evaluated on {} of {} repetitions.",
+                    survivors.size(), done, numRepeats);
+            if (done >= numRepeats) {
+                break;
+            }
+            List<Scores> ranked = new ArrayList<>(survivors);
+            ranked.sort(Comparator.comparing(Scores::result, RANKING));
+            survivors = ranked.subList(0, Math.max(1, (ranked.size() + ETA - 1) / ETA));
+            // A lone survivor still gets the full budget, so its scores compare with a grid search.
+            budget = survivors.size() == 1 ? numRepeats : Math.min(numRepeats, budget * ETA);
+        }
+        return all.stream().map(Scores::result).toList();
+    }
+
+    /** Evaluates {@code candidates} on repetitions {@code [from, to)}, adding to their scores. */
+    private void evaluateRepeats(List<Scores> candidates, int from, int to) throws Exception {
+        for (int repeat = from; repeat < to; repeat++) {
+            FoldSplits.Fold[] folds = splits.folds(repeat);
+            try (ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, candidates.size()))) {
+                List<Future<Evaluation>> evaluations = new ArrayList<>(candidates.size());
+                for (Scores candidate : candidates) {
+                    evaluations.add(pool.submit(() -> {
+                        try (Metrics.Span span = Metrics.time("search.candidateRepeat")) {
+                            Evaluation eval = new Evaluation(splits.data());
+                            // Only this task adds to the candidate's effort scores during the repetition.
+                            ClassifierRunner.crossValidate(eval, candidate.config.build(), folds,
+                                    effort, candidate.effortScores);
+                            return eval;
+                        }
+                    }));
+                }
+                for (int i = 0; i < candidates.size(); i++) {
+                    candidates.get(i).add(await(evaluations.get(i), evaluations));
+                }
+            }
+            Metrics.add("search.evaluations", candidates.size());
+        }
+    }
+
+    private static Evaluation await(Future<Evaluation> future, List<Future<Evaluation>> all) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            all.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /** Running sums of one candidate's scores. */
+    private static final class Scores {
+        private final ClassifierConfig config;
+        private int repeats;
+        private double auc;
+        private double kappa;
+        private double precision;
+        private double recall;
+        private final EffortAwareMetrics.Mean effortScores = new EffortAwareMetrics.Mean();
+
+        Scores(ClassifierConfig config) {
+            this.config = config;
+        }
+
+        void add(Evaluation eval) {
+            repeats++;
+            auc += eval.weightedAreaUnderROC();
+            kappa += eval.kappa();
+            precision += eval.weightedPrecision();
+            recall += eval.weightedRecall();
+        }
+
+        Result result() {
+            int n = Math.max(1, repeats);
+            EffortAwareMetrics.Scores effortMeans = effortScores.result();
+            return new Result(config, repeats, auc / n, kappa / n, precision / n, recall / n,
+                    effortMeans.npofB20(), effortMeans.popt());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.dipalma.whatif.classification;
+
+import com.dipalma.whatif.metrics.Metrics;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates every combination of {@link Balancing} x {@link FeatureSelection} x classifier with
+ * repeated stratified k-fold cross-validation, in parallel.
+ * <p>
+ * Filtering is shared: for each fold of a repetition, each selection is fitted once on the
+ * training set and projected on the test set, and each balancing is applied once to the selected
+ * training set; every classifier then trains on those cached sets. The selection is fitted on the
+ * unbalanced training set (so synthetic SMOTE rows never choose the attributes) and priors come
+ * from it too, as when the balancing ran inside a {@code FilteredClassifier}. Filtered folds are
+ * kept for one repetition at a time.
+ * <p>
+ * Resample without selection trains on the same sets as {@link ClassifierRunner}, whose models
+ * apply the same filter inside a {@code FilteredClassifier}: {@link Balancing#RESAMPLE} takes the
+ * seed that {@code FilteredClassifier} derives from each training set.
+ */
+public class PipelineEvaluator {
+
+    /** Mean scores of one combination over all repetitions. */
+    public record Result(Balancing balancing, FeatureSelection selection, ClassifierConfig classifier,
+                         double auc, double kappa, double precision, double recall) {
+
+        public String pipeline() {
+            return balancing.name() + " + " + selection.name() + " + " + classifier;
+        }
+    }
+
+    /** Best first: highest AUC, then highest Kappa. */
+    public static final Comparator<Result> RANKING =
+            Comparator.comparingDouble(Result::auc).thenComparingDouble(Result::kappa).reversed();
+
+    /** A fold after one selection: its test set, and its training set before and after each balancing. */
+    private record FilteredFold(Instances selectedTrain, Instances test, Instances[] balancedTrain) {
+    }
+
+    private final FoldSplits splits;
+    private final int numRepeats;
+    private final int parallelism;
+
+    public PipelineEvaluator(Instances data, int numFolds, int numRepeats) {
+        this(new FoldSplits(data, numFolds), numRepeats);
+    }
+
+    /** Evaluates on {@code splits}, e.g. shared with other evaluations of the same dataset. */
+    public PipelineEvaluator(FoldSplits splits, int numRepeats) {
+        this(splits, numRepeats, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PipelineEvaluator(FoldSplits splits, int numRepeats, int parallelism) {
+        this.splits = splits;
+        this.numRepeats = numRepeats;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** @return one result per combination, balancing-major, in the order of the arguments */
+    public List<Result> evaluate(List<Balancing> balancings, List<FeatureSelection> selections,
+                                 List<ClassifierConfig> classifiers) throws Exception {
+        int combinations = balancings.size() * selections.size() * classifiers.size();
+        double[][] sums = new double[combinations][4];
+        try (ExecutorService pool = Executors.newFixedThreadPool(parallelism)) {
+            for (int repeat = 0; repeat < numRepeats; repeat++) {
+                FoldSplits.Fold[] folds = splits.folds(repeat);
+                FilteredFold[][] filtered = filterFolds(pool, folds, balancings, selections);
+
+                List<Future<Evaluation>> evaluations = new ArrayList<>(combinations);
+                for (int b = 0; b < balancings.size(); b++) {
+                    for (int s = 0; s < selections.size(); s++) {
+                        for (ClassifierConfig classifier : classifiers) {
+                            int balancing = b;
+                            int selection = s;
+                            evaluations.add(pool.submit(() -> crossValidate(classifier, filtered, selection, balancing)));
+                        }
+                    }
+                }
+                for (int c = 0; c < combinations; c++) {
+                    Evaluation eval = await(evaluations.get(c), evaluations);
+                    sums[c][0] += eval.weightedAreaUnderROC();
+                    sums[c][1] += eval.kappa();
+                    sums[c][2] += eval.weightedPrecision();
+                    sums[c][3] += eval.weightedRecall();
+                }
+                Metrics.add("pipeline.evaluations", combinations);
+            }
+        }
+
+        List<Result> results = new ArrayList<>(combinations);
+        int c = 0;
+        for (Balancing balancing : balancings) {
+            for (FeatureSelection selection : selections) {
+                for (ClassifierConfig classifier : classifiers) {
+                    double[] sum = sums[c++];
+                    results.add(new Result(balancing, selection, classifier, sum[0] / numRepeats,
+                            sum[1] / numRepeats, sum[2] / numRepeats, sum[3] / numRepeats));
+                }
+            }
+        }
+        return results;
+    }
+
+    /** Every (fold, selection) in parallel, each followed by every balancing of its training set. */
+    private static FilteredFold[][] filterFolds(ExecutorService pool, FoldSplits.Fold[] folds,
+                                                List<Balancing> balancings, List<FeatureSelection> selections)
+            throws Exception {
+        List<Future<FilteredFold>> tasks = new ArrayList<>(folds.length * selections.size());
+        for (FoldSplits.Fold fold : folds) {
+            for (FeatureSelection selection : selections) {
+                tasks.add(pool.submit(() -> {
+                    try (Metrics.Span span = Metrics.time("pipeline.filter")) {
+                        FeatureSelection.Selected selected = selection.apply(fold.train(), fold.test());
+                        Instances[] balanced = new Instances[balancings.size()];
+                        for (int b = 0; b < balanced.length; b++) {
+                            balanced[b] = balancings.get(b).apply(selected.train());
+                        }
+                        return new FilteredFold(selected.train(), selected.test(), balanced);
+                    }
+                }));
+            }
+        }
+        FilteredFold[][] filtered = new FilteredFold[folds.length][selections.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            filtered[i / selections.size()][i % selections.size()] = await(tasks.get(i), tasks);
+        }
+        return filtered;
+    }
+
+    private Evaluation crossValidate(ClassifierConfig classifier, FilteredFold[][] filtered,
+                                     int selection, int balancing) throws Exception {
+        String foldTimer = "cv.fold." + classifier.classifier();
+        Evaluation eval = new Evaluation(splits.data());
+        for (FilteredFold[] fold : filtered) {
+            FilteredFold cached = fold[selection];
+            long start = System.nanoTime();
+            eval.setPriors(cached.selectedTrain());
+            Classifier model = classifier.buildBase();
+            model.buildClassifier(cached.balancedTrain()[balancing]);
+            eval.evaluateModel(model, cached.test());
+            long elapsed = System.nanoTime() - start;
+            Metrics.record("cv.fold", elapsed);
+            Metrics.record(foldTimer, elapsed);
+        }
+        return eval;
+    }
+
+    private static <T> T await(Future<T> future, List<? extends Future<?>> all) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            all.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.dipalma.whatif.connectors;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.body.MethodDeclaration;
+import com.dipalma.whatif.metrics.Metrics;
 import com.dipalma.whatif.model.JiraTicket;
 import com.dipalma.whatif.model.ProjectRelease;
 import org.eclipse.jgit.api.Git;
@@ -9,20 +8,29 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.patch.FileHeader;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.WindowCacheStats;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
@@ -33,30 +41,99 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class GitConnector {
+
+    /** How a missing repository is cloned. Nothing reads the working tree, so {@link #BARE} is enough for mining. */
+    public enum CloneMode { FULL, BARE }
+
+    /** What is done to a repository that already exists: nothing, or fetching the tags (and their history) only. */
+    public enum UpdateMode { NONE, FETCH_TAGS }
+
+    /** Work on one item with the calling task's reader, for {@link #mapWithReaders}. */
+    @FunctionalInterface
+    public interface ReaderTask<T, R> {
+        R apply(ObjectReader reader, T item) throws IOException;
+    }
+
+    private static final int MIN_TICKETS_PER_CHUNK = 8;
+
     private final String remoteUrl;
     private final String localPath;
+    private final CloneMode cloneMode;
+    private final UpdateMode updateMode;
     private Repository repository;
     private Git git;
+    private long[] cacheStatsAtOpen;
+    private final int readParallelism = Runtime.getRuntime().availableProcessors();
     private static final Logger log = LoggerFactory.getLogger(GitConnector.class);
 
     // ... (constructor and cloneOrOpenRepo methods remain the same)
     public GitConnector(String remoteUrl, String localPath) {
+        this(remoteUrl, Path.of("temp-repo", localPath), CloneMode.FULL, UpdateMode.NONE);
+    }
+
+    /** Works on the repository in {@code localDir}, cloning {@code remoteUrl} there only if it does not exist yet. */
+    public GitConnector(String remoteUrl, Path localDir) {
+        this(remoteUrl, localDir, CloneMode.FULL, UpdateMode.NONE);
+    }
+
+    public GitConnector(String remoteUrl, Path localDir, CloneMode cloneMode, UpdateMode updateMode) {
         this.remoteUrl = remoteUrl;
-        this.localPath = "temp-repo/" + localPath;
+        this.localPath = localDir.toString();
+        this.cloneMode = cloneMode;
+        this.updateMode = updateMode;
     }
 
     public void cloneOrOpenRepo() throws IOException, GitAPIException {
+        try (Metrics.Span span = Metrics.time("git.cloneOrOpen")) {
+            openOrClone();
+        }
+    }
+
+    private void openOrClone() throws IOException, GitAPIException {
         File localDir = new File(localPath);
         if (localDir.exists()) {
             log.info("Opening existing repository at {}", localPath);
             git = Git.open(localDir);
             repository = git.getRepository();
+            if (updateMode == UpdateMode.FETCH_TAGS && remoteUrl != null) {
+                log.info("Fetching tags from {}...", remoteUrl);
+                git.fetch().setRemote(remoteUrl)
+                        .setRefSpecs(new RefSpec("+refs/tags/*:refs/tags/*"))
+                        .setTagOpt(TagOpt.NO_TAGS)
+                        .call();
+            }
         } else {
-            log.info("Cloning {} to {}...", remoteUrl, localPath);
-            git = Git.cloneRepository().setURI(remoteUrl).setDirectory(localDir).call();
+            log.info("Cloning {} to {} ({})...", remoteUrl, localPath, cloneMode);
+            git = Git.cloneRepository().setURI(remoteUrl).setDirectory(localDir)
+                    .setBare(cloneMode == CloneMode.BARE)
+                    .setNoCheckout(cloneMode == CloneMode.BARE)
+                    .call();
             repository = git.getRepository();
             log.info("Clone complete.");
         }
+        cacheStatsAtOpen = cacheStats();
+    }
+
+    /**
+     * Adds to the metrics how the JGit object caches (see {@link ObjectCacheSettings}) behaved since
+     * the repository was opened: window hits, misses and evictions, and time spent loading windows.
+     * The caches are shared by the whole process, so concurrent connectors are counted together.
+     */
+    public void recordObjectCacheStats() {
+        if (cacheStatsAtOpen == null) {
+            return;
+        }
+        long[] now = cacheStats();
+        Metrics.add("git.windowCache.hits", now[0] - cacheStatsAtOpen[0]);
+        Metrics.add("git.windowCache.misses", now[1] - cacheStatsAtOpen[1]);
+        Metrics.add("git.windowCache.evictions", now[2] - cacheStatsAtOpen[2]);
+        Metrics.add("git.windowCache.loadMs", (now[3] - cacheStatsAtOpen[3]) / 1_000_000);
+        cacheStatsAtOpen = now;
+    }
+
+    private static long[] cacheStats() {
+        WindowCacheStats stats = WindowCacheStats.getStats();
+        return new long[]{stats.getHitCount(), stats.getMissCount(), stats.getEvictionCount(), stats.getTotalLoadTime()};
     }
 
 
@@ -66,63 +143,77 @@ public class GitConnector {
      */
     public Map<String, List<String>> getBugToMethodsMap(List<JiraTicket> tickets) throws IOException {
         log.info("Mapping bug fixes to specific methods...");
+        List<JiraTicket> fixed = new ArrayList<>();
+        for (JiraTicket ticket : tickets) {
+            if (ticket.getFixCommitHash() != null) {
+                fixed.add(ticket);
+            }
+        }
+        // Fix commits are diffed concurrently, each chunk of tickets through one reader so that its
+        // delta base cache serves the whole chunk.
+        List<List<String>> affected = mapWithReaders("git.fixDiffs", fixed, readParallelism, MIN_TICKETS_PER_CHUNK,
+                this::getAffectedMethods);
+
         Map<String, List<String>> bugToMethods = new HashMap<>();
-        try (RevWalk revWalk = new RevWalk(repository)) {
+        for (int t = 0; t < fixed.size(); t++) {
+            if (affected.get(t) != null) {
+                bugToMethods.put(fixed.get(t).getKey(), affected.get(t));
+            }
+        }
+        log.info("Finished mapping bugs to methods.");
+        return bugToMethods;
+    }
 
-            for (JiraTicket ticket : tickets) {
-                String fixHash = ticket.getFixCommitHash();
-                if (fixHash == null) {
-                    continue;
-                }
-                RevCommit commit = revWalk.parseCommit(repository.resolve(fixHash));
-                if (commit.getParentCount() > 0) {
-                    RevCommit parent = revWalk.parseCommit(commit.getParent(0).getId());
-
-                    List<DiffEntry> diffs = getDiff(parent, commit);
-                    List<String> affectedMethods = new ArrayList<>();
-
-                    for (DiffEntry diff : diffs) {
-                        if (diff.getChangeType() == DiffEntry.ChangeType.MODIFY
-                                && diff.getNewPath().endsWith(".java")) {
-                            affectedMethods.addAll(getModifiedMethods(diff, commit));
-                        }
-                    }
+    /** Methods changed by the fix commit of {@code ticket}, or {@code null} if the commit has no parent. */
+    private List<String> getAffectedMethods(ObjectReader reader, JiraTicket ticket) throws IOException {
+        Metrics.increment("git.fixCommits");
+        try (RevWalk revWalk = new RevWalk(reader);
+             DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            diffFormatter.setReader(reader, repository.getConfig());
+            RevCommit commit = revWalk.parseCommit(repository.resolve(ticket.getFixCommitHash()));
+            if (commit.getParentCount() == 0) {
+                return null;
+            }
+            RevCommit parent = revWalk.parseCommit(commit.getParent(0).getId());
 
-                    bugToMethods.put(ticket.getKey(), affectedMethods);
+            List<DiffEntry> diffs = getDiff(reader, parent, commit);
+            List<String> affectedMethods = new ArrayList<>();
+
+            for (DiffEntry diff : diffs) {
+                if (diff.getChangeType() == DiffEntry.ChangeType.MODIFY
+                        && diff.getNewPath().endsWith(".java")) {
+                    affectedMethods.addAll(getModifiedMethods(diff, reader, diffFormatter));
                 }
             }
+            return affectedMethods;
         }
-        log.info("Finished mapping bugs to methods.");
-        return bugToMethods;
     }
 
     /**
      * Helper method to parse a diff and find which methods were modified.
+     * Only method boundaries are needed here, so the file is scanned lexically instead of parsed.
      */
-    private List<String> getModifiedMethods(DiffEntry diff, RevCommit commit) throws IOException {
+    private List<String> getModifiedMethods(DiffEntry diff, ObjectReader reader, DiffFormatter diffFormatter)
+            throws IOException {
         List<String> modifiedMethods = new ArrayList<>();
         String newPath = diff.getNewPath();
-        String fileContent = getFileContent(newPath, commit.getName());
+        CharSequence fileContent = readText(reader, diff.getNewId().toObjectId());
 
         if (fileContent.isEmpty()) return modifiedMethods;
 
-        List<MethodDeclaration> methods;
-        try {
-            methods = new ArrayList<>(StaticJavaParser.parse(fileContent).findAll(MethodDeclaration.class));
-        } catch (Exception e) { return modifiedMethods; }
-
-        try (DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
-            diffFormatter.setRepository(repository);
-            FileHeader fileHeader = diffFormatter.toFileHeader(diff);
-            for (Edit edit : fileHeader.toEditList()) {
-                for (MethodDeclaration method : methods) {
-                    if (method.getRange().isPresent()) {
-                        int methodStart = method.getRange().get().begin.line;
-                        int methodEnd = method.getRange().get().end.line;
-                        if (Math.max(methodStart, edit.getBeginB()) <= Math.min(methodEnd, edit.getEndB())) {
-                            modifiedMethods.add(newPath + "::" + method.getSignature().asString());
-                        }
-                    }
+        Metrics.increment("git.filesScanned");
+        List<MethodBoundaryScanner.MethodSpan> methods = new ArrayList<>();
+        for (MethodBoundaryScanner.MethodSpan span : MethodBoundaryScanner.scan(fileContent)) {
+            if (!span.constructor()) {
+                methods.add(span);
+            }
+        }
+
+        FileHeader fileHeader = diffFormatter.toFileHeader(diff);
+        for (Edit edit : fileHeader.toEditList()) {
+            for (MethodBoundaryScanner.MethodSpan method : methods) {
+                if (Math.max(method.beginLine(), edit.getBeginB()) <= Math.min(method.endLine(), edit.getEndB())) {
+                    modifiedMethods.add(newPath + "::" + method.signature());
                 }
             }
         }
@@ -164,6 +255,7 @@ public class GitConnector {
         }
         Iterable<RevCommit> commits = git.log().all().call();
         for (RevCommit commit : commits) {
+            Metrics.increment("git.commitsWalked");
             Matcher matcher = pattern.matcher(commit.getFullMessage());
             while (matcher.find()) {
                 String ticketKey = matcher.group(1);
@@ -179,36 +271,121 @@ public class GitConnector {
         log.info("Finished scanning git log.");
     }
     public List<DiffEntry> getDiff(RevCommit commit1, RevCommit commit2) throws IOException {
-        try (DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
-            diffFormatter.setRepository(repository);
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return getDiff(reader, commit1, commit2);
+        }
+    }
+
+    /** As above, through {@code reader}, which stays open. */
+    private List<DiffEntry> getDiff(ObjectReader reader, RevCommit commit1, RevCommit commit2) throws IOException {
+        try (Metrics.Span span = Metrics.time("git.diff");
+             DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            diffFormatter.setReader(reader, repository.getConfig());
             diffFormatter.setDetectRenames(true);
-            try (ObjectReader reader = repository.newObjectReader()) {
-                CanonicalTreeParser oldTreeParser = new CanonicalTreeParser();
-                oldTreeParser.reset(reader, commit1.getTree().getId());
-                CanonicalTreeParser newTreeParser = new CanonicalTreeParser();
-                newTreeParser.reset(reader, commit2.getTree().getId());
-                return diffFormatter.scan(oldTreeParser, newTreeParser);
-            }
+            CanonicalTreeParser oldTreeParser = new CanonicalTreeParser();
+            oldTreeParser.reset(reader, commit1.getTree().getId());
+            CanonicalTreeParser newTreeParser = new CanonicalTreeParser();
+            newTreeParser.reset(reader, commit2.getTree().getId());
+            return diffFormatter.scan(oldTreeParser, newTreeParser);
         }
     }
-    public List<String> getJavaFilesForCommit(String commitId) throws GitAPIException, IOException {
-        git.checkout().setName(commitId).call(); // Checkout the specific commit
-        List<String> javaFiles = new ArrayList<>();
-        try (TreeWalk treeWalk = new TreeWalk(repository)) {
-            treeWalk.reset(repository.resolve("HEAD^{tree}"));
+    /** Java sources (tests excluded) in the tree of {@code commitId}, listed without checking it out. */
+    public List<String> getJavaFilesForCommit(String commitId) throws IOException {
+        return new ArrayList<>(getJavaBlobsForCommit(commitId).keySet());
+    }
+
+    /** Like {@link #getJavaFilesForCommit}, with the blob of each file taken from the same tree walk. */
+    public Map<String, ObjectId> getJavaBlobsForCommit(String commitId) throws IOException {
+        Map<String, ObjectId> javaFiles = new LinkedHashMap<>();
+        try (Metrics.Span span = Metrics.time("git.listFiles");
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.reset(repository.resolve(commitId + "^{tree}"));
             treeWalk.setRecursive(true);
             while (treeWalk.next()) {
-                if (treeWalk.getPathString().endsWith(".java") && !treeWalk.getPathString().toLowerCase().contains("test")) {
-                    javaFiles.add(treeWalk.getPathString());
+                String path = treeWalk.getPathString();
+                if (path.endsWith(".java") && !path.toLowerCase().contains("test")) {
+                    javaFiles.put(path, treeWalk.getObjectId(0));
                 }
             }
         }
         return javaFiles;
     }
+    /** Id of the blob holding {@code filePath} at {@code commitId}, or {@code null} if the file does not exist there. */
+    public ObjectId getBlobId(String filePath, String commitId) throws IOException {
+        return repository.resolve(commitId + ":" + filePath);
+    }
     public String getFileContent(String filePath, String commitId) throws IOException {
-        ObjectId objId = repository.resolve(commitId + ":" + filePath);
+        ObjectId objId = getBlobId(filePath, commitId);
         if (objId == null) return "";
-        return new String(repository.open(objId).getBytes(), StandardCharsets.UTF_8);
+        try (ObjectReader reader = newObjectReader()) {
+            return readText(reader, objId).toString();
+        }
+    }
+
+    /**
+     * Maps {@code items} through object reads on virtual threads (see {@link IoScope}), at most
+     * {@code parallelism} at a time, in contiguous chunks of at least {@code minItemsPerChunk}
+     * items. Each chunk uses one reader for all of its items: readers are not thread-safe, and
+     * each keeps its own delta base cache, which then serves the whole chunk.
+     * @return the results in the order of {@code items}
+     */
+    public <T, R> List<R> mapWithReaders(String name, List<T> items, int parallelism, int minItemsPerChunk,
+                                         ReaderTask<T, R> task) throws IOException {
+        int chunks = Math.min(Math.max(1, parallelism), Math.max(1, items.size() / Math.max(1, minItemsPerChunk)));
+        int chunkSize = Math.max(1, (items.size() + chunks - 1) / chunks);
+        List<List<T>> ranges = new ArrayList<>(chunks);
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            ranges.add(items.subList(from, Math.min(items.size(), from + chunkSize)));
+        }
+        List<R> results = new ArrayList<>(items.size());
+        for (List<R> chunk : IoScope.map(name, chunks, ranges, range -> {
+            List<R> chunkResults = new ArrayList<>(range.size());
+            try (ObjectReader reader = newObjectReader()) {
+                for (T item : range) {
+                    chunkResults.add(task.apply(reader, item));
+                }
+            }
+            return chunkResults;
+        })) {
+            results.addAll(chunk);
+        }
+        return results;
+    }
+
+    /**
+     * A reader of this repository's objects. Readers are not thread-safe but cheap, and each keeps
+     * its own delta base cache: concurrent scans should use one per thread, reused across reads.
+     */
+    public ObjectReader newObjectReader() {
+        return repository.newObjectReader();
+    }
+
+    /**
+     * Opens a blob through {@code reader} without copying it: small blobs stay in the reader's
+     * cached buffer and large ones (above the stream threshold) are streamed from the pack.
+     */
+    public ObjectLoader openBlob(ObjectReader reader, ObjectId blobId) throws IOException {
+        try (Metrics.Span span = Metrics.time("git.readBlob")) {
+            ObjectLoader loader = reader.open(blobId, Constants.OBJ_BLOB);
+            Metrics.add("git.bytesRead", loader.getSize());
+            return loader;
+        }
+    }
+
+    /** A blob decoded as UTF-8 text, straight from the loader's bytes or stream. */
+    public CharSequence readText(ObjectReader reader, ObjectId blobId) throws IOException {
+        ObjectLoader loader = openBlob(reader, blobId);
+        if (!loader.isLarge()) {
+            return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(loader.getCachedBytes()));
+        }
+        StringBuilder text = new StringBuilder((int) Math.min(Integer.MAX_VALUE, loader.getSize()));
+        try (Reader in = new InputStreamReader(loader.openStream(), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                text.append(buffer, 0, n);
+            }
+        }
+        return text;
     }
     public Git getGit() { return git; }
     public Repository getRepository() { return repository; }
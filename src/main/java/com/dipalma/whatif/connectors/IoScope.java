@@ -0,0 +1,165 @@
+package com.dipalma.whatif.connectors;
+
+import com.dipalma.whatif.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A structured scope for blocking I/O (HTTP calls, object database reads). Every forked task runs
+ * on its own virtual thread, so waiting on the network or the disk costs no platform thread, and
+ * at most {@code maxConcurrency} tasks run at once, to protect the remote side (or the file
+ * handles) rather than the threads.
+ * <p>
+ * No task outlives the scope: the first failure cancels (interrupts) the other tasks and is
+ * rethrown by {@link #join()}, and {@link #close()} cancels whatever is still running and waits
+ * for it. Java 21 only has {@code StructuredTaskScope} as a preview feature, so this is the same
+ * shape on a virtual-thread-per-task executor and a semaphore. Forking and joining are for the
+ * thread that opened the scope.
+ */
+public final class IoScope implements AutoCloseable {
+
+    /** A blocking call run in the scope. */
+    @FunctionalInterface
+    public interface IoTask<T> {
+        T call() throws IOException;
+    }
+
+    /** {@link IoTask} over one item, for {@link #map}. */
+    @FunctionalInterface
+    public interface IoFunction<T, R> {
+        R apply(T item) throws IOException;
+    }
+
+    /** Result of a forked task, available once the scope has joined successfully. */
+    public static final class Subtask<T> {
+        private final Future<T> future;
+
+        private Subtask(Future<T> future) {
+            this.future = future;
+        }
+
+        public T get() {
+            return future.resultNow();
+        }
+    }
+
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Queue<Future<?>> forked = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private IoScope(String name, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency cap must be at least 1: " + maxConcurrency);
+        }
+        this.name = name;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /** Opens a scope whose tasks are counted and timed under {@code io.<name>}. */
+    public static IoScope open(String name, int maxConcurrency) {
+        return new IoScope(name, maxConcurrency);
+    }
+
+    /**
+     * Runs {@code task} on every item in one scope, at most {@code maxConcurrency} at a time.
+     * @return the results in the order of {@code items}
+     */
+    public static <T, R> List<R> map(String name, int maxConcurrency, List<T> items, IoFunction<T, R> task)
+            throws IOException {
+        try (IoScope scope = open(name, maxConcurrency)) {
+            List<Subtask<R>> subtasks = new ArrayList<>(items.size());
+            for (T item : items) {
+                subtasks.add(scope.fork(() -> task.apply(item)));
+            }
+            scope.join();
+            List<R> results = new ArrayList<>(subtasks.size());
+            for (Subtask<R> subtask : subtasks) {
+                results.add(subtask.get());
+            }
+            return results;
+        }
+    }
+
+    /** Starts {@code task} on a new virtual thread; it waits for a permit before running. */
+    public <T> Subtask<T> fork(IoTask<T> task) {
+        Future<T> future = executor.submit(() -> {
+            try (Metrics.Span span = Metrics.time("io." + name + ".permitWait")) {
+                permits.acquire();
+            }
+            try (Metrics.Span span = Metrics.time("io." + name + ".task")) {
+                return task.call();
+            } catch (Exception | Error e) {
+                if (failure.compareAndSet(null, e)) {
+                    cancelAll();
+                }
+                throw e;
+            } finally {
+                permits.release();
+            }
+        });
+        forked.add(future);
+        // A sibling may have failed before this task was registered for cancellation.
+        if (failure.get() != null) {
+            future.cancel(true);
+        }
+        return new Subtask<>(future);
+    }
+
+    /**
+     * Waits for every forked task.
+     * @throws IOException the first failure of a task (unchecked ones are rethrown as they are)
+     */
+    public void join() throws IOException {
+        for (Future<?> future : forked) {
+            try {
+                future.get();
+            } catch (ExecutionException | CancellationException e) {
+                // The failure that cancelled the scope is rethrown below.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll();
+                throw new InterruptedIOException("Interrupted while waiting for " + name);
+            }
+        }
+        Throwable cause = failure.get();
+        if (cause instanceof IOException io) {
+            throw io;
+        }
+        if (cause instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        if (cause != null) {
+            throw new IOException("Failed in " + name, cause);
+        }
+    }
+
+    private void cancelAll() {
+        Metrics.increment("io." + name + ".cancelled");
+        forked.forEach(future -> future.cancel(true));
+    }
+
+    /** Cancels the tasks still running, if any, and waits for all of them to finish. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        executor.close();
+    }
+}
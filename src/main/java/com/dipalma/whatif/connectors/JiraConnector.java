@@ -2,11 +2,6 @@ package com.dipalma.whatif.connectors;
 
 import com.dipalma.whatif.model.JiraTicket;
 import com.dipalma.whatif.model.ProjectRelease;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -23,19 +18,43 @@ import java.util.List;
 import java.util.stream.IntStream;
 
 
-public class JiraConnector {
+/**
+ * Releases and fixed bugs of a project from the JIRA REST API. Requests go through a
+ * {@link JiraRequestScheduler}: rate-limited, retried and hedged as its settings say.
+ */
+public class JiraConnector implements AutoCloseable {
     private final String projectKey;
+    private final String jiraUrl;
+    private final JiraRequestScheduler scheduler;
     private static final String JIRA_URL = "https://issues.apache.org/jira";
+    private static final int MAX_RESULTS = 100;
     // Define a formatter that matches JIRA's date format (e.g., "2009-04-01T15:59:07.000+0000")
     private static final DateTimeFormatter JIRA_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
 
 
     public JiraConnector(String projectKey) {
+        this(projectKey, JIRA_URL);
+    }
+
+    /** Queries the JIRA instance at {@code jiraUrl} instead of the Apache one (e.g. a local stub). */
+    public JiraConnector(String projectKey, String jiraUrl) {
+        this(projectKey, jiraUrl, JiraRequestSettings.defaults());
+    }
+
+    /** As above, with at most {@code maxConcurrency} requests in flight at once. */
+    public JiraConnector(String projectKey, String jiraUrl, int maxConcurrency) {
+        this(projectKey, jiraUrl, JiraRequestSettings.defaults().withMaxConcurrency(maxConcurrency));
+    }
+
+    /** As above, with the given timeouts, rate, retries and hedging. */
+    public JiraConnector(String projectKey, String jiraUrl, JiraRequestSettings settings) {
         this.projectKey = projectKey;
+        this.jiraUrl = jiraUrl;
+        this.scheduler = new JiraRequestScheduler(settings);
     }
 
     public List<ProjectRelease> getProjectReleases() throws IOException {
-        String url = String.format("%s/rest/api/2/project/%s/versions", JIRA_URL, projectKey);
+        String url = String.format("%s/rest/api/2/project/%s/versions", jiraUrl, projectKey);
         String jsonResponse = sendGetRequest(url);
 
         JSONArray versions = new JSONArray(jsonResponse);
@@ -56,57 +75,70 @@ public class JiraConnector {
                 .toList();
     }
 
+    /**
+     * Every fixed bug of the project, oldest first. The first page gives the total; the remaining
+     * pages are then requested concurrently (see {@link IoScope}), at most {@code maxConcurrency}
+     * at a time, and reassembled in order.
+     */
     public List<JiraTicket> getBugTickets() throws IOException {
+        String jql = String.format("project = '%s' AND issuetype = Bug AND status in (Resolved, Closed) AND resolution = Fixed ORDER BY created ASC", projectKey);
+
+        JSONObject first = new JSONObject(sendGetRequest(searchUrl(jql, 0)));
+        JSONArray firstIssues = first.getJSONArray("issues");
+        List<JiraTicket> tickets = new ArrayList<>(parseIssues(firstIssues));
+        int total = first.getInt("total");
+        // JIRA may serve fewer results per page than asked for: its first page tells how many.
+        int pageSize = firstIssues.length();
+        if (pageSize == 0) {
+            return tickets;
+        }
+
+        List<Integer> offsets = new ArrayList<>();
+        for (int startAt = pageSize; startAt < total; startAt += pageSize) {
+            offsets.add(startAt);
+        }
+        List<List<JiraTicket>> pages = IoScope.map("jira.search", scheduler.settings().maxConcurrency(), offsets,
+                startAt -> parseIssues(new JSONObject(sendGetRequest(searchUrl(jql, startAt))).getJSONArray("issues")));
+        pages.forEach(tickets::addAll);
+        return tickets;
+    }
+
+    private String searchUrl(String jql, int startAt) {
+        return String.format("%s/rest/api/2/search?jql=%s&fields=key,created,resolutiondate,versions&startAt=%d&maxResults=%d",
+                jiraUrl, URLEncoder.encode(jql, StandardCharsets.UTF_8), startAt, MAX_RESULTS);
+    }
+
+    private static List<JiraTicket> parseIssues(JSONArray issues) {
         List<JiraTicket> tickets = new ArrayList<>();
-        int startAt = 0;
-        int maxResults = 100;
-        boolean isLast = false;
-
-        while (!isLast) {
-            String jql = String.format("project = '%s' AND issuetype = Bug AND status in (Resolved, Closed) AND resolution = Fixed ORDER BY created ASC", projectKey);
-            String url = String.format("%s/rest/api/2/search?jql=%s&fields=key,created,resolutiondate,versions&startAt=%d&maxResults=%d",
-                    JIRA_URL, URLEncoder.encode(jql, StandardCharsets.UTF_8), startAt, maxResults);
-
-            String jsonResponse = sendGetRequest(url);
-            JSONObject response = new JSONObject(jsonResponse);
-            JSONArray issues = response.getJSONArray("issues");
-
-            for (int i = 0; i < issues.length(); i++) {
-                JSONObject issue = issues.getJSONObject(i);
-                JSONObject fields = issue.getJSONObject("fields");
-                String key = issue.getString("key");
-
-                // *** FIX IS HERE ***
-                // Use the custom formatter to parse the date string
-                String createdString = fields.getString("created");
-                LocalDateTime created = ZonedDateTime.parse(createdString, JIRA_DATE_FORMATTER).toLocalDateTime();
-
-                // Get affected versions, if any
-                List<String> affectedVersions = new ArrayList<>();
-                if (fields.has("versions")) {
-                    JSONArray avs = fields.getJSONArray("versions");
-                    for (int j = 0; j < avs.length(); j++) {
-                        affectedVersions.add(avs.getJSONObject(j).getString("name"));
-                    }
+        for (int i = 0; i < issues.length(); i++) {
+            JSONObject issue = issues.getJSONObject(i);
+            JSONObject fields = issue.getJSONObject("fields");
+            String key = issue.getString("key");
+
+            // *** FIX IS HERE ***
+            // Use the custom formatter to parse the date string
+            String createdString = fields.getString("created");
+            LocalDateTime created = ZonedDateTime.parse(createdString, JIRA_DATE_FORMATTER).toLocalDateTime();
+
+            // Get affected versions, if any
+            List<String> affectedVersions = new ArrayList<>();
+            if (fields.has("versions")) {
+                JSONArray avs = fields.getJSONArray("versions");
+                for (int j = 0; j < avs.length(); j++) {
+                    affectedVersions.add(avs.getJSONObject(j).getString("name"));
                 }
-                tickets.add(new JiraTicket(key, created, affectedVersions));
-            }
-
-            int total = response.getInt("total");
-            startAt += issues.length();
-            if (startAt >= total) {
-                isLast = true;
             }
+            tickets.add(new JiraTicket(key, created, affectedVersions));
         }
         return tickets;
     }
 
     private String sendGetRequest(String url) throws IOException {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpGet request = new HttpGet(url);
-            try (CloseableHttpResponse response = httpClient.execute(request)) {
-                return EntityUtils.toString(response.getEntity());
-            }
-        }
+        return scheduler.get(url);
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,332 @@
+package com.dipalma.whatif.connectors;
+
+import com.dipalma.whatif.metrics.Metrics;
+import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the GET requests of {@link JiraConnector} (see {@link JiraRequestSettings}):
+ * <ul>
+ *   <li>every attempt, hedges included, takes a token from a bucket refilled at the request rate;
+ *       a 429 halves the rate and pauses the bucket for the {@code Retry-After} the server asked
+ *       for, and every success raises the rate again by a twentieth of the maximum;</li>
+ *   <li>connect and read timeouts, 429, 5xx and dropped connections are retried with jittered
+ *       exponential backoff, or after {@code Retry-After} when the server sends one; other
+ *       statuses fail at once, so an error page is never parsed as JSON;</li>
+ *   <li>an attempt still unanswered after the hedge delay (the 95th percentile of recent
+ *       latencies, at least the configured delay) is sent once more, and the first response
+ *       wins; the other is aborted.</li>
+ * </ul>
+ * Thread-safe: {@link JiraConnector} calls it from concurrent pages.
+ */
+public final class JiraRequestScheduler implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JiraRequestScheduler.class);
+    private static final int LATENCY_SAMPLES = 64;
+    private static final int MIN_LATENCY_SAMPLES = 8;
+
+    /** A failed attempt worth retrying, with the wait the server asked for, if any. */
+    private static final class RetryableException extends IOException {
+        private final transient Duration retryAfter;
+
+        RetryableException(String message, Duration retryAfter, Throwable cause) {
+            super(message, cause);
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * Token bucket whose rate adapts: halved on throttling (down to 1/32 of the maximum), raised
+     * additively on success. A pause moves the refill time into the future.
+     */
+    private static final class TokenBucket {
+        private final double maxRate;
+        private final double burst;
+        private double rate;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double maxRate, int burst) {
+            this.maxRate = maxRate;
+            this.burst = burst;
+            this.rate = maxRate;
+            this.tokens = burst;
+        }
+
+        void acquire() throws InterruptedException {
+            while (true) {
+                long wait;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    long elapsed = now - refilledAt;
+                    if (elapsed > 0) {
+                        tokens = Math.min(burst, tokens + elapsed * rate / 1e9);
+                        refilledAt = now;
+                    }
+                    if (elapsed >= 0 && tokens >= 1) {
+                        tokens -= 1;
+                        return;
+                    }
+                    wait = elapsed < 0 ? -elapsed : (long) Math.ceil((1 - tokens) / rate * 1e9);
+                }
+                try (Metrics.Span span = Metrics.time("jira.rateLimitWait")) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+        }
+
+        synchronized void onThrottled(Duration pause) {
+            rate = Math.max(maxRate / 32, rate / 2);
+            tokens = 0;
+            refilledAt = Math.max(refilledAt, System.nanoTime() + pause.toNanos());
+        }
+
+        synchronized void onSuccess() {
+            rate = Math.min(maxRate, rate + maxRate / 20);
+        }
+    }
+
+    private final JiraRequestSettings settings;
+    private final CloseableHttpClient client;
+    private final TokenBucket bucket;
+    private final ExecutorService attempts = Executors.newVirtualThreadPerTaskExecutor();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount = 0;
+
+    public JiraRequestScheduler(JiraRequestSettings settings) {
+        this.settings = settings;
+        this.bucket = new TokenBucket(settings.requestsPerSecond(), settings.burst());
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(millis(settings.connectTimeout()))
+                .setConnectionRequestTimeout(millis(settings.connectTimeout()))
+                .setSocketTimeout(millis(settings.readTimeout()))
+                .build();
+        // Room for a hedge next to every request in flight.
+        int connections = 2 * settings.maxConcurrency();
+        this.client = HttpClients.custom()
+                .setDefaultRequestConfig(config)
+                .setMaxConnTotal(connections)
+                .setMaxConnPerRoute(connections)
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    public JiraRequestSettings settings() {
+        return settings;
+    }
+
+    /** The body of the first successful (2xx) response to GET {@code url}. */
+    public String get(String url) throws IOException {
+        try (Metrics.Span span = Metrics.time("jira.request")) {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    String body = hedged(url);
+                    Metrics.add("jira.responseChars", body.length());
+                    return body;
+                } catch (RetryableException e) {
+                    if (attempt >= settings.maxAttempts()) {
+                        throw new IOException("Giving up on " + url + " after " + attempt + " attempts", e);
+                    }
+                    Duration wait = e.retryAfter != null ? e.retryAfter : backoff(attempt);
+                    Metrics.increment("jira.retries");
+                    log.info("Retrying {} in {} ms: {}", url, wait.toMillis(), e.getMessage());
+                    sleep(wait);
+                }
+            }
+        }
+    }
+
+    /** One attempt, hedged once if it is slow. Losing requests are aborted. */
+    private String hedged(String url) throws IOException {
+        ExecutorCompletionService<String> race = new ExecutorCompletionService<>(attempts);
+        List<HttpGet> requests = new ArrayList<>(2);
+        List<Future<String>> futures = new ArrayList<>(2);
+        try {
+            // The primary takes its token here, so that the hedge delay only counts time on the wire.
+            acquireToken(url);
+            HttpGet primary = new HttpGet(url);
+            requests.add(primary);
+            futures.add(race.submit(() -> send(primary)));
+
+            long hedgeDelay = hedgeDelayNanos();
+            Future<String> done = hedgeDelay > 0 ? race.poll(hedgeDelay, TimeUnit.NANOSECONDS) : null;
+            if (hedgeDelay > 0 && done == null) {
+                Metrics.increment("jira.hedges");
+                HttpGet hedge = new HttpGet(url);
+                requests.add(hedge);
+                futures.add(race.submit(() -> {
+                    acquireToken(url);
+                    return send(hedge);
+                }));
+            }
+
+            IOException failure = null;
+            for (int outstanding = futures.size(); outstanding > 0; outstanding--) {
+                if (done == null) {
+                    done = race.take();
+                }
+                try {
+                    String body = done.get();
+                    if (done != futures.getFirst()) {
+                        Metrics.increment("jira.hedgeWins");
+                    }
+                    return body;
+                } catch (ExecutionException e) {
+                    IOException cause = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                    failure = failure == null ? cause : failure;
+                }
+                done = null;
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting " + url);
+        } finally {
+            requests.forEach(HttpGet::abort);
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void acquireToken(String url) throws InterruptedIOException {
+        try {
+            bucket.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to request " + url);
+        }
+    }
+
+    private String send(HttpGet request) throws IOException {
+        Metrics.increment("jira.attempts");
+        long start = System.nanoTime();
+        int status;
+        String body;
+        Duration retryAfter;
+        try (CloseableHttpResponse response = client.execute(request)) {
+            status = response.getStatusLine().getStatusCode();
+            body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            retryAfter = retryAfter(response.getFirstHeader("Retry-After"));
+        } catch (SocketTimeoutException | ConnectTimeoutException e) {
+            Metrics.increment("jira.timeouts");
+            throw new RetryableException("Timed out requesting " + request.getURI(), null, e);
+        } catch (IOException e) {
+            if (request.isAborted()) {
+                throw e;
+            }
+            // Connection reset, refused, closed before the response: transient.
+            throw new RetryableException("Failed requesting " + request.getURI() + ": " + e, null, e);
+        }
+
+        if (status / 100 == 2) {
+            recordLatency(System.nanoTime() - start);
+            bucket.onSuccess();
+            return body;
+        }
+        if (status == 429) {
+            Metrics.increment("jira.throttled");
+            bucket.onThrottled(retryAfter != null ? retryAfter : settings.initialBackoff());
+            throw new RetryableException("HTTP 429 from " + request.getURI(), retryAfter, null);
+        }
+        if (status >= 500) {
+            Metrics.increment("jira.serverErrors");
+            throw new RetryableException("HTTP " + status + " from " + request.getURI(), retryAfter, null);
+        }
+        throw new IOException("HTTP " + status + " from " + request.getURI() + ": "
+                + body.substring(0, Math.min(200, body.length())));
+    }
+
+    /** Seconds or an HTTP date, as allowed by RFC 9110; {@code null} if absent or unreadable. */
+    static Duration retryAfter(Header header) {
+        if (header == null) {
+            return null;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException unreadable) {
+                return null;
+            }
+        }
+    }
+
+    /** Between half and all of initialBackoff * 2^(attempt-1), capped at maxBackoff, uniformly. */
+    private Duration backoff(int attempt) {
+        long ceiling = Math.min(settings.maxBackoff().toMillis(),
+                settings.initialBackoff().toMillis() << Math.min(20, attempt - 1));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+    }
+
+    private long hedgeDelayNanos() {
+        long floor = settings.hedgeDelay().toNanos();
+        if (floor <= 0) {
+            return 0;
+        }
+        long[] recent;
+        synchronized (latencies) {
+            if (latencyCount < MIN_LATENCY_SAMPLES) {
+                return floor;
+            }
+            recent = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+        }
+        Arrays.sort(recent);
+        return Math.max(floor, recent[(int) Math.ceil(0.95 * recent.length) - 1]);
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = nanos;
+        }
+    }
+
+    private static void sleep(Duration wait) throws InterruptedIOException {
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    private static int millis(Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, duration.toMillis());
+    }
+
+    @Override
+    public void close() throws IOException {
+        attempts.shutdownNow();
+        client.close();
+    }
+}
@@ -0,0 +1,64 @@
+package com.dipalma.whatif.connectors;
+
+import java.time.Duration;
+
+/**
+ * How {@link JiraRequestScheduler} talks to JIRA: timeouts, request rate, retries and hedging.
+ * <p>
+ * Apache's JIRA throttles anonymous clients and answers 429 with a {@code Retry-After} once they
+ * go too fast. {@link #defaults()} starts at a rate it tolerates; the scheduler halves it on every
+ * 429 and climbs back while requests succeed, so a run settles just below the limit instead of
+ * oscillating around it.
+ *
+ * @param connectTimeout    time to open a connection
+ * @param readTimeout       time without data on an open connection before the attempt fails
+ * @param requestsPerSecond highest request rate (hedges included)
+ * @param burst             requests that can be sent back to back after an idle period
+ * @param maxAttempts       attempts per request, the first included
+ * @param initialBackoff    wait before the first retry; doubled at each retry, with jitter
+ * @param maxBackoff        longest wait between two attempts, unless the server asks for more
+ * @param hedgeDelay        shortest wait for a response before the same request is sent again;
+ *                          {@link Duration#ZERO} disables hedging
+ * @param maxConcurrency    requests in flight at once
+ */
+public record JiraRequestSettings(Duration connectTimeout, Duration readTimeout, double requestsPerSecond,
+                                  int burst, int maxAttempts, Duration initialBackoff, Duration maxBackoff,
+                                  Duration hedgeDelay, int maxConcurrency) {
+
+    public JiraRequestSettings {
+        if (requestsPerSecond <= 0 || burst < 1 || maxAttempts < 1 || maxConcurrency < 1) {
+            throw new IllegalArgumentException("Rate, burst, attempts and concurrency must be positive");
+        }
+    }
+
+    /** For issues.apache.org: 5 requests per second, 4 in flight, 5 attempts, hedging after 2 s. */
+    public static JiraRequestSettings defaults() {
+        return new JiraRequestSettings(Duration.ofSeconds(10), Duration.ofSeconds(30), 5.0, 5, 5,
+                Duration.ofMillis(500), Duration.ofSeconds(30), Duration.ofSeconds(2), 4);
+    }
+
+    public JiraRequestSettings withMaxConcurrency(int maxConcurrency) {
+        return new JiraRequestSettings(connectTimeout, readTimeout, requestsPerSecond, burst, maxAttempts,
+                initialBackoff, maxBackoff, hedgeDelay, maxConcurrency);
+    }
+
+    public JiraRequestSettings withRate(double requestsPerSecond, int burst) {
+        return new JiraRequestSettings(connectTimeout, readTimeout, requestsPerSecond, burst, maxAttempts,
+                initialBackoff, maxBackoff, hedgeDelay, maxConcurrency);
+    }
+
+    public JiraRequestSettings withTimeouts(Duration connectTimeout, Duration readTimeout) {
+        return new JiraRequestSettings(connectTimeout, readTimeout, requestsPerSecond, burst, maxAttempts,
+                initialBackoff, maxBackoff, hedgeDelay, maxConcurrency);
+    }
+
+    public JiraRequestSettings withRetries(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        return new JiraRequestSettings(connectTimeout, readTimeout, requestsPerSecond, burst, maxAttempts,
+                initialBackoff, maxBackoff, hedgeDelay, maxConcurrency);
+    }
+
+    public JiraRequestSettings withHedgeDelay(Duration hedgeDelay) {
+        return new JiraRequestSettings(connectTimeout, readTimeout, requestsPerSecond, burst, maxAttempts,
+                initialBackoff, maxBackoff, hedgeDelay, maxConcurrency);
+    }
+}
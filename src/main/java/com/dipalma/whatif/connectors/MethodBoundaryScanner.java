@@ -0,0 +1,484 @@
+package com.dipalma.whatif.connectors;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds method and constructor declarations, with their line ranges and signatures, in Java
+ * source without building an AST. A single pass over the characters skips comments and literals,
+ * tracks which braces open a type body and which open code, and recognises a declaration by its
+ * shape ({@code ... name(params) [throws ...] {} or ;}) at type-body level. Methods of nested,
+ * local and anonymous classes are found as well.
+ * <p>
+ * Line ranges and signatures follow JavaParser's conventions (the range starts at the first
+ * annotation or modifier; the signature is {@code name(Type, Type)} with generics stripped and
+ * varargs as arrays), so results can be matched with those of the full parser. Use it where only
+ * method boundaries are needed; metrics still need the parser's tree.
+ */
+public final class MethodBoundaryScanner {
+
+    /** A callable declaration: begin and end lines are 1-based and inclusive. */
+    public record MethodSpan(String name, String signature, int beginLine, int endLine, boolean constructor) {
+    }
+
+    private static final Set<String> MODIFIERS = Set.of("public", "protected", "private", "static", "final",
+            "abstract", "synchronized", "native", "default", "strictfp", "transient", "volatile", "sealed", "non-sealed");
+    private static final Set<String> TYPE_KEYWORDS = Set.of("class", "interface", "enum", "record");
+    private static final Set<String> NOT_A_METHOD_NAME = Set.of("if", "for", "while", "switch", "catch", "synchronized",
+            "return", "new", "throw", "try", "do", "else", "assert", "super", "this");
+
+    private static final String LITERAL = "\"\"";
+    private static final String[] PUNCTUATION = new String[128];
+
+    static {
+        for (char c = 0; c < PUNCTUATION.length; c++) {
+            PUNCTUATION[c] = String.valueOf(c);
+        }
+    }
+
+    private enum FrameKind { TYPE, CODE }
+
+    /** A brace-delimited region; type bodies may hold declarations, method bodies complete a span when closed. */
+    private static final class Frame {
+        final FrameKind kind;
+        final String typeName;
+        boolean enumConstants;
+        boolean annotationType;
+        final List<String> header = new ArrayList<>();
+        int headerLine;
+        int parenDepth;
+        int annotationBraces;
+        MethodSpan pending;
+
+        Frame(FrameKind kind, String typeName) {
+            this.kind = kind;
+            this.typeName = typeName;
+        }
+
+        void resetHeader() {
+            header.clear();
+            parenDepth = 0;
+            annotationBraces = 0;
+        }
+    }
+
+    private final CharSequence src;
+    private final int length;
+    private int pos = 0;
+    private int line = 1;
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private final List<MethodSpan> spans = new ArrayList<>();
+
+    private MethodBoundaryScanner(CharSequence src) {
+        this.src = src;
+        this.length = src.length();
+    }
+
+    /** Scans {@code source} and returns its callable declarations ordered by start line. */
+    public static List<MethodSpan> scan(CharSequence source) {
+        MethodBoundaryScanner scanner = new MethodBoundaryScanner(source);
+        scanner.run();
+        scanner.spans.sort(Comparator.comparingInt(MethodSpan::beginLine));
+        return scanner.spans;
+    }
+
+    private void run() {
+        frames.push(new Frame(FrameKind.TYPE, null)); // compilation unit
+        String token;
+        while ((token = nextToken()) != null) {
+            Frame frame = frames.peek();
+            if (token.equals("{") && frame.kind == FrameKind.TYPE && insideAnnotationArguments(frame.header)) {
+                frame.annotationBraces++; // array-valued element, e.g. @SuppressWarnings({"a", "b"})
+                append(frame, token);
+                continue;
+            }
+            if (token.equals("}") && frame.annotationBraces > 0) {
+                frame.annotationBraces--;
+                append(frame, token);
+                continue;
+            }
+            switch (token) {
+                case "{" -> openBrace(frame);
+                case "}" -> closeBrace();
+                case ";" -> semicolon(frame);
+                default -> append(frame, token);
+            }
+        }
+    }
+
+    private void append(Frame frame, String token) {
+        if (frame.header.isEmpty()) {
+            frame.headerLine = line;
+        }
+        if (token.equals("(")) frame.parenDepth++;
+        if (token.equals(")")) frame.parenDepth--;
+        if (frame.kind == FrameKind.TYPE && frame.enumConstants && token.equals(",") && frame.parenDepth == 0) {
+            frame.resetHeader(); // next enum constant
+            return;
+        }
+        frame.header.add(token);
+    }
+
+    private void openBrace(Frame frame) {
+        List<String> header = frame.header;
+        Frame child;
+        String typeName = declaredTypeName(header);
+        if (typeName != null) {
+            child = new Frame(FrameKind.TYPE, typeName);
+            child.enumConstants = header.contains("enum");
+            child.annotationType = isAnnotationTypeHeader(header);
+        } else if (isAnonymousClassBody(header)
+                || (frame.kind == FrameKind.TYPE && frame.enumConstants && !header.isEmpty())) {
+            child = new Frame(FrameKind.TYPE, null);
+        } else {
+            child = new Frame(FrameKind.CODE, null);
+            if (frame.kind == FrameKind.TYPE && !frame.enumConstants && !frame.annotationType) {
+                child.pending = declaration(frame, -1);
+            }
+        }
+        frame.resetHeader();
+        frames.push(child);
+    }
+
+    private void closeBrace() {
+        Frame closed = frames.pop();
+        if (closed.pending != null) {
+            MethodSpan p = closed.pending;
+            spans.add(new MethodSpan(p.name(), p.signature(), p.beginLine(), line, p.constructor()));
+        }
+        if (frames.isEmpty()) {
+            frames.push(new Frame(FrameKind.TYPE, null)); // unbalanced input: keep scanning at top level
+        }
+        frames.peek().resetHeader();
+    }
+
+    private void semicolon(Frame frame) {
+        if (frame.kind == FrameKind.TYPE) {
+            if (frame.enumConstants) {
+                frame.enumConstants = false;
+            } else if (!frame.annotationType) {
+                MethodSpan abstractMethod = declaration(frame, line);
+                if (abstractMethod != null) {
+                    spans.add(abstractMethod);
+                }
+            }
+        }
+        frame.resetHeader();
+    }
+
+    // --- Declaration shapes ---
+
+    /** Name of the type declared by {@code header} ({@code class Foo}, {@code record Bar(...)}...), or null. */
+    private static String declaredTypeName(List<String> header) {
+        for (int i = 0; i + 1 < header.size(); i++) {
+            String token = header.get(i);
+            if (TYPE_KEYWORDS.contains(token) && (i == 0 || !header.get(i - 1).equals("."))
+                    && isIdentifier(header.get(i + 1))) {
+                if (token.equals("record") && i + 2 < header.size()
+                        && !header.get(i + 2).equals("(") && !header.get(i + 2).equals("<")) {
+                    continue;
+                }
+                if (token.equals("record") && i + 2 >= header.size()) {
+                    continue;
+                }
+                return header.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    /** True if the innermost open parenthesis of {@code header} holds the arguments of an annotation. */
+    private static boolean insideAnnotationArguments(List<String> header) {
+        int depth = 0;
+        for (int i = header.size() - 1; i >= 0; i--) {
+            String t = header.get(i);
+            if (t.equals(")")) {
+                depth++;
+            } else if (t.equals("(") && depth-- == 0) {
+                int j = i - 1;
+                while (j >= 1 && isIdentifier(header.get(j)) && header.get(j - 1).equals(".")) {
+                    j -= 2;
+                }
+                return j >= 1 && isIdentifier(header.get(j)) && header.get(j - 1).equals("@");
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAnnotationTypeHeader(List<String> header) {
+        for (int i = 0; i + 1 < header.size(); i++) {
+            if (header.get(i).equals("@") && header.get(i + 1).equals("interface")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** True for {@code ... new Type<...>(args)} right before a brace. */
+    private static boolean isAnonymousClassBody(List<String> header) {
+        int i = header.size() - 1;
+        if (i < 0 || !header.get(i).equals(")")) {
+            return false;
+        }
+        int depth = 0;
+        for (; i >= 0; i--) {
+            String t = header.get(i);
+            if (t.equals(")")) depth++;
+            if (t.equals("(") && --depth == 0) break;
+        }
+        i--;
+        int angle = 0;
+        boolean sawType = false;
+        for (; i >= 0; i--) {
+            String t = header.get(i);
+            if (t.equals(">")) angle++;
+            else if (t.equals("<")) angle--;
+            else if (angle == 0 && t.equals("new")) return sawType;
+            else if (angle == 0 && !t.equals(".") && !isIdentifier(t) && !t.equals("@")) return false;
+            else sawType = true;
+        }
+        return false;
+    }
+
+    /**
+     * The callable declared by the frame's header, or null if the header is something else
+     * (field, initializer, annotation member...). {@code endLine} is -1 when a body follows.
+     */
+    private static MethodSpan declaration(Frame frame, int endLine) {
+        List<String> tokens = stripAnnotations(frame.header, 0, frame.header.size());
+        int open = tokens.indexOf("(");
+        if (open < 1 || tokens.contains("=")) {
+            return null;
+        }
+        String name = tokens.get(open - 1);
+        if (!isIdentifier(name) || NOT_A_METHOD_NAME.contains(name) || MODIFIERS.contains(name)) {
+            return null;
+        }
+        int close = matchingParen(tokens, open);
+        if (close < 0) {
+            return null;
+        }
+        for (int i = close + 1; i < tokens.size(); i++) {
+            String t = tokens.get(i);
+            if (t.equals("default")) {
+                return null; // annotation member
+            }
+            if (!t.equals("throws") && !t.equals(",") && !t.equals(".") && !t.equals("[") && !t.equals("]")
+                    && !t.equals("<") && !t.equals(">") && !t.equals("?") && !isIdentifier(t)) {
+                return null;
+            }
+        }
+
+        boolean hasReturnType = false;
+        int angle = 0;
+        for (int i = 0; i < open - 1; i++) {
+            String t = tokens.get(i);
+            if (t.equals("<")) angle++;
+            else if (t.equals(">")) angle--;
+            else if (angle == 0 && !MODIFIERS.contains(t)) hasReturnType = true;
+        }
+        boolean constructor = !hasReturnType && name.equals(frame.typeName);
+        if (!hasReturnType && !constructor) {
+            return null;
+        }
+
+        String signature = name + "(" + String.join(", ", parameterTypes(tokens, open + 1, close)) + ")";
+        return new MethodSpan(name, signature, frame.headerLine, endLine, constructor);
+    }
+
+    /**
+     * Parameter types as JavaParser prints them in a signature: no annotations or modifiers, and
+     * generics stripped from plain types but kept on array element types ({@code Class<?>[]}).
+     */
+    private static List<String> parameterTypes(List<String> tokens, int from, int to) {
+        List<String> types = new ArrayList<>();
+        int start = from;
+        int depth = 0;
+        for (int i = from; i <= to; i++) {
+            String t = i < to ? tokens.get(i) : ",";
+            if (t.equals("<") || t.equals("(")) depth++;
+            else if (t.equals(">") || t.equals(")")) depth--;
+            else if (t.equals(",") && depth == 0) {
+                String type = parameterType(stripAnnotations(tokens, start, i));
+                if (type != null) {
+                    types.add(type);
+                }
+                start = i + 1;
+            }
+        }
+        return types;
+    }
+
+    private static String parameterType(List<String> param) {
+        List<String> typeTokens = new ArrayList<>();
+        for (String t : param) {
+            if (!t.equals("final")) typeTokens.add(t);
+        }
+        int trailingDims = 0;
+        while (typeTokens.size() >= 2 && typeTokens.getLast().equals("]")) {
+            typeTokens.removeLast();
+            typeTokens.removeLast();
+            trailingDims++;
+        }
+        if (typeTokens.size() < 2) {
+            return null;
+        }
+        String paramName = typeTokens.removeLast();
+        if (paramName.equals("this")) {
+            return null; // receiver parameter, not part of the signature
+        }
+        boolean array = trailingDims > 0 || typeTokens.getLast().equals("]") || typeTokens.getLast().equals("...");
+        // Only the last segment's type arguments are stripped: Outer<T>.Inner keeps Outer<T>.
+        int lastSegment = 0;
+        int angle = 0;
+        for (int i = 0; i < typeTokens.size(); i++) {
+            String t = typeTokens.get(i);
+            if (t.equals("<")) angle++;
+            else if (t.equals(">")) angle--;
+            else if (angle == 0 && t.equals(".")) lastSegment = i;
+        }
+        StringBuilder type = new StringBuilder();
+        for (int i = 0; i < typeTokens.size(); i++) {
+            String t = typeTokens.get(i);
+            if (t.equals("<")) angle++;
+            if (angle == 0 || array || i < lastSegment) {
+                if (t.equals("extends") || t.equals("super") || t.equals("&")) {
+                    type.append(' ').append(t).append(' ');
+                } else {
+                    type.append(t.equals("...") ? "[]" : t);
+                }
+            }
+            if (t.equals(">")) angle--;
+        }
+        type.append("[]".repeat(trailingDims));
+        return type.toString();
+    }
+
+    /** Copy of {@code tokens[from, to)} without annotations ({@code @Name} or {@code @Name(...)}); keeps {@code @interface}. */
+    private static List<String> stripAnnotations(List<String> tokens, int from, int to) {
+        List<String> out = new ArrayList<>(to - from);
+        int i = from;
+        while (i < to) {
+            String t = tokens.get(i);
+            if (t.equals("@") && i + 1 < to && !tokens.get(i + 1).equals("interface")) {
+                i += 2;
+                while (i + 1 < to && tokens.get(i).equals(".")) {
+                    i += 2;
+                }
+                if (i < to && tokens.get(i).equals("(")) {
+                    int close = matchingParen(tokens, i);
+                    i = close < 0 ? to : close + 1;
+                }
+            } else {
+                out.add(t);
+                i++;
+            }
+        }
+        return out;
+    }
+
+    private static int matchingParen(List<String> tokens, int open) {
+        int depth = 0;
+        for (int i = open; i < tokens.size(); i++) {
+            String t = tokens.get(i);
+            if (t.equals("(")) depth++;
+            if (t.equals(")") && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isIdentifier(String token) {
+        return !token.isEmpty() && Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    // --- Lexer ---
+
+    /** Next significant token: identifiers/keywords, "..." and single-char punctuation; literals collapse to one token. */
+    private String nextToken() {
+        while (pos < length) {
+            char c = src.charAt(pos);
+            if (c == '\n') {
+                line++;
+                pos++;
+            } else if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '/' && pos + 1 < length && src.charAt(pos + 1) == '/') {
+                while (pos < length && src.charAt(pos) != '\n') pos++;
+            } else if (c == '/' && pos + 1 < length && src.charAt(pos + 1) == '*') {
+                pos += 2;
+                while (pos < length && !(src.charAt(pos) == '*' && pos + 1 < length && src.charAt(pos + 1) == '/')) {
+                    if (src.charAt(pos) == '\n') line++;
+                    pos++;
+                }
+                pos += 2;
+            } else if (c == '"') {
+                skipString();
+                return LITERAL;
+            } else if (c == '\'') {
+                skipQuoted('\'');
+                return LITERAL;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = pos;
+                while (pos < length && Character.isJavaIdentifierPart(src.charAt(pos))) pos++;
+                String word = src.subSequence(start, pos).toString();
+                if (word.equals("non") && pos + 7 <= length && src.subSequence(pos, pos + 7).toString().equals("-sealed")) {
+                    pos += 7;
+                    return "non-sealed";
+                }
+                return word;
+            } else if (Character.isDigit(c)) {
+                skipNumber();
+                return LITERAL;
+            } else if (c == '.' && pos + 2 < length && src.charAt(pos + 1) == '.' && src.charAt(pos + 2) == '.') {
+                pos += 3;
+                return "...";
+            } else {
+                pos++;
+                return c < PUNCTUATION.length ? PUNCTUATION[c] : String.valueOf(c);
+            }
+        }
+        return null;
+    }
+
+    private void skipString() {
+        if (pos + 2 < length && src.charAt(pos + 1) == '"' && src.charAt(pos + 2) == '"') {
+            pos += 3; // text block
+            while (pos < length && !(src.charAt(pos) == '"' && pos + 2 < length
+                    && src.charAt(pos + 1) == '"' && src.charAt(pos + 2) == '"')) {
+                // An escaped character may be the newline of a line continuation: still a new line.
+                if (src.charAt(pos) == '\\' && pos + 1 < length) pos++;
+                if (src.charAt(pos) == '\n') line++;
+                pos++;
+            }
+            pos += 3;
+        } else {
+            skipQuoted('"');
+        }
+    }
+
+    private void skipQuoted(char quote) {
+        pos++;
+        while (pos < length && src.charAt(pos) != quote && src.charAt(pos) != '\n') {
+            if (src.charAt(pos) == '\\') pos++;
+            pos++;
+        }
+        pos++;
+    }
+
+    private void skipNumber() {
+        while (pos < length) {
+            char c = src.charAt(pos);
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '.') {
+                pos++;
+            } else if ((c == '+' || c == '-') && "eEpP".indexOf(src.charAt(pos - 1)) >= 0) {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+}
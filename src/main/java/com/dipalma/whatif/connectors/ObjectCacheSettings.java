@@ -0,0 +1,69 @@
+package com.dipalma.whatif.connectors;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+
+/**
+ * Sizes of the process-wide JGit caches behind every object read: the window cache holding
+ * inflated slices of pack files and the delta base cache holding recently resolved delta bases.
+ * <p>
+ * JGit's defaults (10 MB of 8 KB windows, 10 MB of delta bases) are meant for short-lived
+ * commands. Mining reads the same file at hundreds of commits, i.e. long delta chains over the
+ * same bases, and with the defaults most of those bases are evicted and re-inflated before they
+ * are needed again. {@link #forMining()} enlarges both caches instead; the effect is
+ * visible in the {@code git.windowCache.*} counters recorded by {@link GitConnector}.
+ * <p>
+ * With memory-mapped packs the windows are mappings of the pack files rather than heap copies, so
+ * the page cache is shared between readers and threads and the limit costs no heap.
+ *
+ * @param packedGitLimit      bytes of pack data kept in the window cache
+ * @param packedGitWindowSize bytes per window (a power of two)
+ * @param packedGitOpenFiles  pack files kept open at the same time
+ * @param deltaBaseCacheLimit bytes of resolved delta bases kept per reader
+ * @param streamFileThreshold objects larger than this are streamed instead of loaded whole
+ * @param packedGitMMAP       whether windows are memory-mapped instead of read into the heap
+ */
+public record ObjectCacheSettings(long packedGitLimit, int packedGitWindowSize, int packedGitOpenFiles,
+                                  int deltaBaseCacheLimit, int streamFileThreshold, boolean packedGitMMAP) {
+
+    private static final int MB = WindowCacheConfig.MB;
+
+    /** JGit's own defaults. */
+    public static ObjectCacheSettings defaults() {
+        WindowCacheConfig config = new WindowCacheConfig();
+        return new ObjectCacheSettings(config.getPackedGitLimit(), config.getPackedGitWindowSize(),
+                config.getPackedGitOpenFiles(), config.getDeltaBaseCacheLimit(), config.getStreamFileThreshold(),
+                config.isPackedGitMMAP());
+    }
+
+    /**
+     * Memory-mapped windows of 64 KB up to 1 GB of packs, and delta base caches that together take
+     * at most a quarter of the heap when every core runs its own reader (each up to 256 MB).
+     */
+    public static ObjectCacheSettings forMining() {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        int readers = Runtime.getRuntime().availableProcessors();
+        int deltaBaseCacheLimit = (int) Math.clamp(maxHeap / (4L * readers), 8L * MB, 256L * MB);
+        return new ObjectCacheSettings(1024L * MB, 64 * WindowCacheConfig.KB, 128, deltaBaseCacheLimit, 50 * MB, true);
+    }
+
+    /** Settings by name, as given on the command line: {@code default} or {@code mining}. */
+    public static ObjectCacheSettings named(String name) {
+        return switch (name) {
+            case "default" -> defaults();
+            case "mining" -> forMining();
+            default -> throw new IllegalArgumentException("Unknown object cache settings: " + name);
+        };
+    }
+
+    /** Replaces the caches of the whole process; repositories already open keep working. */
+    public void install() {
+        WindowCacheConfig config = new WindowCacheConfig();
+        config.setPackedGitLimit(packedGitLimit);
+        config.setPackedGitWindowSize(packedGitWindowSize);
+        config.setPackedGitOpenFiles(packedGitOpenFiles);
+        config.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+        config.setStreamFileThreshold(streamFileThreshold);
+        config.setPackedGitMMAP(packedGitMMAP);
+        config.install();
+    }
+}
@@ -0,0 +1,227 @@
+package com.dipalma.whatif.dataset;
+
+import com.dipalma.whatif.metrics.Metrics;
+import com.dipalma.whatif.model.TrackedMethod;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The mined dataset of a project, one row per method and release, kept compact in memory.
+ * <p>
+ * Every row of the CSV repeats the project, the full method path and ten features, yet most
+ * methods do not change between consecutive releases. Here:
+ * <ul>
+ *   <li>method paths are interned once into an integer dictionary, and the project is a field;</li>
+ *   <li>each row stores only the features that differ from the previous row of the same method,
+ *       with a bit mask saying which ones, so an unchanged method costs two ints and a bit.</li>
+ * </ul>
+ * Rows are decoded in one sequential pass, replaying the deltas, to export the dataset as the same
+ * CSV {@link com.dipalma.whatif.DatasetGenerator} always wrote, or as Weka {@link Instances}.
+ */
+public final class MethodDataset {
+
+    /** Feature columns, in CSV order. */
+    public static final List<String> FEATURES = List.of("LOC", "CyclomaticComplexity", "ParameterCount",
+            "Duplication", "NR", "NAuth", "stmtAdded", "stmtDeleted", "maxChurn", "avgChurn");
+
+    private static final String PROJECT = "Project";
+    private static final String METHOD_NAME = "MethodName";
+    private static final String RELEASE = "Release";
+    private static final String IS_BUGGY = "IsBuggy";
+    private static final int F = FEATURES.size();
+    // The low half of a row header flags the stored features, the high half the integral ones.
+    private static final int INTEGRAL_SHIFT = 16;
+
+    /**
+     * One release: per row, the method id and its header; the changed values of all rows, in row
+     * and feature order; and the labels.
+     */
+    private record Release(String name, int[] methods, int[] headers, double[] values, BitSet buggy) {
+    }
+
+    /** Receives the decoded rows. {@code values} is reused from one row to the next. */
+    @FunctionalInterface
+    private interface RowVisitor {
+        void visit(int release, int method, double[] values, int integralMask, boolean buggy) throws IOException;
+    }
+
+    private final String projectKey;
+    private final List<String> methodNames = new ArrayList<>();
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final List<Release> releases = new ArrayList<>();
+    private int rows = 0;
+    private long storedValues = 0;
+
+    // Encoder state: the latest features of each method, the base of its next delta.
+    private double[] lastValues = new double[0];
+    private int[] lastIntegral = new int[0];
+    private final BitSet seen = new BitSet();
+
+    public MethodDataset(String projectKey) {
+        this.projectKey = projectKey;
+    }
+
+    /** Appends a release; releases must be added in order, as the deltas chain from one to the next. */
+    public void addRelease(String name, List<TrackedMethod> methods, Predicate<TrackedMethod> isBuggy) {
+        int[] rowMethods = new int[methods.size()];
+        int[] headers = new int[methods.size()];
+        BitSet buggy = new BitSet(methods.size());
+        double[] values = new double[Math.max(F, methods.size())];
+        int count = 0;
+
+        for (int r = 0; r < methods.size(); r++) {
+            TrackedMethod method = methods.get(r);
+            int id = intern(method.filepath() + "/" + method.signature());
+            Map<String, Number> features = method.getFeatures();
+            int changed = 0;
+            int integral = 0;
+            for (int f = 0; f < F; f++) {
+                Number value = features.getOrDefault(FEATURES.get(f), 0);
+                // Integers and doubles print differently ("0" vs "0.0"): keep which one it was.
+                int bit = value instanceof Double || value instanceof Float ? 0 : 1 << f;
+                integral |= bit;
+                double v = value.doubleValue();
+                int slot = id * F + f;
+                if (!seen.get(id) || Double.doubleToRawLongBits(v) != Double.doubleToRawLongBits(lastValues[slot])
+                        || bit != (lastIntegral[id] & (1 << f))) {
+                    changed |= 1 << f;
+                    lastValues[slot] = v;
+                    if (count == values.length) {
+                        values = Arrays.copyOf(values, values.length * 2);
+                    }
+                    values[count++] = v;
+                }
+            }
+            seen.set(id);
+            lastIntegral[id] = integral;
+            rowMethods[r] = id;
+            headers[r] = changed | integral << INTEGRAL_SHIFT;
+            buggy.set(r, isBuggy.test(method));
+        }
+
+        releases.add(new Release(name, rowMethods, headers, Arrays.copyOf(values, count), buggy));
+        rows += methods.size();
+        storedValues += count;
+        Metrics.add("dataset.rows", methods.size());
+        Metrics.add("dataset.storedValues", count);
+    }
+
+    private int intern(String methodName) {
+        Integer id = methodIds.get(methodName);
+        if (id != null) {
+            return id;
+        }
+        int newId = methodNames.size();
+        methodIds.put(methodName, newId);
+        methodNames.add(methodName);
+        if (newId == lastIntegral.length) {
+            int capacity = Math.max(1024, newId * 2);
+            lastIntegral = Arrays.copyOf(lastIntegral, capacity);
+            lastValues = Arrays.copyOf(lastValues, capacity * F);
+        }
+        return newId;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int methods() {
+        return methodNames.size();
+    }
+
+    /** Feature values actually stored, out of {@code rows() * FEATURES.size()}. */
+    public long storedValues() {
+        return storedValues;
+    }
+
+    /** Writes the dataset as CSV: identifiers, features and the "yes"/"no" label, one row per method and release. */
+    public void writeCsv(String fileName) throws IOException {
+        try (FileWriter out = new FileWriter(fileName);
+             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT)) {
+            List<String> header = new ArrayList<>(List.of(PROJECT, METHOD_NAME, RELEASE));
+            header.addAll(FEATURES);
+            header.add(IS_BUGGY);
+            printer.printRecord(header);
+
+            String[] record = new String[F + 4];
+            record[0] = projectKey;
+            forEachRow((release, method, values, integralMask, buggy) -> {
+                record[1] = methodNames.get(method);
+                record[2] = releases.get(release).name();
+                for (int f = 0; f < F; f++) {
+                    record[3 + f] = (integralMask & (1 << f)) != 0
+                            ? Long.toString((long) values[f])
+                            : Double.toString(values[f]);
+                }
+                record[F + 3] = buggy ? "yes" : "no";
+                printer.printRecord((Object[]) record);
+            });
+        }
+    }
+
+    /**
+     * The dataset as Weka instances, with the class (IsBuggy: no, yes) last. Method names are a
+     * string attribute whose values are the dictionary, so every row refers to its name by index.
+     */
+    public Instances toInstances() {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute(PROJECT, List.of(projectKey)));
+        Attribute methodName = new Attribute(METHOD_NAME, (List<String>) null);
+        methodNames.forEach(methodName::addStringValue);
+        attributes.add(methodName);
+        attributes.add(new Attribute(RELEASE, releases.stream().map(Release::name).toList()));
+        FEATURES.forEach(feature -> attributes.add(new Attribute(feature)));
+        attributes.add(new Attribute(IS_BUGGY, List.of("no", "yes")));
+
+        Instances data = new Instances(projectKey, attributes, rows);
+        data.setClassIndex(attributes.size() - 1);
+        try {
+            forEachRow((release, method, values, integralMask, buggy) -> {
+                double[] row = new double[F + 4];
+                row[1] = method;
+                row[2] = release;
+                System.arraycopy(values, 0, row, 3, F);
+                row[F + 3] = buggy ? 1 : 0;
+                data.add(new DenseInstance(1.0, row));
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreachable: building instances does no I/O", e);
+        }
+        return data;
+    }
+
+    /** Replays the deltas of every release, in order. */
+    private void forEachRow(RowVisitor visitor) throws IOException {
+        double[] current = new double[methodNames.size() * F];
+        double[] row = new double[F];
+        for (int r = 0; r < releases.size(); r++) {
+            Release release = releases.get(r);
+            int next = 0;
+            for (int i = 0; i < release.methods().length; i++) {
+                int base = release.methods()[i] * F;
+                int header = release.headers()[i];
+                for (int f = 0; f < F; f++) {
+                    if ((header & (1 << f)) != 0) {
+                        current[base + f] = release.values()[next++];
+                    }
+                }
+                System.arraycopy(current, base, row, 0, F);
+                visitor.visit(r, release.methods()[i], row, header >>> INTEGRAL_SHIFT, release.buggy().get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.dipalma.whatif.labeling;
+
+import com.dipalma.whatif.model.JiraTicket;
+import com.dipalma.whatif.model.ProjectRelease;
+import com.dipalma.whatif.model.TrackedMethod;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The bugs of a project by method: for every method a fix touched, the releases [IV, FV) of its
+ * tickets, so labeling a method is one lookup instead of a scan over every ticket. Built once from
+ * labeled tickets (see {@link TicketLabeler}) and read-only afterwards, so any number of releases
+ * can be labeled concurrently.
+ */
+public final class BugIndex {
+
+    private static final int[] NONE = new int[0];
+
+    // Per method key: (iv, fv) pairs, flattened.
+    private final Map<String, int[]> intervalsByMethod;
+
+    private BugIndex(Map<String, int[]> intervalsByMethod) {
+        this.intervalsByMethod = intervalsByMethod;
+    }
+
+    /**
+     * @param tickets         tickets with their version indices already assigned
+     * @param bugToMethodsMap the {@code file::signature} keys fixed by each ticket, by ticket key
+     */
+    public static BugIndex of(List<JiraTicket> tickets, Map<String, List<String>> bugToMethodsMap) {
+        Map<String, int[]> intervalsByMethod = new HashMap<>();
+        for (JiraTicket ticket : tickets) {
+            List<String> fixedMethods = bugToMethodsMap.get(ticket.getKey());
+            int iv = ticket.getIntroductionVersionIndex();
+            int fv = ticket.getFixedVersionIndex();
+            if (fixedMethods == null || iv <= 0 || fv <= 0 || iv >= fv) {
+                continue;
+            }
+            for (String methodKey : new LinkedHashSet<>(fixedMethods)) {
+                int[] previous = intervalsByMethod.getOrDefault(methodKey, NONE);
+                int[] intervals = Arrays.copyOf(previous, previous.length + 2);
+                intervals[previous.length] = iv;
+                intervals[previous.length + 1] = fv;
+                intervalsByMethod.put(methodKey, intervals);
+            }
+        }
+        return new BugIndex(intervalsByMethod);
+    }
+
+    /** Whether {@code release} is in [IV, FV) of a ticket whose fix touched {@code method}. */
+    public boolean isBuggy(TrackedMethod method, ProjectRelease release) {
+        return isBuggy(method.filepath() + "::" + method.signature(), release.index());
+    }
+
+    public boolean isBuggy(String methodKey, int releaseIndex) {
+        int[] intervals = intervalsByMethod.getOrDefault(methodKey, NONE);
+        for (int i = 0; i < intervals.length; i += 2) {
+            if (releaseIndex >= intervals[i] && releaseIndex < intervals[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
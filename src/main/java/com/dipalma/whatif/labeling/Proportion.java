@@ -0,0 +1,161 @@
+package com.dipalma.whatif.labeling;
+
+import com.dipalma.whatif.model.JiraTicket;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The proportion method for tickets without affected versions: from the tickets whose injected
+ * version IV is known, P = (FV - IV) / (FV - OV), and a missing IV is estimated as
+ * FV - (FV - OV) * P.
+ * <p>
+ * The study uses one P for the whole project, the median. The literature also computes P while
+ * the project evolves ("increment": the tickets fixed so far; "moving window": the last N fixed
+ * tickets), averaging the earlier values. Both are kept as a running sum, so every ticket gets its
+ * P in one pass over the tickets in fix order.
+ */
+public final class Proportion {
+
+    public enum Mode {
+        /** The median P over every ticket with a known IV. */
+        MEDIAN,
+        /** For each ticket, the mean P of the tickets fixed before it. */
+        INCREMENT,
+        /** For each ticket, the mean P of the last {@code window} tickets with a known IV fixed before it. */
+        MOVING_WINDOW
+    }
+
+    /** P used when no ticket has a known IV yet. */
+    public static final double DEFAULT = 1.5;
+
+    private Proportion() {
+    }
+
+    /** P of a ticket, or NaN if its IV is unknown or it was fixed in its opening version. */
+    static double of(JiraTicket ticket) {
+        int iv = ticket.getIntroductionVersionIndex();
+        int ov = ticket.getOpeningVersionIndex();
+        int fv = ticket.getFixedVersionIndex();
+        if (iv > 0 && fv > 0 && ov > 0 && fv > ov) {
+            return (double) (fv - iv) / (fv - ov);
+        }
+        return Double.NaN;
+    }
+
+    /** Median P over {@code tickets}, or {@link #DEFAULT} if none has a known IV. */
+    public static double median(List<JiraTicket> tickets) {
+        double[] values = new double[tickets.size()];
+        int count = 0;
+        for (JiraTicket ticket : tickets) {
+            double p = of(ticket);
+            if (!Double.isNaN(p)) {
+                values[count++] = p;
+            }
+        }
+        return count == 0 ? DEFAULT : median(values, count);
+    }
+
+    /**
+     * P for each ticket of {@code ticketsInFixOrder}, in the same order, computed only from the
+     * tickets before it; {@link #DEFAULT} until one with a known IV has been seen. With
+     * {@link Mode#MEDIAN} every ticket gets the median of the whole list.
+     */
+    public static double[] estimates(List<JiraTicket> ticketsInFixOrder, Mode mode, int window) {
+        double[] estimates = new double[ticketsInFixOrder.size()];
+        if (mode == Mode.MEDIAN) {
+            Arrays.fill(estimates, median(ticketsInFixOrder));
+            return estimates;
+        }
+        if (mode == Mode.MOVING_WINDOW && window < 1) {
+            throw new IllegalArgumentException("Window must hold at least one ticket: " + window);
+        }
+        double[] recent = new double[mode == Mode.MOVING_WINDOW ? window : 0];
+        double sum = 0;
+        long seen = 0;
+        for (int t = 0; t < estimates.length; t++) {
+            int count = (int) (mode == Mode.MOVING_WINDOW ? Math.min(seen, window) : seen);
+            estimates[t] = count == 0 ? DEFAULT : sum / count;
+
+            double p = of(ticketsInFixOrder.get(t));
+            if (Double.isNaN(p)) {
+                continue;
+            }
+            if (mode == Mode.MOVING_WINDOW) {
+                int slot = (int) (seen % window);
+                if (seen >= window) {
+                    sum -= recent[slot];
+                }
+                recent[slot] = p;
+            }
+            sum += p;
+            seen++;
+        }
+        return estimates;
+    }
+
+    /** IV estimated from {@code p}, or the ticket's own IV when it is known or cannot be estimated. */
+    static int estimateIntroduction(JiraTicket ticket, double p) {
+        int iv = ticket.getIntroductionVersionIndex();
+        int ov = ticket.getOpeningVersionIndex();
+        int fv = ticket.getFixedVersionIndex();
+        if (iv <= 0 && fv > 0 && ov > 0 && fv > ov) {
+            return Math.max(1, (int) Math.round(fv - (fv - ov) * p));
+        }
+        return iv;
+    }
+
+    /**
+     * Median of the first {@code count} values, which are reordered: a quickselect for the upper
+     * middle, then the lower middle is the largest value left of it. Average O(n), no boxing.
+     */
+    static double median(double[] values, int count) {
+        int mid = count / 2;
+        select(values, count, mid);
+        if (count % 2 == 1) {
+            return values[mid];
+        }
+        double lowerMiddle = values[0];
+        for (int i = 1; i < mid; i++) {
+            lowerMiddle = Math.max(lowerMiddle, values[i]);
+        }
+        return (lowerMiddle + values[mid]) / 2.0;
+    }
+
+    /** Moves the k-th smallest of the first {@code count} values to position k, smaller ones before it. */
+    private static void select(double[] values, int count, int k) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            // Median of three as pivot, so that sorted input (P is often constant) stays linear.
+            if (values[mid] < values[low]) swap(values, low, mid);
+            if (values[high] < values[low]) swap(values, low, high);
+            if (values[high] < values[mid]) swap(values, mid, high);
+            double pivot = values[mid];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    swap(values, i++, j--);
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(double[] values, int a, int b) {
+        double tmp = values[a];
+        values[a] = values[b];
+        values[b] = tmp;
+    }
+}
@@ -0,0 +1,117 @@
+package com.dipalma.whatif.labeling;
+
+import com.dipalma.whatif.model.ProjectRelease;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The releases of a project as parallel primitive arrays sorted by date, to map dates to release
+ * indices without scanning the release list: a date belongs to the first release published on or
+ * after it, or to the last release if it comes after all of them.
+ */
+public final class ReleaseIndex {
+
+    private final long[] epochDays;
+    private final int[] indices;
+    private final Map<String, Integer> indexByName;
+
+    private ReleaseIndex(long[] epochDays, int[] indices, Map<String, Integer> indexByName) {
+        this.epochDays = epochDays;
+        this.indices = indices;
+        this.indexByName = indexByName;
+    }
+
+    public static ReleaseIndex of(List<ProjectRelease> releases) {
+        List<ProjectRelease> sorted = new ArrayList<>(releases);
+        sorted.sort(Comparator.comparing(ProjectRelease::releaseDate));
+        long[] epochDays = new long[sorted.size()];
+        int[] indices = new int[sorted.size()];
+        Map<String, Integer> indexByName = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            epochDays[i] = sorted.get(i).releaseDate().toEpochDay();
+            indices[i] = sorted.get(i).index();
+            indexByName.put(sorted.get(i).name(), sorted.get(i).index());
+        }
+        return new ReleaseIndex(epochDays, indices, indexByName);
+    }
+
+    public int size() {
+        return epochDays.length;
+    }
+
+    /** Index of the release {@code date} belongs to, or -1 when there are no releases. */
+    public int indexFor(LocalDate date) {
+        return indexForEpochDay(date.toEpochDay());
+    }
+
+    int indexForEpochDay(long day) {
+        if (epochDays.length == 0) {
+            return -1;
+        }
+        int position = lowerBound(day);
+        return indices[Math.min(position, epochDays.length - 1)];
+    }
+
+    /**
+     * Release indices of many dates (as epoch days) at once. Dates in ascending order, as tickets
+     * come from JIRA, are matched in one merge sweep over the releases; any other order falls back
+     * to a binary search per date.
+     */
+    public int[] indicesFor(long[] days) {
+        int[] result = new int[days.length];
+        if (epochDays.length == 0) {
+            Arrays.fill(result, -1);
+            return result;
+        }
+        if (!isAscending(days)) {
+            for (int i = 0; i < days.length; i++) {
+                result[i] = indexForEpochDay(days[i]);
+            }
+            return result;
+        }
+        int last = epochDays.length - 1;
+        int position = 0;
+        for (int i = 0; i < days.length; i++) {
+            while (position < last && epochDays[position] < days[i]) {
+                position++;
+            }
+            result[i] = indices[position];
+        }
+        return result;
+    }
+
+    /** Index of the release called {@code name}, or {@code null} if JIRA does not list it. */
+    public Integer indexOf(String name) {
+        return indexByName.get(name);
+    }
+
+    /** First position whose release date is not before {@code day}. */
+    private int lowerBound(long day) {
+        int low = 0;
+        int high = epochDays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isAscending(long[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] < values[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
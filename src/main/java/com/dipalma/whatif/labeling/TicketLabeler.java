@@ -0,0 +1,100 @@
+package com.dipalma.whatif.labeling;
+
+import com.dipalma.whatif.model.JiraTicket;
+import com.dipalma.whatif.model.ProjectRelease;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Puts every ticket on the release timeline in one bulk pass: opening (OV) and fixed (FV) version
+ * from the creation and resolution dates, injected version (IV) from the earliest affected version,
+ * then, for tickets without affected versions, IV estimated with {@link Proportion}.
+ * <p>
+ * Estimated IVs are stored on the tickets, so labeling a method only compares indices instead of
+ * re-estimating IV for every method and ticket.
+ */
+public final class TicketLabeler {
+
+    /** Tickets per window in {@link Proportion.Mode#MOVING_WINDOW} when none is given. */
+    public static final int DEFAULT_WINDOW = 50;
+
+    private final ReleaseIndex releases;
+    private final Proportion.Mode mode;
+    private final int window;
+
+    public TicketLabeler(List<ProjectRelease> releases) {
+        this(releases, Proportion.Mode.MEDIAN, DEFAULT_WINDOW);
+    }
+
+    public TicketLabeler(List<ProjectRelease> releases, Proportion.Mode mode, int window) {
+        this.releases = ReleaseIndex.of(releases);
+        this.mode = mode;
+        this.window = window;
+    }
+
+    /**
+     * Labels {@code tickets} in place.
+     * @return the median P over the tickets with known IV, whatever the mode (it is what gets reported)
+     */
+    public double label(List<JiraTicket> tickets) {
+        assignVersions(tickets);
+        double median = Proportion.median(tickets);
+        if (mode == Proportion.Mode.MEDIAN) {
+            for (JiraTicket ticket : tickets) {
+                ticket.setIntroductionVersionIndex(Proportion.estimateIntroduction(ticket, median));
+            }
+            return median;
+        }
+
+        // Increment and moving window only look at tickets fixed earlier.
+        List<JiraTicket> inFixOrder = new ArrayList<>(tickets);
+        inFixOrder.sort(Comparator.comparing(JiraTicket::getResolutionDate,
+                Comparator.nullsLast(Comparator.<LocalDateTime>naturalOrder())));
+        double[] estimates = Proportion.estimates(inFixOrder, mode, window);
+        for (int t = 0; t < inFixOrder.size(); t++) {
+            JiraTicket ticket = inFixOrder.get(t);
+            ticket.setIntroductionVersionIndex(Proportion.estimateIntroduction(ticket, estimates[t]));
+        }
+        return median;
+    }
+
+    /** OV and FV by date (FV only for resolved tickets) and IV from the earliest listed affected version. */
+    void assignVersions(List<JiraTicket> tickets) {
+        long[] created = new long[tickets.size()];
+        for (int t = 0; t < created.length; t++) {
+            created[t] = tickets.get(t).getCreationDate().toLocalDate().toEpochDay();
+        }
+        int[] opening = releases.indicesFor(created);
+
+        List<JiraTicket> resolved = new ArrayList<>();
+        for (int t = 0; t < tickets.size(); t++) {
+            JiraTicket ticket = tickets.get(t);
+            ticket.setOpeningVersionIndex(opening[t]);
+            if (ticket.getResolutionDate() != null) {
+                resolved.add(ticket);
+            }
+            int introduction = Integer.MAX_VALUE;
+            for (String version : ticket.getAffectedVersions()) {
+                Integer index = releases.indexOf(version);
+                if (index != null) {
+                    introduction = Math.min(introduction, index);
+                }
+            }
+            if (introduction != Integer.MAX_VALUE) {
+                ticket.setIntroductionVersionIndex(introduction);
+            }
+        }
+
+        long[] fixedAt = new long[resolved.size()];
+        for (int t = 0; t < fixedAt.length; t++) {
+            fixedAt[t] = resolved.get(t).getResolutionDate().toLocalDate().toEpochDay();
+        }
+        int[] fixed = releases.indicesFor(fixedAt);
+        for (int t = 0; t < fixed.length; t++) {
+            resolved.get(t).setFixedVersionIndex(fixed[t]);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.dipalma.whatif.metrics;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and timers for the hot paths of the pipeline.
+ * Names are dot-separated, component first ({@code git.diff}, {@code jira.request}, {@code cv.fold}).
+ * Recording is lock-free and safe from any thread; every timed span also samples the used heap,
+ * so the report carries a heap high-water mark next to the pool peaks reported by the JVM.
+ * {@link #writeReport(Path)} dumps everything as JSON so that runs can be compared.
+ */
+public final class Metrics {
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, TimerStats> TIMERS = new ConcurrentHashMap<>();
+    private static final LongAccumulator HEAP_HIGH_WATER = new LongAccumulator(Math::max, 0);
+    private static final Instant STARTED_AT = Instant.now();
+    private static final long START_NANOS = System.nanoTime();
+
+    private static final class TimerStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    }
+
+    /** A running timer; closing it records the elapsed time. Meant for try-with-resources. */
+    public static final class Span implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+
+        private Span(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            record(name, System.nanoTime() - start);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public static void add(String counter, long delta) {
+        COUNTERS.computeIfAbsent(counter, k -> new LongAdder()).add(delta);
+    }
+
+    /** Starts timing {@code timer}: {@code try (Metrics.Span s = Metrics.time("git.diff")) { ... }}. */
+    public static Span time(String timer) {
+        return new Span(timer);
+    }
+
+    public static void record(String timer, long nanos) {
+        TimerStats stats = TIMERS.computeIfAbsent(timer, k -> new TimerStats());
+        stats.count.increment();
+        stats.totalNanos.add(nanos);
+        stats.maxNanos.accumulate(nanos);
+        sampleHeap();
+    }
+
+    public static void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        HEAP_HIGH_WATER.accumulate(runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    public static long count(String counter) {
+        LongAdder adder = COUNTERS.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /** Clears every counter and timer, e.g. between benchmark iterations. */
+    public static void reset() {
+        COUNTERS.clear();
+        TIMERS.clear();
+        HEAP_HIGH_WATER.reset();
+    }
+
+    /** Current values of every counter and timer; times are in milliseconds and heap sizes in bytes. */
+    public static JSONObject snapshot() {
+        sampleHeap();
+        JSONObject report = new JSONObject();
+        report.put("startedAt", STARTED_AT.toString());
+        report.put("wallTimeMs", (System.nanoTime() - START_NANOS) / 1_000_000.0);
+
+        JSONObject counters = new JSONObject();
+        new TreeMap<>(COUNTERS).forEach((name, adder) -> counters.put(name, adder.sum()));
+        report.put("counters", counters);
+
+        JSONObject timers = new JSONObject();
+        new TreeMap<>(TIMERS).forEach((name, stats) -> {
+            long count = stats.count.sum();
+            double totalMs = stats.totalNanos.sum() / 1_000_000.0;
+            JSONObject timer = new JSONObject();
+            timer.put("count", count);
+            timer.put("totalMs", totalMs);
+            timer.put("meanMs", count == 0 ? 0.0 : totalMs / count);
+            timer.put("maxMs", stats.maxNanos.get() / 1_000_000.0);
+            timers.put(name, timer);
+        });
+        report.put("timers", timers);
+
+        long poolPeaks = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                poolPeaks += pool.getPeakUsage().getUsed();
+            }
+        }
+        JSONObject heap = new JSONObject();
+        heap.put("highWaterBytes", HEAP_HIGH_WATER.get());
+        heap.put("poolPeaksBytes", poolPeaks);
+        heap.put("maxBytes", Runtime.getRuntime().maxMemory());
+        report.put("heap", heap);
+        return report;
+    }
+
+    public static void writeReport(Path path) throws IOException {
+        Files.writeString(path, snapshot().toString(2), StandardCharsets.UTF_8);
+    }
+}
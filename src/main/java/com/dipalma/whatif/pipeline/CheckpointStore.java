@@ -0,0 +1,136 @@
+package com.dipalma.whatif.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * Checkpoints of the {@link Pipeline}, one properties file per stage under a directory.
+ * A checkpoint records the status of the last run of a stage, the fingerprint of the inputs it
+ * ran on and the content hash of every output it wrote.
+ */
+public class CheckpointStore {
+
+    public enum Status { DONE, FAILED }
+
+    private static final String STATUS = "status";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String FINISHED_AT = "finishedAt";
+    private static final String OUTPUT_PREFIX = "output.";
+
+    private final Path directory;
+
+    public CheckpointStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * True if {@code stage} last completed on inputs with this fingerprint and all its outputs are
+     * still there with the content it wrote.
+     */
+    public boolean isUpToDate(Stage stage, String fingerprint) throws IOException {
+        Path file = checkpointFile(stage);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        Properties checkpoint = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            checkpoint.load(in);
+        }
+        if (!Status.DONE.name().equals(checkpoint.getProperty(STATUS))
+                || !fingerprint.equals(checkpoint.getProperty(FINGERPRINT))) {
+            return false;
+        }
+        for (Path output : stage.outputs()) {
+            String recorded = checkpoint.getProperty(OUTPUT_PREFIX + output);
+            if (recorded == null || !Files.exists(output) || !recorded.equals(hash(output))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void record(Stage stage, String fingerprint, Status status) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(STATUS, status.name());
+        checkpoint.setProperty(FINGERPRINT, fingerprint);
+        checkpoint.setProperty(FINISHED_AT, Instant.now().toString());
+        if (status == Status.DONE) {
+            for (Path output : stage.outputs()) {
+                if (Files.exists(output)) {
+                    checkpoint.setProperty(OUTPUT_PREFIX + output, hash(output));
+                }
+            }
+        }
+        Path file = checkpointFile(stage);
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            checkpoint.store(out, "Checkpoint of stage " + stage.name());
+        }
+    }
+
+    /** Fingerprint of what {@code stage} would run on now: its name, parameters and input contents. */
+    public static String fingerprint(Stage stage) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(stage.name().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(stage.parameters().getBytes(StandardCharsets.UTF_8));
+        for (Path input : stage.inputs()) {
+            digest.update((byte) 0);
+            digest.update(input.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update((Files.exists(input) ? hash(input) : "missing").getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** SHA-256 of a file's content, or of every regular file below it (sorted by path) for a directory. */
+    static String hash(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        if (Files.isDirectory(path)) {
+            try (var files = Files.walk(path)) {
+                files.filter(Files::isRegularFile).sorted().forEach(file -> {
+                    digest.update(path.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    try {
+                        update(digest, file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            update(digest, path);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Path file) throws IOException {
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Path checkpointFile(Stage stage) {
+        return directory.resolve(stage.name().replaceAll("[^A-Za-z0-9._-]", "_") + ".properties");
+    }
+}
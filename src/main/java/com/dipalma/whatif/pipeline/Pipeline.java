@@ -0,0 +1,113 @@
+package com.dipalma.whatif.pipeline;
+
+import com.dipalma.whatif.metrics.Metrics;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A graph of checkpointed {@link Stage}s, run in the order they were added.
+ * Before running a stage its inputs are hashed: if the last run of the stage completed on the
+ * same inputs and its outputs are untouched, the stage is skipped. Since a stage's inputs are the
+ * outputs of the stages before it, a rerun resumes from the first stage that is stale or failed.
+ * A failing stage does not stop the pipeline: only the stages that depend on it are blocked.
+ */
+public class Pipeline {
+
+    public enum Outcome { UP_TO_DATE, DONE, FAILED, BLOCKED }
+
+    private static final Logger log = LoggerFactory.getLogger(Pipeline.class);
+
+    private final CheckpointStore checkpoints;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    public Pipeline(Path checkpointDirectory) {
+        this.checkpoints = new CheckpointStore(checkpointDirectory);
+    }
+
+    public Pipeline add(Stage stage) {
+        if (stages.containsKey(stage.name())) {
+            throw new IllegalArgumentException("Duplicate stage: " + stage.name());
+        }
+        for (String dependency : stage.dependsOn()) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + stage.name() + " depends on unknown or later stage " + dependency);
+            }
+        }
+        stages.put(stage.name(), stage);
+        return this;
+    }
+
+    public Pipeline add(String name, List<String> dependsOn, String parameters,
+                        List<Path> inputs, List<Path> outputs, Stage.Action action) {
+        return add(new Stage(name, dependsOn, parameters, inputs, outputs, action));
+    }
+
+    /**
+     * Runs every stage that is stale, or all of them if {@code force} is set.
+     * @return the outcome of each stage, in order
+     */
+    public Map<String, Outcome> run(boolean force) {
+        Map<String, Outcome> outcomes = new LinkedHashMap<>();
+        for (Stage stage : stages.values()) {
+            outcomes.put(stage.name(), runStage(stage, outcomes, force));
+        }
+        logSummary(outcomes);
+        return outcomes;
+    }
+
+    private Outcome runStage(Stage stage, Map<String, Outcome> outcomes, boolean force) {
+        for (String dependency : stage.dependsOn()) {
+            Outcome upstream = outcomes.get(dependency);
+            if (upstream == Outcome.FAILED || upstream == Outcome.BLOCKED) {
+                log.warn("Skipping stage {}: it depends on {} which did not complete.", stage.name(), dependency);
+                return Outcome.BLOCKED;
+            }
+        }
+
+        String fingerprint;
+        try {
+            fingerprint = CheckpointStore.fingerprint(stage);
+            if (!force && checkpoints.isUpToDate(stage, fingerprint)) {
+                log.info("Stage {} is up to date, reusing its checkpoint.", stage.name());
+                return Outcome.UP_TO_DATE;
+            }
+        } catch (Exception e) {
+            log.error("Could not read the checkpoint of stage {}", stage.name(), e);
+            return Outcome.FAILED;
+        }
+
+        log.info("Running stage {}...", stage.name());
+        long start = System.nanoTime();
+        try (Metrics.Span span = Metrics.time("stage." + stage.name())) {
+            stage.action().run();
+            checkpoints.record(stage, fingerprint, CheckpointStore.Status.DONE);
+        } catch (Exception e) {
+            log.error("Stage {} failed", stage.name(), e);
+            recordFailure(stage, fingerprint);
+            return Outcome.FAILED;
+        }
+        log.info("Stage {} completed in {} s.", stage.name(), (System.nanoTime() - start) / 1_000_000_000L);
+        return Outcome.DONE;
+    }
+
+    private void recordFailure(Stage stage, String fingerprint) {
+        try {
+            checkpoints.record(stage, fingerprint, CheckpointStore.Status.FAILED);
+        } catch (Exception e) {
+            log.warn("Could not record the failure of stage {}: {}", stage.name(), e.getMessage());
+        }
+    }
+
+    private static void logSummary(Map<String, Outcome> outcomes) {
+        log.info("--- Pipeline summary ---");
+        for (Map.Entry<String, Outcome> entry : outcomes.entrySet()) {
+            log.info("  {} : {}", entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.dipalma.whatif.pipeline;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * One checkpointed step of the {@link Pipeline}.
+ * @param name       unique name, also the checkpoint file name (e.g. {@code BOOKKEEPER/dataset})
+ * @param dependsOn  stages that must have completed in this run before this one may start
+ * @param parameters anything besides the input files that changes the result (URLs, settings...)
+ * @param inputs     files read by the stage: their content hashes decide whether it is stale
+ * @param outputs    files written by the stage: they must still exist, unchanged, to skip it
+ * @param action     the work itself
+ */
+public record Stage(String name, List<String> dependsOn, String parameters,
+                    List<Path> inputs, List<Path> outputs, Action action) {
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+}
@@ -1,6 +1,6 @@
 package com.dipalma.whatif.preprocessing;
 
-
+import com.dipalma.whatif.metrics.Metrics;
 import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.converters.CSVLoader;
@@ -8,11 +8,29 @@ import weka.core.converters.CSVSaver;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Remove;
 import weka.filters.unsupervised.attribute.Normalize;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -27,6 +45,7 @@ public class DataPreprocessor {
     private static final Logger log = LoggerFactory.getLogger(DataPreprocessor.class);
 
     private static final String RELEASE_ATTR = "Release";
+    private static final String EFFORT_ATTR = "LOC";
     private static final double OUTLIER_STD_MULTIPLIER = 3.0;
 
     private record Bounds(double lower, double upper) {
@@ -37,28 +56,67 @@ public class DataPreprocessor {
         this.outputFilePath = inputFilePath.replace(".csv", "_processed.csv");
     }
 
+    /**
+     * Processes the rows the CSV gained since the last run with the stored {@link PreprocessingTransform},
+     * appending them to the processed CSV; refits on the whole CSV when there is no transform yet
+     * or when rows it was fitted on changed.
+     */
     public void processData() throws Exception {
+        Path transformFile = transformFileFor(this.outputFilePath);
+        if (Files.exists(transformFile) && Files.exists(Path.of(this.outputFilePath))
+                && appendNewRows(PreprocessingTransform.read(transformFile))) {
+            return;
+        }
+        refit();
+    }
+
+    /** Fits the transform on the whole CSV and rewrites the processed CSV, its effort file and the transform. */
+    public void refit() throws Exception {
         // 1. Load
-        Instances data = loadCsv(this.inputFilePath);
+        Instances data;
+        try (Metrics.Span span = Metrics.time("preprocess.load")) {
+            data = loadCsv(this.inputFilePath);
+        }
         if (data.classIndex() == -1) {
             data.setClassIndex(data.numAttributes() - 1);
         }
         log.info("Original data shape: {} rows, {} attributes.", data.numInstances(), data.numAttributes());
 
         // 2. Sanitize
-        Instances sanitizedData = sanitizeData(data);
+        Instances sanitizedData;
+        double[] means;
+        try (Metrics.Span span = Metrics.time("preprocess.sanitize")) {
+            means = columnMeans(data);
+            sanitizedData = sanitizeData(data, means);
+        }
         log.info("Data sanitized.");
 
         // 3. Remove outliers
-        Instances dataWithoutOutliers = removeOutliers(sanitizedData);
+        Instances dataWithoutOutliers;
+        Bounds[] bounds;
+        boolean[] outliers;
+        try (Metrics.Span span = Metrics.time("preprocess.outliers")) {
+            bounds = fitOutlierBounds(sanitizedData);
+            outliers = markOutliers(sanitizedData, bounds);
+            dataWithoutOutliers = removeOutliers(sanitizedData, outliers);
+        }
         log.info("Data shape after outlier removal: {} rows.", dataWithoutOutliers.numInstances());
+        // Effort of every kept row, before scaling, for the effort-aware metrics.
+        writeEffort(dataWithoutOutliers, outliers, effortFileFor(this.outputFilePath));
 
         // 4. Remove constant numeric features
-        Instances dataWithoutUseless = removeConstantAttributes(dataWithoutOutliers);
+        Instances dataWithoutUseless;
+        try (Metrics.Span span = Metrics.time("preprocess.constantAttributes")) {
+            dataWithoutUseless = removeConstantAttributes(dataWithoutOutliers);
+        }
         log.info("Data shape after removing useless attributes: {} rows.", dataWithoutUseless.numInstances());
 
         // 5. Scale the data
-        Instances scaledData = scaleData(dataWithoutUseless);
+        Instances scaledData;
+        Normalize norm = new Normalize();
+        try (Metrics.Span span = Metrics.time("preprocess.scale")) {
+            scaledData = scaleData(dataWithoutUseless, norm);
+        }
         log.info("Data successfully scaled.");
 
         // 6. *** NEW AND FINAL STEP: Remove identifier columns ***
@@ -66,8 +124,191 @@ public class DataPreprocessor {
         log.info("Identifier columns removed. Final data has {} attributes.", finalData.numAttributes());
 
         // 7. Save the final, clean data
-        saveToCsv(finalData, this.outputFilePath);
+        try (Metrics.Span span = Metrics.time("preprocess.save")) {
+            saveToCsv(finalData, this.outputFilePath);
+        }
+        Metrics.add("preprocess.rows", finalData.numInstances());
         log.info("Processed data saved to: {}", this.outputFilePath);
+
+        // 8. Save what was fitted, to process the rows of later releases the same way
+        PreprocessingTransform transform = fittedTransform(data, means, bounds, dataWithoutUseless, norm, finalData);
+        SourceRows source = readSource();
+        transform.withSource(source.rows(), source.digest()).withOutputs(outputDigest(this.outputFilePath))
+                .write(transformFileFor(this.outputFilePath));
+    }
+
+    /** The parameters of every step of {@link #refit}, per column of the original CSV. */
+    private static PreprocessingTransform fittedTransform(Instances data, double[] means, Bounds[] bounds,
+                                                          Instances unscaled, Normalize norm, Instances finalData) {
+        List<PreprocessingTransform.Column> columns = new ArrayList<>(data.numAttributes());
+        double[] min = norm.getMinArray();
+        double[] max = norm.getMaxArray();
+        for (int i = 0; i < data.numAttributes(); i++) {
+            Attribute attr = data.attribute(i);
+            Attribute remaining = unscaled.attribute(attr.name());
+            boolean scaled = remaining != null && attr.isNumeric() && remaining.index() != unscaled.classIndex();
+            Bounds b = bounds[i];
+            columns.add(new PreprocessingTransform.Column(attr.name(), attr.isNumeric(),
+                    attr.isNumeric() ? means[i] : Double.NaN,
+                    b == null ? Double.NaN : b.lower(), b == null ? Double.NaN : b.upper(),
+                    scaled, scaled ? min[remaining.index()] : Double.NaN, scaled ? max[remaining.index()] : Double.NaN,
+                    finalData.attribute(attr.name()) != null));
+        }
+        return new PreprocessingTransform(columns, 0, "", "");
+    }
+
+    /**
+     * Streams the rows after the first {@code transform.rows()} of the CSV through {@code transform},
+     * appending the kept ones to the processed CSV and the effort file. The CSV is read once: the
+     * rows the transform has processed are only digested, to check they did not change.
+     * @return false if the CSV does not start with the rows the transform has processed
+     */
+    private boolean appendNewRows(PreprocessingTransform transform) throws IOException {
+        Path processed = Path.of(this.outputFilePath);
+        Path effortFile = effortFileFor(this.outputFilePath);
+        int effortColumn = transform.indexOf(EFFORT_ATTR);
+        if (effortColumn >= 0 && !Files.exists(effortFile)) {
+            log.info("No effort file next to {}: refitting.", processed);
+            return false;
+        }
+        if (!transform.outputDigest().equals(outputDigest(this.outputFilePath))) {
+            log.info("{} or its effort file changed since the transform was written: refitting.", processed);
+            return false;
+        }
+
+        try (Metrics.Span span = Metrics.time("preprocess.append");
+             Reader in = Files.newBufferedReader(Path.of(this.inputFilePath));
+             CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in)) {
+            MessageDigest digest = sourceDigest(parser.getHeaderNames());
+            Iterator<CSVRecord> records = parser.iterator();
+            int row = 0;
+            for (; row < transform.rows() && records.hasNext(); row++) {
+                update(digest, records.next());
+            }
+            if (row < transform.rows() || !transform.sourceDigest().equals(hex(digest))) {
+                log.info("Rows of {} changed since the transform was fitted: refitting.", this.inputFilePath);
+                return false;
+            }
+
+            long processedSize = Files.size(processed);
+            long effortSize = effortColumn >= 0 ? Files.size(effortFile) : 0;
+            int kept = 0;
+            try {
+                try (CSVPrinter processedOut = new CSVPrinter(appendTo(processed), CSVFormat.DEFAULT);
+                     CSVPrinter effortOut = effortColumn >= 0 ? new CSVPrinter(appendTo(effortFile), CSVFormat.DEFAULT) : null) {
+                    for (; records.hasNext(); row++) {
+                        CSVRecord csvRecord = records.next();
+                        update(digest, csvRecord);
+                        List<String> raw = csvRecord.toList();
+                        double[] values = transform.sanitize(raw);
+                        if (!transform.isOutlier(values)) {
+                            processedOut.printRecord(transform.output(raw, values));
+                            if (effortOut != null) {
+                                effortOut.printRecord(row, values[effortColumn]);
+                            }
+                            kept++;
+                        }
+                    }
+                }
+                transform.withSource(row, hex(digest)).withOutputs(outputDigest(this.outputFilePath))
+                        .write(transformFileFor(this.outputFilePath));
+            } catch (IOException | RuntimeException e) {
+                // Leave the outputs as the stored transform describes them, so the next run appends again.
+                truncate(processed, processedSize);
+                if (effortColumn >= 0) {
+                    truncate(effortFile, effortSize);
+                }
+                throw e;
+            }
+            Metrics.add("preprocess.rows", kept);
+            log.info("Appended {} of {} new rows of {} to {} with the stored transform.",
+                    kept, row - transform.rows(), this.inputFilePath, processed);
+            return true;
+        }
+    }
+
+    /** Rows of the original CSV, and the digest of the header and those rows. */
+    private record SourceRows(int rows, String digest) {
+    }
+
+    private SourceRows readSource() throws IOException {
+        try (Reader in = Files.newBufferedReader(Path.of(this.inputFilePath));
+             CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in)) {
+            MessageDigest digest = sourceDigest(parser.getHeaderNames());
+            int rows = 0;
+            for (CSVRecord csvRecord : parser) {
+                update(digest, csvRecord);
+                rows++;
+            }
+            return new SourceRows(rows, hex(digest));
+        }
+    }
+
+    /**
+     * SHA-256 of the processed CSV and then of its effort file, each preceded by its size so that
+     * bytes cannot move from one to the other; a missing effort file counts as size -1. Stored in
+     * the transform, it tells whether the rows of both files are still the ones written together.
+     */
+    public static String outputDigest(String processedCsv) throws IOException {
+        MessageDigest digest = newDigest();
+        for (Path file : List.of(Path.of(processedCsv), effortFileFor(processedCsv))) {
+            boolean exists = Files.exists(file);
+            digest.update((Long.toString(exists ? Files.size(file) : -1) + "\n").getBytes(StandardCharsets.UTF_8));
+            if (exists) {
+                try (InputStream in = Files.newInputStream(file);
+                     DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+                    in.transferTo(out);
+                }
+            }
+        }
+        return hex(digest);
+    }
+
+    /** The digest so far, leaving {@code digest} open for more rows. */
+    private static String hex(MessageDigest digest) {
+        try {
+            return HexFormat.of().formatHex(((MessageDigest) digest.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digests can be cloned", e);
+        }
+    }
+
+    private static MessageDigest sourceDigest(List<String> header) {
+        MessageDigest digest = newDigest();
+        update(digest, header);
+        return digest;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+    /** Each value, then a separator no value contains, so that rows cannot be confused by shifting values. */
+    private static void update(MessageDigest digest, Iterable<String> values) {
+        for (String value : values) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update((byte) '\n');
+    }
+
+    private static Writer appendTo(Path file) throws IOException {
+        return Files.newBufferedWriter(file, StandardOpenOption.APPEND);
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    /** The JSON file next to {@code processedCsv} with the {@link PreprocessingTransform} it was made with. */
+    public static Path transformFileFor(String processedCsv) {
+        return Path.of(processedCsv.replace(".csv", "_transform.json"));
     }
 
     private Instances removeIdentifierColumns(Instances data) throws Exception {
@@ -81,15 +322,7 @@ public class DataPreprocessor {
     /**
      * New method to find and replace any NaN or Infinite values.
      */
-    private Instances sanitizeData(Instances data) {
-        // Calculate column means for replacement
-        double[] means = new double[data.numAttributes()];
-        for (int j = 0; j < data.numAttributes(); j++) {
-            if (data.attribute(j).isNumeric()) {
-                means[j] = data.meanOrMode(j);
-            }
-        }
-
+    private Instances sanitizeData(Instances data, double[] means) {
         for (int i = 0; i < data.numInstances(); i++) {
             for (int j = 0; j < data.numAttributes(); j++) {
                 if (data.attribute(j).isNumeric()) {
@@ -104,6 +337,17 @@ public class DataPreprocessor {
         return data;
     }
 
+    /** Column means for replacement (numeric columns only). */
+    private static double[] columnMeans(Instances data) {
+        double[] means = new double[data.numAttributes()];
+        for (int j = 0; j < data.numAttributes(); j++) {
+            if (data.attribute(j).isNumeric()) {
+                means[j] = data.meanOrMode(j);
+            }
+        }
+        return means;
+    }
+
     private Instances loadCsv(String filename) throws IOException {
         CSVLoader loader = new CSVLoader();
         loader.setSource(new File(filename));
@@ -111,24 +355,61 @@ public class DataPreprocessor {
     }
 
     // --- metodo rifattorizzato ---
-    private Instances removeOutliers(Instances data) {
+    private Instances removeOutliers(Instances data, boolean[] toRemove) {
         // stessa struttura iniziale: copia intestazione e svuota
         Instances filteredData = new Instances(data);
         filteredData.delete();
 
+        copyNonRemovedInstances(data, filteredData, toRemove);
+        return filteredData;
+    }
+
+    // limiti per attributo, null dove non si cercano outlier
+    private static Bounds[] fitOutlierBounds(Instances data) {
         // individua attributi numerici (escludendo "Release")
-        List<Integer> numericAttrIndices = getNumericAttrIndices(data);
+        Bounds[] bounds = new Bounds[data.numAttributes()];
+        for (int attrIndex : getNumericAttrIndices(data)) {
+            bounds[attrIndex] = computeBounds(data, attrIndex); // std=0 (o NaN) => nessun outlier per quell'attributo
+        }
+        return bounds;
+    }
 
+    private static boolean[] markOutliers(Instances data, Bounds[] bounds) {
         boolean[] toRemove = new boolean[data.numInstances()];
-        for (int attrIndex : numericAttrIndices) {
-            Bounds b = computeBounds(data, attrIndex);
-            if (b != null) { // std=0 (o NaN) => nessun outlier per quell'attributo
-                markOutliersForAttr(data, attrIndex, b, toRemove);
+        for (int attrIndex = 0; attrIndex < bounds.length; attrIndex++) {
+            if (bounds[attrIndex] != null) {
+                markOutliersForAttr(data, attrIndex, bounds[attrIndex], toRemove);
             }
         }
+        return toRemove;
+    }
 
-        copyNonRemovedInstances(data, filteredData, toRemove);
-        return filteredData;
+    /** The file next to {@code processedCsv} with the row id and unscaled LOC of each of its rows. */
+    public static Path effortFileFor(String processedCsv) {
+        return Path.of(processedCsv.replace(".csv", "_effort.csv"));
+    }
+
+    /**
+     * Writes, for each row kept in the processed dataset and in its order, the row id in the
+     * original CSV (0-based, header excluded) and its LOC before scaling.
+     */
+    private static void writeEffort(Instances keptData, boolean[] outliers, Path effortFile) throws IOException {
+        Attribute loc = keptData.attribute(EFFORT_ATTR);
+        if (loc == null) {
+            log.warn("No {} attribute: effort-aware metrics will not be available.", EFFORT_ATTR);
+            Files.deleteIfExists(effortFile);
+            return;
+        }
+        try (Writer out = Files.newBufferedWriter(effortFile);
+             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT)) {
+            printer.printRecord("RowId", EFFORT_ATTR);
+            int kept = 0;
+            for (int row = 0; row < outliers.length; row++) {
+                if (!outliers[row]) {
+                    printer.printRecord(row, keptData.instance(kept++).value(loc));
+                }
+            }
+        }
     }
 
     // --- helper ---
@@ -224,8 +505,7 @@ public class DataPreprocessor {
     }
 
 
-    private Instances scaleData(Instances data) throws Exception {
-        Normalize norm = new Normalize();
+    private Instances scaleData(Instances data, Normalize norm) throws Exception {
         norm.setIgnoreClass(true);
         norm.setInputFormat(data); //min/max calcolati su data
         return Filter.useFilter(data, norm);
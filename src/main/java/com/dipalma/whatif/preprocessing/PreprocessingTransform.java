@@ -0,0 +1,191 @@
+package com.dipalma.whatif.preprocessing;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import weka.core.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parameters {@link DataPreprocessor} fitted on a dataset, so that rows added later (a new
+ * release) can be processed exactly like the fitted ones, one at a time, without refitting:
+ * <ul>
+ *   <li>the mean replacing a missing or non-finite value, per numeric column;</li>
+ *   <li>the outlier bounds (mean &plusmn; 3 standard deviations), per numeric column that has them;</li>
+ *   <li>the min and max {@code Normalize} scaled each numeric column with;</li>
+ *   <li>which columns are kept: constant and identifier columns are dropped.</li>
+ * </ul>
+ * It also records how many rows of the original CSV it has processed and a digest of them (header
+ * included), to tell whether the CSV only grew since, and a digest of the processed CSV and effort
+ * file written with it, to tell whether those still belong together. Stored as JSON next to the
+ * processed CSV.
+ *
+ * @param columns      the columns of the original CSV, in order
+ * @param rows         rows of the original CSV processed so far, outliers included
+ * @param sourceDigest SHA-256 of those rows, see {@link DataPreprocessor}
+ * @param outputDigest SHA-256 of the processed CSV and its effort file, see {@link DataPreprocessor#outputDigest}
+ */
+public record PreprocessingTransform(List<Column> columns, int rows, String sourceDigest, String outputDigest) {
+
+    /**
+     * One column of the original CSV. Doubles that do not apply are NaN: the mean, bounds and
+     * scaling of a nominal column, the bounds of a column with no spread.
+     */
+    public record Column(String name, boolean numeric, double mean, double lower, double upper,
+                         boolean scaled, double min, double max, boolean kept) {
+    }
+
+    // As many decimals as Weka's CSVSaver writes.
+    private static final int DECIMALS = 6;
+    private static final String MISSING = "?";
+
+    public PreprocessingTransform {
+        columns = List.copyOf(columns);
+    }
+
+    /** The same parameters, having processed {@code rows} rows of the CSV, with that digest. */
+    public PreprocessingTransform withSource(int rows, String sourceDigest) {
+        return new PreprocessingTransform(columns, rows, sourceDigest, outputDigest);
+    }
+
+    /** The same parameters, having written outputs with that digest. */
+    public PreprocessingTransform withOutputs(String outputDigest) {
+        return new PreprocessingTransform(columns, rows, sourceDigest, outputDigest);
+    }
+
+    public List<String> columnNames() {
+        return columns.stream().map(Column::name).toList();
+    }
+
+    /** @return the position of column {@code name}, or -1 */
+    public int indexOf(String name) {
+        return columnNames().indexOf(name);
+    }
+
+    /**
+     * The numeric values of a row of the original CSV, missing and non-finite ones replaced by the
+     * column mean; NaN for the nominal columns.
+     */
+    public double[] sanitize(List<String> raw) {
+        double[] values = new double[columns.size()];
+        for (int c = 0; c < values.length; c++) {
+            Column column = columns.get(c);
+            if (!column.numeric()) {
+                values[c] = Double.NaN;
+                continue;
+            }
+            double value = parse(raw.get(c));
+            values[c] = Double.isNaN(value) || Double.isInfinite(value) ? column.mean() : value;
+        }
+        return values;
+    }
+
+    /** Whether {@link #sanitize sanitized} values fall outside the bounds of any column. */
+    public boolean isOutlier(double[] values) {
+        for (int c = 0; c < values.length; c++) {
+            Column column = columns.get(c);
+            if (values[c] < column.lower() || values[c] > column.upper()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The kept columns of a row, scaled like {@code Normalize} scaled the fitted ones. */
+    public List<String> output(List<String> raw, double[] values) {
+        List<String> row = new ArrayList<>();
+        for (int c = 0; c < values.length; c++) {
+            Column column = columns.get(c);
+            if (!column.kept()) {
+                continue;
+            }
+            if (!column.numeric()) {
+                row.add(raw.get(c));
+            } else if (Double.isNaN(values[c])) {
+                row.add(MISSING);
+            } else {
+                row.add(Utils.doubleToString(column.scaled() ? scale(column, values[c]) : values[c], DECIMALS));
+            }
+        }
+        return row;
+    }
+
+    /** Normalize with the default scale (1) and translation (0); a constant column scales to 0. */
+    private static double scale(Column column, double value) {
+        if (Double.isNaN(column.min()) || column.max() == column.min()) {
+            return 0;
+        }
+        return (value - column.min()) / (column.max() - column.min());
+    }
+
+    private static double parse(String value) {
+        if (value == null || value.isBlank() || MISSING.equals(value.trim())) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    public static PreprocessingTransform read(Path file) throws IOException {
+        JSONObject json = new JSONObject(Files.readString(file, StandardCharsets.UTF_8));
+        JSONArray array = json.getJSONArray("columns");
+        List<Column> columns = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject column = array.getJSONObject(i);
+            columns.add(new Column(column.getString("name"), column.getBoolean("numeric"),
+                    column.optDouble("mean", Double.NaN),
+                    column.optDouble("lower", Double.NaN), column.optDouble("upper", Double.NaN),
+                    column.getBoolean("scaled"),
+                    column.optDouble("min", Double.NaN), column.optDouble("max", Double.NaN),
+                    column.getBoolean("kept")));
+        }
+        // Transforms written before the output digest match no outputs: they are refitted.
+        return new PreprocessingTransform(columns, json.getInt("rows"), json.getString("sourceDigest"),
+                json.optString("outputDigest", ""));
+    }
+
+    /**
+     * Writes to a temporary file next to {@code file}, then moves it over {@code file} atomically:
+     * readers find the previous transform or this one, never a partial file.
+     */
+    public void write(Path file) throws IOException {
+        JSONArray array = new JSONArray();
+        for (Column column : columns) {
+            JSONObject json = new JSONObject();
+            json.put("name", column.name());
+            json.put("numeric", column.numeric());
+            // JSON has no NaN: parameters that do not apply are left out.
+            putFinite(json, "mean", column.mean());
+            putFinite(json, "lower", column.lower());
+            putFinite(json, "upper", column.upper());
+            json.put("scaled", column.scaled());
+            putFinite(json, "min", column.min());
+            putFinite(json, "max", column.max());
+            json.put("kept", column.kept());
+            array.put(json);
+        }
+        JSONObject json = new JSONObject();
+        json.put("rows", rows);
+        json.put("sourceDigest", sourceDigest);
+        json.put("outputDigest", outputDigest);
+        json.put("columns", array);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, json.toString(2), StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void putFinite(JSONObject json, String key, double value) {
+        if (Double.isFinite(value)) {
+            json.put(key, value);
+        }
+    }
+}
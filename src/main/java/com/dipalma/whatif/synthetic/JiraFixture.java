@@ -0,0 +1,98 @@
+package com.dipalma.whatif.synthetic;
+
+import com.dipalma.whatif.synthetic.SyntheticRepositoryGenerator.FixedTicket;
+import com.dipalma.whatif.synthetic.SyntheticRepositoryGenerator.Release;
+import com.dipalma.whatif.synthetic.SyntheticRepositoryGenerator.SyntheticRepository;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The JIRA side of a {@link SyntheticRepository}, in the shape of the REST responses read by
+ * {@code JiraConnector}: the project versions (one per release tag, plus the unreleased next one)
+ * and the fixed bugs, each with its creation and resolution date and its affected versions.
+ * <p>
+ * It can be saved next to the repository ({@code versions.json}, {@code issues.json}) and read back,
+ * so that a large history is generated once and then served by {@link JiraStubServer} many times.
+ */
+public record JiraFixture(String projectKey, JSONArray versions, List<JSONObject> issues) {
+
+    private static final DateTimeFormatter JIRA_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    private static final String VERSIONS_FILE = "versions.json";
+    private static final String ISSUES_FILE = "issues.json";
+
+    public static JiraFixture of(SyntheticRepository repository) {
+        JSONArray versions = new JSONArray();
+        List<Release> releases = repository.releases();
+        for (int r = 0; r < releases.size(); r++) {
+            versions.put(new JSONObject()
+                    .put("id", String.valueOf(10_000 + r))
+                    .put("name", releases.get(r).name())
+                    .put("released", true)
+                    .put("releaseDate", releases.get(r).date().toString()));
+        }
+        versions.put(new JSONObject()
+                .put("id", String.valueOf(10_000 + releases.size()))
+                .put("name", "1." + releases.size() + ".0")
+                .put("released", false));
+
+        // JiraConnector asks for the tickets ORDER BY created ASC
+        List<FixedTicket> tickets = new ArrayList<>(repository.tickets());
+        tickets.sort(Comparator.comparing(FixedTicket::createdAt));
+        List<JSONObject> issues = new ArrayList<>(tickets.size());
+        for (FixedTicket ticket : tickets) {
+            JSONArray affectedVersions = new JSONArray();
+            for (String version : ticket.affectedVersions()) {
+                affectedVersions.put(new JSONObject().put("name", version));
+            }
+            issues.add(new JSONObject()
+                    .put("key", ticket.key())
+                    .put("fields", new JSONObject()
+                            .put("issuetype", new JSONObject().put("name", "Bug"))
+                            .put("resolution", new JSONObject().put("name", "Fixed"))
+                            .put("created", JIRA_DATE_FORMATTER.format(ticket.createdAt().atZone(ZoneOffset.UTC)))
+                            .put("resolutiondate", JIRA_DATE_FORMATTER.format(ticket.fixedAt().atZone(ZoneOffset.UTC)))
+                            .put("versions", affectedVersions)));
+        }
+        return new JiraFixture(repository.spec().projectKey(), versions, issues);
+    }
+
+    /** The body of a search request for {@code maxResults} issues starting at {@code startAt}. */
+    public JSONObject searchPage(int startAt, int maxResults) {
+        int from = Math.clamp(startAt, 0, issues.size());
+        int to = Math.clamp((long) from + Math.max(0, maxResults), from, issues.size());
+        return new JSONObject()
+                .put("startAt", from)
+                .put("maxResults", maxResults)
+                .put("total", issues.size())
+                .put("issues", new JSONArray(issues.subList(from, to)));
+    }
+
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve(VERSIONS_FILE), versions.toString());
+        Files.writeString(directory.resolve(ISSUES_FILE), new JSONObject()
+                .put("projectKey", projectKey)
+                .put("issues", new JSONArray(issues))
+                .toString());
+    }
+
+    public static JiraFixture read(Path directory) throws IOException {
+        JSONArray versions = new JSONArray(Files.readString(directory.resolve(VERSIONS_FILE)));
+        JSONObject saved = new JSONObject(Files.readString(directory.resolve(ISSUES_FILE)));
+        JSONArray savedIssues = saved.getJSONArray("issues");
+        List<JSONObject> issues = new ArrayList<>(savedIssues.length());
+        for (int i = 0; i < savedIssues.length(); i++) {
+            issues.add(savedIssues.getJSONObject(i));
+        }
+        return new JiraFixture(saved.getString("projectKey"), versions, issues);
+    }
+}
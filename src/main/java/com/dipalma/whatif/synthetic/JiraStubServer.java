@@ -0,0 +1,197 @@
+package com.dipalma.whatif.synthetic;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local HTTP server answering the two JIRA REST calls made by {@code JiraConnector} from a
+ * {@link JiraFixture}: {@code /rest/api/2/project/<key>/versions} and the paged
+ * {@code /rest/api/2/search}. The JQL is not interpreted, every fixture issue matches it.
+ * Pass {@link #baseUrl()} to {@code new JiraConnector(projectKey, baseUrl)}.
+ * <p>
+ * With {@link Faults} it also misbehaves like a loaded JIRA, at random but reproducibly: 429 with
+ * a {@code Retry-After}, 503, and responses delayed past the client's patience. Requests are served
+ * on virtual threads, so a delayed response does not hold up the others (or their hedges).
+ */
+public final class JiraStubServer implements AutoCloseable {
+
+    private static final String API = "/rest/api/2";
+
+    /**
+     * Faults injected into responses, each request drawing at most one of them.
+     *
+     * @param throttleRate share of requests answered 429 with {@code Retry-After: retryAfter}
+     * @param retryAfter   wait asked for by throttled responses (whole seconds on the wire)
+     * @param errorRate    share of requests answered 503
+     * @param slowRate     share of requests answered normally after {@code slowDelay}
+     * @param slowDelay    delay of slow responses
+     * @param seed         seed of the draws
+     */
+    public record Faults(double throttleRate, Duration retryAfter, double errorRate,
+                         double slowRate, Duration slowDelay, long seed) {
+
+        public static Faults none() {
+            return new Faults(0, Duration.ZERO, 0, 0, Duration.ZERO, 0);
+        }
+
+        /** Rates given as {@code throttle,error,slow} (e.g. {@code 0.05,0.02,0.05}), with a 1 s Retry-After and 3 s delays. */
+        public static Faults parse(String rates) {
+            String[] parts = rates.split(",");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected throttle,error,slow rates: " + rates);
+            }
+            return new Faults(Double.parseDouble(parts[0]), Duration.ofSeconds(1), Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]), Duration.ofSeconds(3), 42);
+        }
+    }
+
+    private enum Fault { NONE, THROTTLE, ERROR, SLOW }
+
+    private final JiraFixture fixture;
+    private final Faults faults;
+    private final Random random;
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Fault, LongAdder> served = new EnumMap<>(Fault.class);
+
+    private JiraStubServer(JiraFixture fixture, Faults faults) throws IOException {
+        this.fixture = fixture;
+        this.faults = faults;
+        this.random = new Random(faults.seed());
+        for (Fault fault : Fault.values()) {
+            served.put(fault, new LongAdder());
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(handlers);
+        server.createContext(API + "/project/", exchange -> serve(exchange, this::versions));
+        server.createContext(API + "/search", exchange -> serve(exchange, this::search));
+    }
+
+    /** Starts serving {@code fixture} on an ephemeral loopback port. */
+    public static JiraStubServer start(JiraFixture fixture) throws IOException {
+        return start(fixture, Faults.none());
+    }
+
+    /** As above, injecting {@code faults}. */
+    public static JiraStubServer start(JiraFixture fixture, Faults faults) throws IOException {
+        JiraStubServer stub = new JiraStubServer(fixture, faults);
+        stub.server.start();
+        return stub;
+    }
+
+    /** Requests answered so far: {@code ok}, {@code throttled}, {@code errors} and {@code slow}. */
+    public Map<String, Long> servedCounts() {
+        return Map.of("ok", served.get(Fault.NONE).sum(), "throttled", served.get(Fault.THROTTLE).sum(),
+                "errors", served.get(Fault.ERROR).sum(), "slow", served.get(Fault.SLOW).sum());
+    }
+
+    private void serve(HttpExchange exchange, HttpHandler handler) throws IOException {
+        Fault fault = draw();
+        served.get(fault).increment();
+        switch (fault) {
+            case THROTTLE -> {
+                exchange.getResponseHeaders().set("Retry-After",
+                        Long.toString(Math.max(1, (faults.retryAfter().toMillis() + 999) / 1000)));
+                respond(exchange, 429, "{\"errorMessages\":[\"Rate limit exceeded.\"]}");
+            }
+            case ERROR -> respond(exchange, 503, "{\"errorMessages\":[\"Service unavailable.\"]}");
+            case SLOW -> {
+                try {
+                    Thread.sleep(faults.slowDelay());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    exchange.close();
+                    return;
+                }
+                handler.handle(exchange);
+            }
+            case NONE -> handler.handle(exchange);
+        }
+    }
+
+    private synchronized Fault draw() {
+        double x = random.nextDouble();
+        if (x < faults.throttleRate()) {
+            return Fault.THROTTLE;
+        }
+        x -= faults.throttleRate();
+        if (x < faults.errorRate()) {
+            return Fault.ERROR;
+        }
+        x -= faults.errorRate();
+        return x < faults.slowRate() ? Fault.SLOW : Fault.NONE;
+    }
+
+    public String baseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    private void versions(HttpExchange exchange) throws IOException {
+        String expected = API + "/project/" + fixture.projectKey() + "/versions";
+        if (!exchange.getRequestURI().getPath().equals(expected)) {
+            respond(exchange, 404, "{\"errorMessages\":[\"No project could be found.\"]}");
+            return;
+        }
+        respond(exchange, 200, fixture.versions().toString());
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange.getRequestURI());
+        try {
+            int startAt = Integer.parseInt(query.getOrDefault("startAt", "0"));
+            int maxResults = Integer.parseInt(query.getOrDefault("maxResults", "50"));
+            respond(exchange, 200, fixture.searchPage(startAt, maxResults).toString());
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, "{\"errorMessages\":[\"Invalid paging parameters.\"]}");
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String rawQuery = uri.getRawQuery();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+}
@@ -0,0 +1,103 @@
+package com.dipalma.whatif.synthetic;
+
+import com.dipalma.whatif.DatasetGenerator;
+import com.dipalma.whatif.connectors.GitConnector;
+import com.dipalma.whatif.connectors.JiraConnector;
+import com.dipalma.whatif.connectors.ObjectCacheSettings;
+import com.dipalma.whatif.metrics.Metrics;
+import com.dipalma.whatif.synthetic.SyntheticRepositoryGenerator.Spec;
+import com.dipalma.whatif.synthetic.SyntheticRepositoryGenerator.SyntheticRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Offline load test of the mining stage: for each requested size (number of methods, default
+ * 1k, 10k and 100k) generates a synthetic repository and its JIRA fixture, serves the fixture
+ * from a {@link JiraStubServer} and runs the whole {@link DatasetGenerator} against both. The
+ * metrics of each size are written to {@code scale-<methods>-metrics.json}.
+ * <p>
+ * Usage: {@code ScaleRun [methods...] [--keep] [--object-cache=default|mining] [--jira-faults=t,e,s]};
+ * with {@code --keep} the generated repositories and fixtures are left in place (their directory is
+ * logged) instead of being deleted, {@code --object-cache} selects the {@link ObjectCacheSettings}
+ * (default: mining), and {@code --jira-faults} makes the stub throttle, fail and stall those shares
+ * of its responses (see {@link JiraStubServer.Faults#parse}).
+ */
+public final class ScaleRun {
+
+    private static final Logger log = LoggerFactory.getLogger(ScaleRun.class);
+
+    private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000};
+
+    private ScaleRun() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean keep = false;
+        String objectCache = "mining";
+        JiraStubServer.Faults faults = JiraStubServer.Faults.none();
+        int[] sizes = Stream.of(args).filter(arg -> !arg.startsWith("--")).mapToInt(Integer::parseInt).toArray();
+        for (String arg : args) {
+            keep |= arg.equals("--keep");
+            if (arg.startsWith("--object-cache=")) {
+                objectCache = arg.substring("--object-cache=".length());
+            }
+            if (arg.startsWith("--jira-faults=")) {
+                faults = JiraStubServer.Faults.parse(arg.substring("--jira-faults=".length()));
+            }
+        }
+        ObjectCacheSettings.named(objectCache).install();
+        for (int methods : sizes.length == 0 ? DEFAULT_SIZES : sizes) {
+            run(methods, keep, faults);
+        }
+    }
+
+    private static void run(int methods, boolean keep, JiraStubServer.Faults faults) throws Exception {
+        Metrics.reset();
+        Spec spec = Spec.ofMethods(methods);
+        Path directory = Files.createTempDirectory("whatif-scale-" + methods);
+        log.info("Generating {} files x {} methods over {} commits in {}",
+                spec.files(), spec.methodsPerFile(), spec.commits(), directory);
+
+        SyntheticRepository repository;
+        try (Metrics.Span span = Metrics.time("scale.generate")) {
+            repository = SyntheticRepositoryGenerator.generate(directory.resolve("repo"), spec);
+        }
+        JiraFixture fixture = JiraFixture.of(repository);
+        fixture.write(directory.resolve("jira"));
+
+        GitConnector git = new GitConnector(null, repository.directory(),
+                GitConnector.CloneMode.BARE, GitConnector.UpdateMode.NONE);
+        try (JiraStubServer jira = JiraStubServer.start(fixture, faults);
+             JiraConnector connector = new JiraConnector(spec.projectKey(), jira.baseUrl());
+             Metrics.Span span = Metrics.time("scale.mine")) {
+            new DatasetGenerator(spec.projectKey(), git, connector).generateCsv();
+            log.info("JIRA stub responses: {}", jira.servedCounts());
+        } finally {
+            if (git.getGit() != null) {
+                git.getGit().close();
+            }
+        }
+
+        Path report = Path.of("scale-" + methods + "-metrics.json");
+        Metrics.writeReport(report);
+        log.info("{} methods: metrics written to {}", methods, report);
+        if (!keep) {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
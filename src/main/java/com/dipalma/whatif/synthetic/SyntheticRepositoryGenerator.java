@@ -0,0 +1,452 @@
+package com.dipalma.whatif.synthetic;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TagBuilder;
+import org.eclipse.jgit.lib.TreeFormatter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generates a local git repository with the shape the miner expects, so that the pipeline can be
+ * benchmarked and load-tested without the network: Java classes whose methods are edited commit
+ * after commit by a small pool of authors, commit messages that reference ticket keys, and
+ * release tags at regular intervals. The output only depends on the {@link Spec}, seed included.
+ * <p>
+ * Churn is skewed like in real projects: a few files and, within them, a few methods take most of
+ * the edits. Every fix commit comes with the ticket JIRA would report for it (creation date and,
+ * for part of them, affected versions), from which {@link JiraFixture} builds the JIRA side.
+ * <p>
+ * Commits are written straight to the object database, into a single pack: only the edited files
+ * are re-rendered and only the trees on their paths are rewritten per commit, so generation time
+ * grows with the churn rather than with the size of the tree. The working tree is checked out
+ * once at the end.
+ */
+public final class SyntheticRepositoryGenerator {
+
+    /**
+     * What to generate.
+     * @param commits        commits after the initial import
+     * @param files          Java files (one class each)
+     * @param methodsPerFile methods per class in the initial import
+     * @param releases       release tags, evenly spaced over the history
+     * @param fixRatio       share of commits that fix a ticket (message starts with the ticket key)
+     * @param seed           seed of every random choice
+     */
+    public record Spec(String projectKey, int commits, int files, int methodsPerFile, int releases,
+                       double fixRatio, long seed) {
+
+        public static Spec of(int commits, int files, int methodsPerFile) {
+            return new Spec("SYN", commits, files, methodsPerFile, 10, 0.3, 42L);
+        }
+
+        /** About {@code methods} methods in classes of 20, with as many commits as files (at least 100). */
+        public static Spec ofMethods(int methods) {
+            int methodsPerFile = Math.min(methods, 20);
+            int files = Math.max(1, methods / methodsPerFile);
+            return of(Math.max(100, files), files, methodsPerFile);
+        }
+    }
+
+    /**
+     * A ticket fixed by a generated commit.
+     * @param createdAt        when the ticket was opened, before the fix
+     * @param affectedVersions names of the releases reported as affected; empty for tickets without any
+     */
+    public record FixedTicket(String key, Instant createdAt, Instant fixedAt, String commitId,
+                              List<String> affectedVersions) {
+    }
+
+    /** A release tag; its name (without the {@code release-} prefix) is what JIRA would report. */
+    public record Release(String name, String tag, LocalDate date, String commitId) {
+    }
+
+    /** The generated repository and what was put into it. */
+    public record SyntheticRepository(Path directory, Spec spec, List<Release> releases, List<FixedTicket> tickets) {
+    }
+
+    static final Instant EPOCH = Instant.parse("2015-01-01T09:00:00Z");
+    private static final String[] AUTHORS = {"alice", "bob", "carol", "dave", "erin", "frank", "grace"};
+    private static final String[] TYPES = {"int", "long", "String", "double", "boolean"};
+    /** Share of tickets that report affected versions. */
+    private static final double AFFECTED_VERSIONS_RATIO = 0.5;
+    /** Mean time between a ticket being opened and fixed. */
+    private static final double MEAN_DAYS_TO_FIX = 20;
+
+    private final Spec spec;
+    private final Random random;
+    private final List<SyntheticClass> classes = new ArrayList<>();
+    private final Directory root = new Directory();
+
+    private SyntheticRepositoryGenerator(Spec spec) {
+        this.spec = spec;
+        this.random = new Random(spec.seed());
+    }
+
+    /** Creates the repository in {@code directory}, which must not already hold one. */
+    public static SyntheticRepository generate(Path directory, Spec spec) throws IOException, GitAPIException {
+        return new SyntheticRepositoryGenerator(spec).run(directory);
+    }
+
+    private SyntheticRepository run(Path directory) throws IOException, GitAPIException {
+        List<Release> releases = new ArrayList<>();
+        List<FixedTicket> tickets = new ArrayList<>();
+        Map<String, ObjectId> tags = new LinkedHashMap<>();
+        try (Git git = Git.init().setDirectory(directory.toFile()).setInitialBranch("master").call()) {
+            Repository repository = git.getRepository();
+            ObjectId head;
+            try (ObjectInserter inserter = newInserter(repository)) {
+                int modules = Math.max(16, spec.files() / 64);
+                for (int f = 0; f < spec.files(); f++) {
+                    SyntheticClass syntheticClass = SyntheticClass.create(f, modules, spec.methodsPerFile(), random);
+                    classes.add(syntheticClass);
+                    storeBlob(inserter, syntheticClass);
+                }
+                head = commit(inserter, null, "Initial import", 0);
+
+                int releaseEvery = Math.max(1, spec.commits() / Math.max(1, spec.releases()));
+                int ticketNumber = 0;
+                for (int c = 1; c <= spec.commits(); c++) {
+                    editSomeClasses(inserter);
+                    String message;
+                    String ticketKey = null;
+                    if (random.nextDouble() < spec.fixRatio()) {
+                        ticketKey = spec.projectKey() + "-" + (++ticketNumber);
+                        message = ticketKey + ": fix failure in " + hotClass().name();
+                    } else {
+                        message = "Refactor " + hotClass().name();
+                    }
+                    head = commit(inserter, head, message, c);
+                    if (ticketKey != null) {
+                        tickets.add(openTicket(ticketKey, commitTime(c), head.name(), releases));
+                    }
+                    if (c % releaseEvery == 0 && releases.size() < spec.releases()) {
+                        String name = "1." + releases.size() + ".0";
+                        Release release = new Release(name, "release-" + name,
+                                LocalDate.ofInstant(commitTime(c), ZoneOffset.UTC), head.name());
+                        tags.put(release.tag(), tag(inserter, head, release.tag(), commitTime(c)));
+                        releases.add(release);
+                    }
+                }
+                inserter.flush();
+            }
+            for (Map.Entry<String, ObjectId> tag : tags.entrySet()) {
+                updateRef(repository, Constants.R_TAGS + tag.getKey(), tag.getValue());
+            }
+            updateRef(repository, Constants.R_HEADS + "master", head);
+            git.reset().setMode(ResetCommand.ResetType.HARD).call();
+        }
+        return new SyntheticRepository(directory, spec, releases, tickets);
+    }
+
+    /** A pack inserter when the repository is file-based, so that the whole history lands in one pack. */
+    private static ObjectInserter newInserter(Repository repository) {
+        ObjectDatabase database = repository.getObjectDatabase();
+        if (database instanceof ObjectDirectory objectDirectory) {
+            return objectDirectory.newPackInserter();
+        }
+        return database.newInserter();
+    }
+
+    private static void updateRef(Repository repository, String name, ObjectId id) throws IOException {
+        RefUpdate update = repository.updateRef(name);
+        update.setNewObjectId(id);
+        RefUpdate.Result result = update.forceUpdate();
+        if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FORCED) {
+            throw new IOException("Could not update " + name + ": " + result);
+        }
+    }
+
+    /**
+     * The ticket behind a fix commit: opened some days earlier and, for part of the tickets, with the
+     * affected versions starting from a release that precedes the opening.
+     */
+    private FixedTicket openTicket(String key, Instant fixedAt, String commitId, List<Release> releases) {
+        long minutesOpen = 60 + (long) (-Math.log(1 - random.nextDouble()) * MEAN_DAYS_TO_FIX * 24 * 60);
+        Instant createdAt = fixedAt.minus(minutesOpen, ChronoUnit.MINUTES);
+        if (createdAt.isBefore(EPOCH)) {
+            createdAt = EPOCH;
+        }
+        LocalDate opened = LocalDate.ofInstant(createdAt, ZoneOffset.UTC);
+        int released = 0;
+        while (released < releases.size() && releases.get(released).date().isBefore(opened)) {
+            released++;
+        }
+        List<String> affectedVersions = new ArrayList<>();
+        if (released > 0 && random.nextDouble() < AFFECTED_VERSIONS_RATIO) {
+            for (int r = random.nextInt(released); r < released; r++) {
+                affectedVersions.add(releases.get(r).name());
+            }
+        }
+        return new FixedTicket(key, createdAt, fixedAt, commitId, List.copyOf(affectedVersions));
+    }
+
+    /** Most commits touch one or two files and a few methods in each; some add or remove a method. */
+    private void editSomeClasses(ObjectInserter inserter) throws IOException {
+        int filesTouched = 1 + (random.nextDouble() < 0.3 ? 1 + random.nextInt(3) : 0);
+        for (int i = 0; i < filesTouched; i++) {
+            SyntheticClass syntheticClass = hotClass();
+            syntheticClass.edit(random);
+            storeBlob(inserter, syntheticClass);
+        }
+    }
+
+    /** A class picked with a skew towards the first ones, which therefore become the hot spots. */
+    private SyntheticClass hotClass() {
+        return classes.get(skewed(random, classes.size(), 3));
+    }
+
+    /** An index below {@code size}, with probability decreasing in the index as {@code u^exponent}. */
+    static int skewed(Random random, int size, double exponent) {
+        return Math.min(size - 1, (int) (size * Math.pow(random.nextDouble(), exponent)));
+    }
+
+    private void storeBlob(ObjectInserter inserter, SyntheticClass syntheticClass) throws IOException {
+        byte[] content = syntheticClass.render().getBytes(StandardCharsets.UTF_8);
+        root.put(syntheticClass.path(), inserter.insert(Constants.OBJ_BLOB, content));
+    }
+
+    private ObjectId commit(ObjectInserter inserter, ObjectId parent, String message, int index) throws IOException {
+        ObjectId tree = root.write(inserter);
+
+        String author = AUTHORS[random.nextInt(AUTHORS.length)];
+        PersonIdent ident = new PersonIdent(author, author + "@example.org", commitTime(index), ZoneOffset.UTC);
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(tree);
+        if (parent != null) {
+            commit.setParentId(parent);
+        }
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage(message);
+        return inserter.insert(commit);
+    }
+
+    private static ObjectId tag(ObjectInserter inserter, ObjectId commit, String name, Instant when) throws IOException {
+        TagBuilder tag = new TagBuilder();
+        tag.setObjectId(commit, Constants.OBJ_COMMIT);
+        tag.setTag(name);
+        tag.setTagger(new PersonIdent("release-manager", "release@example.org", when, ZoneOffset.UTC));
+        tag.setMessage("Release " + name);
+        return inserter.insert(tag);
+    }
+
+    private static Instant commitTime(int index) {
+        return EPOCH.plus(index * 6L, ChronoUnit.HOURS);
+    }
+
+    // --- Trees ---
+
+    /** A directory of the working tree, whose tree object is rewritten only after something under it changed. */
+    private static final class Directory {
+        private final TreeMap<String, ObjectId> files = new TreeMap<>();
+        private final TreeMap<String, Directory> directories = new TreeMap<>();
+        private ObjectId id;
+
+        void put(String path, ObjectId blob) {
+            id = null;
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                files.put(path, blob);
+            } else {
+                directories.computeIfAbsent(path.substring(0, slash), name -> new Directory())
+                        .put(path.substring(slash + 1), blob);
+            }
+        }
+
+        /** Git orders tree entries by name, comparing a directory name as if it ended with '/'. */
+        ObjectId write(ObjectInserter inserter) throws IOException {
+            if (id != null) {
+                return id;
+            }
+            List<String> names = new ArrayList<>(files.size() + directories.size());
+            names.addAll(files.keySet());
+            for (String directory : directories.keySet()) {
+                names.add(directory + "/");
+            }
+            names.sort(null);
+            TreeFormatter tree = new TreeFormatter();
+            for (String name : names) {
+                if (name.endsWith("/")) {
+                    String directory = name.substring(0, name.length() - 1);
+                    tree.append(directory, FileMode.TREE, directories.get(directory).write(inserter));
+                } else {
+                    tree.append(name, FileMode.REGULAR_FILE, files.get(name));
+                }
+            }
+            id = inserter.insert(tree);
+            return id;
+        }
+    }
+
+    // --- Generated source ---
+
+    /** One class held as a list of methods. */
+    private static final class SyntheticClass {
+        private final String packageName;
+        private final String name;
+        private final List<SyntheticMethod> methods = new ArrayList<>();
+        private int nextMethodId;
+
+        private SyntheticClass(String packageName, String name) {
+            this.packageName = packageName;
+            this.name = name;
+        }
+
+        static SyntheticClass create(int index, int modules, int methods, Random random) {
+            SyntheticClass syntheticClass = new SyntheticClass("org.synthetic.module" + (index % modules), "Component" + index);
+            for (int m = 0; m < methods; m++) {
+                syntheticClass.addMethod(random);
+            }
+            return syntheticClass;
+        }
+
+        String name() {
+            return name;
+        }
+
+        String path() {
+            return "src/main/java/" + packageName.replace('.', '/') + "/" + name + ".java";
+        }
+
+        void addMethod(Random random) {
+            methods.add(SyntheticMethod.create(nextMethodId++, random));
+        }
+
+        void edit(Random random) {
+            double roll = random.nextDouble();
+            if (roll < 0.05) {
+                addMethod(random);
+            } else if (roll < 0.07 && methods.size() > 1) {
+                methods.remove(random.nextInt(methods.size()));
+            } else {
+                int edits = 1 + random.nextInt(Math.min(3, methods.size()));
+                for (int i = 0; i < edits; i++) {
+                    methods.get(skewed(random, methods.size(), 2)).edit(random);
+                }
+            }
+        }
+
+        String render() {
+            StringBuilder out = new StringBuilder(256 + methods.size() * 256);
+            out.append("package ").append(packageName).append(";\n\n");
+            out.append("public class ").append(name).append(" {\n\n");
+            out.append("    private int counter;\n\n");
+            for (SyntheticMethod method : methods) {
+                method.render(out);
+            }
+            out.append("}\n");
+            return out.toString();
+        }
+    }
+
+    /**
+     * A method whose statements are kept as codes ({@code kind * 100 + constant}) and only turned
+     * into text when the class is rendered, so that a million of them fit in memory.
+     */
+    private static final class SyntheticMethod {
+        private final int id;
+        private final byte[] parameterTypes;
+        private int[] body;
+        private int statements;
+
+        private SyntheticMethod(int id, byte[] parameterTypes, int capacity) {
+            this.id = id;
+            this.parameterTypes = parameterTypes;
+            this.body = new int[capacity];
+        }
+
+        static SyntheticMethod create(int id, Random random) {
+            byte[] parameterTypes = new byte[random.nextInt(4)];
+            for (int p = 0; p < parameterTypes.length; p++) {
+                parameterTypes[p] = (byte) random.nextInt(TYPES.length);
+            }
+            int statements = 2 + random.nextInt(12);
+            SyntheticMethod method = new SyntheticMethod(id, parameterTypes, statements + 2);
+            for (int s = 0; s < statements; s++) {
+                method.insert(s, statement(random));
+            }
+            return method;
+        }
+
+        void edit(Random random) {
+            int line = random.nextInt(statements);
+            double roll = random.nextDouble();
+            if (roll < 0.5) {
+                body[line] = statement(random);
+            } else if (roll < 0.85 || statements < 2) {
+                insert(line, statement(random));
+            } else {
+                System.arraycopy(body, line + 1, body, line, statements - line - 1);
+                statements--;
+            }
+        }
+
+        private void insert(int line, int statement) {
+            if (statements == body.length) {
+                body = Arrays.copyOf(body, body.length * 2);
+            }
+            System.arraycopy(body, line, body, line + 1, statements - line);
+            body[line] = statement;
+            statements++;
+        }
+
+        void render(StringBuilder out) {
+            out.append("    public int operation").append(id).append('(');
+            for (int p = 0; p < parameterTypes.length; p++) {
+                if (p > 0) {
+                    out.append(", ");
+                }
+                out.append(TYPES[parameterTypes[p]]).append(" p").append(p);
+            }
+            out.append(") {\n");
+            for (int s = 0; s < statements; s++) {
+                out.append("        ");
+                renderStatement(out, body[s]);
+                out.append('\n');
+            }
+            out.append("        return counter;\n");
+            out.append("    }\n\n");
+        }
+
+        private static int statement(Random random) {
+            return random.nextInt(6) * 100 + random.nextInt(100);
+        }
+
+        private static void renderStatement(StringBuilder out, int statement) {
+            int k = statement % 100;
+            switch (statement / 100) {
+                case 0 -> out.append("counter += ").append(k).append(';');
+                case 1 -> out.append("if (counter > ").append(k).append(") { counter -= ").append(k / 2 + 1).append("; }");
+                case 2 -> out.append("for (int i = 0; i < ").append(k % 10 + 1).append("; i++) { counter ^= i; }");
+                case 3 -> out.append("counter = Math.max(counter, ").append(k).append(");");
+                case 4 -> out.append("while (counter > ").append(k * 10).append(") { counter /= 2; }");
+                default -> out.append("counter = counter > ").append(k).append(" ? counter : ").append(k).append(';');
+            }
+        }
+    }
+}